@@ -0,0 +1,54 @@
+package com.michalwesoly.pattern.finder.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Synthetic images shared by the benchmarks: noise with scattered single white and red pixels (so the scanner's
+ * probes keep hitting candidate colors, like on real photos) and the pattern placed where Placement says.
+ */
+final class BenchmarkImages {
+    private static final int RED = 0xFFFF0000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private BenchmarkImages() { }
+
+    /**
+     * @param size WIDTHxHEIGHT, e.g. 8000x6000
+     * @param type BufferedImage type
+     * @param placement where the pattern is
+     * @return image generated from a fixed seed, so every fork scans the same pixels
+     */
+    static BufferedImage generate(String size, int type, Placement placement) {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int color = random.nextInt() & 0x00FEFEFE | 0xFF000000; // never pure white or red
+                if (x % 4 == 0 && y % 4 == 0) {
+                    color = random.nextBoolean() ? WHITE : RED; // isolated, never a 3 pixel run
+                }
+                image.setRGB(x, y, color);
+            }
+        }
+        if (placement == Placement.TOP_LEFT || placement == Placement.AMBIGUOUS) {
+            stripe(image, 1, 1);
+        }
+        if (placement == Placement.BOTTOM_RIGHT || placement == Placement.AMBIGUOUS) {
+            stripe(image, width - 7, height - 2);
+        }
+        return image;
+    }
+
+    /**
+     * Horizontal white - red stripe starting at the given pixel
+     */
+    private static void stripe(BufferedImage image, int x, int y) {
+        for (int i = 0; i < 6; i++) {
+            image.setRGB(x + i, y, i < 3 ? WHITE : RED);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.michalwesoly.pattern.finder.benchmark;
+
+import com.michalwesoly.pattern.finder.png.PngEncoder;
+import com.michalwesoly.pattern.finder.png.PngProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PngEncoder profiles against ImageIO's PNG writer buffering the file the way /rotate used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class EncodeBenchmark {
+    @Param({"2000x1500"})
+    public String size;
+
+    @Param({"1", "5"}) // TYPE_INT_RGB, TYPE_3BYTE_BGR
+    public int type;
+
+    @Param({"FAST", "BALANCED", "SMALL"})
+    public PngProfile profile;
+
+    private BufferedImage image;
+    private PngEncoder encoder;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        image = new BufferedImage(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), type);
+        Random random = new Random(1);
+        // Smooth gradients with a little noise compress roughly like photos do
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int noise = random.nextInt(8);
+                image.setRGB(x, y, ((x / 8 + noise) & 0xFF) << 16 | ((y / 6 + noise) & 0xFF) << 8 | ((x + y) / 14 & 0xFF));
+            }
+        }
+        encoder = new PngEncoder(profile);
+    }
+
+    @Benchmark
+    public byte[] imageIo() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public long pngEncoder() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        encoder.write(image, out);
+        return out.count;
+    }
+
+    /**
+     * Stands in for the servlet output stream
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+    }
+}
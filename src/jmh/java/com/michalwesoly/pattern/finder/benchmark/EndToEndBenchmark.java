@@ -0,0 +1,95 @@
+package com.michalwesoly.pattern.finder.benchmark;
+
+import com.michalwesoly.pattern.finder.Application;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+
+/**
+ * The controller path from an uploaded PNG file to the response body - prefilter, admission, decoding, scanning,
+ * rotating and encoding - through MockMvc against the whole application context. Multipart parsing of a real
+ * servlet request isn't included, and the response cache is disabled, so every call does the full work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EndToEndBenchmark {
+    @Param({"32x32", "640x480", "2000x1500", "8000x6000"})
+    public String size;
+
+    @Param({"NONE", "TOP_LEFT", "BOTTOM_RIGHT", "AMBIGUOUS"})
+    public Placement placement;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private MockMultipartFile file;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.SERVLET)
+                .properties("server.port=0", "pattern.finder.cache.max-bytes=0", "logging.level.root=WARN")
+                .run();
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(BenchmarkImages.generate(size, 1, placement), "png", png);
+        file = new MockMultipartFile("file", "image.png", MediaType.IMAGE_PNG_VALUE, png.toByteArray());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int rotate() throws Exception {
+        return perform(multipart("/rotate").file(file));
+    }
+
+    @Benchmark
+    public int detect() throws Exception {
+        return perform(multipart("/detect").file(file));
+    }
+
+    /**
+     * @return length of the response body, so it can't be optimized away
+     */
+    private int perform(RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        while (result.getRequest().isAsyncStarted()) {
+            result = mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        return result.getResponse().getContentAsByteArray().length;
+    }
+}
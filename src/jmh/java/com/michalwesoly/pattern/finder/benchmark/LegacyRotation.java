@@ -0,0 +1,35 @@
+package com.michalwesoly.pattern.finder.benchmark;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+
+/**
+ * Rotation as ImageProcessor did it before ImageRotator - bilinear AffineTransformOp, kept as the baseline.
+ */
+final class LegacyRotation {
+
+    private LegacyRotation() { }
+
+    static BufferedImage rotate(BufferedImage image, int degrees) {
+        AffineTransform transform = new AffineTransform();
+        BufferedImage out;
+        if (degrees == 0 || degrees == 180) {
+            out = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+            transform.rotate(Math.toRadians(degrees), image.getWidth() / 2.0, image.getHeight() / 2.0);
+        }
+        else {
+            double offset = (image.getHeight() - image.getWidth()) / 2.0;
+            out = new BufferedImage(image.getHeight(), image.getWidth(), image.getType());
+            transform.rotate(Math.toRadians(degrees), image.getWidth() / 2.0, image.getHeight() / 2.0);
+            if (degrees == 90) {
+                transform.translate(-offset, -offset);
+            }
+            else {
+                transform.translate(offset, offset);
+            }
+        }
+        new AffineTransformOp(transform, AffineTransformOp.TYPE_BILINEAR).filter(image, out);
+        return out;
+    }
+}
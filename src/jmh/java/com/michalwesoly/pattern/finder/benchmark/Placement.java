@@ -0,0 +1,11 @@
+package com.michalwesoly.pattern.finder.benchmark;
+
+/**
+ * Where the white - red stripe is put in a benchmark image
+ */
+public enum Placement {
+    NONE,           // the whole image has to be scanned
+    TOP_LEFT,       // found at once, but the rest is scanned to rule out a second one
+    BOTTOM_RIGHT,   // found last
+    AMBIGUOUS       // one at the top left and one at the bottom right - the scan may stop at the second
+}
@@ -0,0 +1,62 @@
+package com.michalwesoly.pattern.finder.benchmark;
+
+import com.michalwesoly.pattern.finder.service.ImageRotator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lossless ImageRotator against the bilinear AffineTransformOp rotation it replaced, on multi-megapixel images.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RotationBenchmark {
+    @Param({"2000x1500", "4000x3000"})
+    public String size;
+
+    @Param({"1", "5"}) // TYPE_INT_RGB, TYPE_3BYTE_BGR - what ImageIO decodes RGB PNG files into
+    public int type;
+
+    @Param({"90", "180", "270"})
+    public int degrees;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        image = new BufferedImage(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), type);
+        Random random = new Random(1);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+    }
+
+    @Benchmark
+    public BufferedImage affineTransformOp() {
+        return LegacyRotation.rotate(image, degrees);
+    }
+
+    @Benchmark
+    public BufferedImage imageRotator() {
+        return ImageRotator.rotate(image, degrees);
+    }
+}
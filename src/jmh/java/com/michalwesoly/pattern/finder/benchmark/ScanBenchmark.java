@@ -0,0 +1,98 @@
+package com.michalwesoly.pattern.finder.benchmark;
+
+import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
+import com.michalwesoly.pattern.finder.api.exceptions.NoPatternException;
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import com.michalwesoly.pattern.finder.service.Detection;
+import com.michalwesoly.pattern.finder.service.ImageProcessor;
+import com.michalwesoly.pattern.finder.service.ImageRotator;
+import com.michalwesoly.pattern.finder.service.PixelRaster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages of ImageProcessor on decoded images, across image sizes and pattern placements: constructing
+ * the processor and its raster view, scanning for the pattern, rotating (into a new raster or a pooled one),
+ * and all of it together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScanBenchmark {
+    @Param({"32x32", "640x480", "2000x1500", "8000x6000"})
+    public String size;
+
+    @Param({"NONE", "TOP_LEFT", "BOTTOM_RIGHT", "AMBIGUOUS"})
+    public Placement placement;
+
+    @Param({"5"}) // TYPE_3BYTE_BGR - what ImageIO decodes RGB PNG files into; 1 for TYPE_INT_RGB
+    public int type;
+
+    private final BufferPool pool = new BufferPool(1L << 30, 1L << 30);
+    private BufferedImage image;
+    private int rotation;
+
+    @Setup
+    public void setUp() {
+        image = BenchmarkImages.generate(size, type, placement);
+        Detection detection = findPatterns();
+        rotation = detection == null ? 90 : detection.getRotation(); // a quarter turn stands in when there's none
+    }
+
+    @Benchmark
+    public ImageProcessor construct() {
+        return new ImageProcessor(image);
+    }
+
+    @Benchmark
+    public PixelRaster rasterView() {
+        return PixelRaster.of(image);
+    }
+
+    @Benchmark
+    public Detection findPatterns() {
+        try {
+            return new ImageProcessor(image).detect();
+        }
+        catch (NoPatternException | AmbiguousImageException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public BufferedImage rotate() {
+        return ImageRotator.rotate(image, rotation);
+    }
+
+    @Benchmark
+    public BufferedImage rotatePooled() {
+        BufferedImage rotated = ImageRotator.rotate(image, rotation, pool);
+        pool.release(rotated); // as the controller does once the image is encoded
+        return rotated;
+    }
+
+    @Benchmark
+    public BufferedImage processImage() {
+        try {
+            return new ImageProcessor(image).processImage();
+        }
+        catch (NoPatternException | AmbiguousImageException e) {
+            return null;
+        }
+    }
+}
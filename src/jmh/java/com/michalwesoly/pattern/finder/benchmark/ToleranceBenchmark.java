@@ -0,0 +1,69 @@
+package com.michalwesoly.pattern.finder.benchmark;
+
+import com.michalwesoly.pattern.finder.service.AutomatonScanner;
+import com.michalwesoly.pattern.finder.service.MarkerSet;
+import com.michalwesoly.pattern.finder.service.ParallelScanner;
+import com.michalwesoly.pattern.finder.service.PatternScanner;
+import com.michalwesoly.pattern.finder.service.PixelRaster;
+import com.michalwesoly.pattern.finder.service.ScanPolicy;
+import com.michalwesoly.pattern.finder.service.ScanResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact against tolerant color matching, for both the stripe engine and the multi-marker automaton: a full
+ * scan of an image without the pattern, so every pixel the engine reads is classified.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ToleranceBenchmark {
+    @Param({"640x480", "2000x1500", "8000x6000"})
+    public String size;
+
+    @Param({"0", "16"})
+    public int tolerance;
+
+    @Param({"stripe", "automaton"})
+    public String engine;
+
+    private ForkJoinPool pool;
+    private PatternScanner scanner;
+    private PixelRaster raster;
+
+    @Setup
+    public void setUp() {
+        MarkerSet markers = MarkerSet.of(tolerance, "stripe=FFFFFF:3/FF0000:3");
+        pool = new ForkJoinPool(1);
+        scanner = "stripe".equals(engine)
+                ? new ParallelScanner(pool, Long.MAX_VALUE, tolerance) // never parallel - SkipScanner alone
+                : new AutomatonScanner(markers);
+        raster = PixelRaster.of(BenchmarkImages.generate(size, 5, Placement.NONE));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ScanResult findPatterns() {
+        return scanner.findPatterns(raster, ScanPolicy.STOP_ON_AMBIGUITY);
+    }
+}
@@ -0,0 +1,119 @@
+package com.michalwesoly.pattern.finder.loadtest;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Stored results the load test is compared against, as properties named c[CONCURRENCY].[METRIC],
+ * e.g. c8.p95=41.2, next to the processor count and workload they were recorded with. Results of another
+ * machine or workload aren't comparable at all, so they aren't compared. Only metrics stable from run to run
+ * are gated: a run regresses if its throughput drops, or its p50 or p95 latency grows, by more than the
+ * tolerance, or its error rate grows at all. Tail percentiles and the rejected rate are stored for reference.
+ */
+final class Baseline {
+    static final String PROCESSORS = "processors";
+    static final String WORKLOAD = "workload";
+    private static final Set<String> GATED = Set.of(LoadResult.THROUGHPUT, LoadResult.ERROR_RATE,
+            LoadResult.percentileName(50), LoadResult.percentileName(95));
+
+    private final Properties values = new Properties();
+
+    private Baseline() { }
+
+    /**
+     * @return Baseline read from the file, empty if it doesn't exist
+     */
+    static Baseline load(Path file) throws IOException {
+        Baseline baseline = new Baseline();
+        if (Files.exists(file)) {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                baseline.values.load(in);
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * Writes the results as a baseline, or as a report of the run
+     * @param environment processor count and workload of the run, by name
+     */
+    static void save(Path file, List<LoadResult> results, Map<String, String> environment, String comment) throws IOException {
+        Map<String, String> sorted = new TreeMap<>(environment);
+        for (LoadResult result : results) {
+            result.metrics().forEach((name, value) ->
+                    sorted.put(key(result, name), String.format(Locale.ROOT, "%.4f", value)));
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# " + comment + System.lineSeparator());
+            for (Map.Entry<String, String> entry : sorted.entrySet()) {
+                out.write(entry.getKey() + "=" + entry.getValue() + System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * @param environment processor count and workload of the run, by name
+     * @return why the run can't be compared against the baseline, null if it can
+     */
+    String incomparable(Map<String, String> environment) {
+        for (Map.Entry<String, String> entry : environment.entrySet()) {
+            String stored = values.getProperty(entry.getKey());
+            if (!entry.getValue().equals(stored)) {
+                return "baseline recorded with " + entry.getKey() + " " + stored + ", this run has " + entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param tolerance relative change allowed, e.g. 0.2 for 20 %
+     * @return descriptions of metrics regressing past the baseline, empty if there are none
+     */
+    List<String> regressions(LoadResult result, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        result.metrics().forEach((name, value) -> {
+            String stored = values.getProperty(key(result, name));
+            if (stored == null || !GATED.contains(name)) {
+                return;
+            }
+            double baseline = Double.parseDouble(stored);
+            boolean regressed;
+            if (LoadResult.THROUGHPUT.equals(name)) {
+                regressed = value < baseline * (1 - tolerance);
+            }
+            else if (LoadResult.ERROR_RATE.equals(name)) {
+                regressed = value > baseline;
+            }
+            else {
+                regressed = value > baseline * (1 + tolerance); // p50 and p95
+            }
+            if (regressed) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.3f, baseline %.3f", key(result, name),
+                        value, baseline));
+            }
+        });
+        return regressions;
+    }
+
+    boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    private static String key(LoadResult result, String metric) {
+        return "c" + result.getConcurrency() + "." + metric;
+    }
+}
@@ -0,0 +1,78 @@
+package com.michalwesoly.pattern.finder.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Outcome of a load test run at a single concurrency: every request's latency, and how many requests failed.
+ * Percentiles are exact, from all latencies sorted.
+ */
+final class LoadResult {
+    static final String THROUGHPUT = "throughput";      // requests per second
+    static final String ERROR_RATE = "error-rate";      // unexpected statuses and I/O failures, 0 - 1
+    static final String REJECTED_RATE = "rejected-rate"; // 429 and 503 responses, 0 - 1
+    static final double[] PERCENTILES = {50, 95, 99, 99.9};
+
+    private final int concurrency;
+    private final long[] latencies;     // nanoseconds, sorted
+    private final long errors;
+    private final long rejected;
+    private final double seconds;
+
+    LoadResult(int concurrency, long[] latencies, long errors, long rejected, double seconds) {
+        this.concurrency = concurrency;
+        this.latencies = latencies.clone();
+        Arrays.sort(this.latencies);
+        this.errors = errors;
+        this.rejected = rejected;
+        this.seconds = seconds;
+    }
+
+    /**
+     * @param percentile e.g. 99.9
+     * @return latency in milliseconds that percent of requests didn't exceed
+     */
+    double latencyMillis(double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(latencies.length - 1, rank))] / 1e6;
+    }
+
+    /**
+     * @return metrics by name - throughput, error and rejected rates, and p50, p95, p99 and p999 in milliseconds
+     */
+    Map<String, Double> metrics() {
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        int requests = latencies.length;
+        metrics.put(THROUGHPUT, requests / seconds);
+        metrics.put(ERROR_RATE, requests == 0 ? 1 : errors / (double) requests);
+        metrics.put(REJECTED_RATE, requests == 0 ? 0 : rejected / (double) requests);
+        for (double percentile : PERCENTILES) {
+            metrics.put(percentileName(percentile), latencyMillis(percentile));
+        }
+        return metrics;
+    }
+
+    /**
+     * @return e.g. p99 or p999 for 99.9
+     */
+    static String percentileName(double percentile) {
+        return "p" + String.valueOf(percentile).replace(".0", "").replace(".", "");
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "concurrency %3d: %7d requests",
+                concurrency, latencies.length));
+        metrics().forEach((name, value) -> line.append(String.format(Locale.ROOT, ", %s %.3f", name, value)));
+        return line.toString();
+    }
+}
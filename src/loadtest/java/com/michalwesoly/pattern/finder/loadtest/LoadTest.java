@@ -0,0 +1,251 @@
+package com.michalwesoly.pattern.finder.loadtest;
+
+import com.michalwesoly.pattern.finder.Application;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Load test of /rotate: starts the application on a random local port and keeps a fixed number of clients
+ * uploading synthetic PNG files back to back - a closed workload, so throughput is measured at the given
+ * concurrency. Every concurrency level is warmed up, then measured for a fixed time; the results are compared
+ * against the stored baseline if it was recorded with the same processor count and workload, and the exit code
+ * is 1 if anything regressed. Nothing but localhost is used.
+ *
+ * Options: --concurrency 1,8 --warmup SECONDS --duration SECONDS --sizes 64x64,640x480,2000x1500
+ * --weights 6,3,1 --baseline FILE --result FILE --tolerance 0.3 --update-baseline
+ */
+public final class LoadTest {
+    private static final String BOUNDARY = "pattern-finder-load-test";
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final URI rotate;
+    private final Workload workload;
+
+    private LoadTest(URI rotate, Workload workload) {
+        this.rotate = rotate;
+        this.workload = workload;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> concurrency = List.of(1, 8);
+        int warmupSeconds = 10;
+        int durationSeconds = 60;
+        List<String> sizes = List.of("64x64", "640x480", "2000x1500");
+        List<Integer> weights = List.of(6, 3, 1);
+        Path baselineFile = Paths.get("src/loadtest/baseline.properties");
+        Path resultFile = Paths.get("target/loadtest-result.properties");
+        double tolerance = 0.3;
+        boolean updateBaseline = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--concurrency":
+                    concurrency = integers(args[++i]);
+                    break;
+                case "--warmup":
+                    warmupSeconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--duration":
+                    durationSeconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--sizes":
+                    sizes = Arrays.asList(args[++i].split(","));
+                    break;
+                case "--weights":
+                    weights = integers(args[++i]);
+                    break;
+                case "--baseline":
+                    baselineFile = Paths.get(args[++i]);
+                    break;
+                case "--result":
+                    resultFile = Paths.get(args[++i]);
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                case "--update-baseline":
+                    updateBaseline = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (sizes.size() != weights.size()) {
+            throw new IllegalArgumentException("Every size needs a weight");
+        }
+
+        Workload workload = new Workload(sizes, weights);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.SERVLET)
+                .properties("server.port=0", "server.address=127.0.0.1", "pattern.finder.cache.max-bytes=0",
+                        "logging.level.root=WARN")
+                .run();
+        List<LoadResult> results = new ArrayList<>();
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadTest test = new LoadTest(URI.create("http://127.0.0.1:" + port + "/rotate"), workload);
+            for (int clients : concurrency) {
+                test.run(clients, warmupSeconds);
+                LoadResult result = test.run(clients, durationSeconds);
+                System.out.println(result);
+                results.add(result);
+            }
+        }
+        finally {
+            context.close();
+        }
+
+        Map<String, String> environment = Map.of(
+                Baseline.PROCESSORS, String.valueOf(Runtime.getRuntime().availableProcessors()),
+                Baseline.WORKLOAD, "concurrency " + concurrency + ", sizes " + sizes + ", weights " + weights
+                        + ", warmup " + warmupSeconds + " s, duration " + durationSeconds + " s");
+        Baseline.save(resultFile, results, environment, "Load test result");
+        if (updateBaseline) {
+            Baseline.save(baselineFile, results, environment, "Load test baseline");
+            System.out.println("Baseline written to " + baselineFile);
+            return;
+        }
+        Baseline baseline = Baseline.load(baselineFile);
+        if (baseline.isEmpty()) {
+            System.out.println("No baseline in " + baselineFile + ", nothing compared - run with --update-baseline");
+            return;
+        }
+        String incomparable = baseline.incomparable(environment);
+        if (incomparable != null) {
+            System.out.println("WARNING: " + baselineFile + " not compared, " + incomparable
+                    + " - record a baseline for this machine with --update-baseline");
+            return;
+        }
+        List<String> regressions = new ArrayList<>();
+        for (LoadResult result : results) {
+            regressions.addAll(baseline.regressions(result, tolerance));
+        }
+        if (!regressions.isEmpty()) {
+            System.out.println("Regressed past " + baselineFile + " (tolerance " + tolerance + "):");
+            regressions.forEach(regression -> System.out.println("  " + regression));
+            System.exit(1);
+        }
+        System.out.println("No regression against " + baselineFile);
+    }
+
+    /**
+     * Keeps the clients sending uploads for the given time
+     */
+    private LoadResult run(int clients, int seconds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+            List<Future<Client>> running = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                Client client = new Client(new Random(i));
+                running.add(executor.submit(() -> client.sendUntil(deadline)));
+            }
+            List<long[]> latencies = new ArrayList<>();
+            long errors = 0;
+            long rejected = 0;
+            for (Future<Client> future : running) {
+                Client client = future.get();
+                latencies.add(Arrays.copyOf(client.latencies, client.count));
+                errors += client.errors;
+                rejected += client.rejected;
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).toArray();
+            return new LoadResult(clients, all, errors, rejected, elapsed);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Integer> integers(String list) {
+        return Arrays.stream(list.split(",")).map(Integer::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * multipart/form-data body with the upload as the file part
+     */
+    private static byte[] multipart(Workload.Upload upload) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(upload.getPng().length + 256);
+        String header = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + upload.getName() + ".png\"\r\n"
+                + "Content-Type: image/png\r\n\r\n";
+        body.writeBytes(header.getBytes(StandardCharsets.US_ASCII));
+        body.writeBytes(upload.getPng());
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+
+    /**
+     * Single client sending one upload after another; only its own thread touches it until it's done
+     */
+    private final class Client {
+        private final Random random;
+        private long[] latencies = new long[1024];  // nanoseconds
+        private int count;
+        private long errors;
+        private long rejected;
+
+        private Client(Random random) {
+            this.random = random;
+        }
+
+        private Client sendUntil(long deadline) throws InterruptedException {
+            while (System.nanoTime() < deadline) {
+                Workload.Upload upload = workload.next(random);
+                HttpRequest request = HttpRequest.newBuilder(rotate)
+                        .timeout(Duration.ofSeconds(60))
+                        .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(multipart(upload)))
+                        .build();
+                long start = System.nanoTime();
+                int status;
+                try {
+                    status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                }
+                catch (IOException e) {
+                    status = -1;
+                }
+                record(System.nanoTime() - start);
+                if (status == 429 || status == 503) {
+                    rejected++;
+                }
+                else if (status != upload.getExpectedStatus()) {
+                    errors++;
+                }
+            }
+            return this;
+        }
+
+        private void record(long latency) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.michalwesoly.pattern.finder.loadtest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic PNG uploads the load test picks from: every size with no pattern, one pattern and two patterns,
+ * each with the status /rotate has to answer with. Images are generated from fixed seeds, so every run sends
+ * the same bytes.
+ */
+final class Workload {
+    private static final int RED = 0xFFFF0000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private final List<Upload> uploads = new ArrayList<>();
+    private final int[] cumulativeWeights;
+
+    /**
+     * @param sizes WIDTHxHEIGHT of the images, e.g. 640x480
+     * @param weights how often every size is sent relative to the others, e.g. small images more often
+     */
+    Workload(List<String> sizes, List<Integer> weights) throws IOException {
+        cumulativeWeights = new int[sizes.size() * Kind.values().length];
+        int total = 0;
+        for (int i = 0; i < sizes.size(); i++) {
+            for (Kind kind : Kind.values()) {
+                uploads.add(new Upload(sizes.get(i) + "-" + kind.name().toLowerCase(), png(sizes.get(i), kind),
+                        kind.status));
+                total += weights.get(i);
+                cumulativeWeights[uploads.size() - 1] = total;
+            }
+        }
+    }
+
+    /**
+     * @return upload picked by the weights
+     */
+    Upload next(Random random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; ; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return uploads.get(i);
+            }
+        }
+    }
+
+    List<Upload> getUploads() {
+        return uploads;
+    }
+
+    /**
+     * Noise without pure white or red runs, with the stripe at the top left and, for two patterns, bottom right
+     */
+    private static byte[] png(String size, Kind kind) throws IOException {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt() & 0x00FEFEFE);
+            }
+        }
+        if (kind != Kind.NO_PATTERN) {
+            stripe(image, 1, 1);
+        }
+        if (kind == Kind.AMBIGUOUS) {
+            stripe(image, width - 7, height - 2);
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+
+    private static void stripe(BufferedImage image, int x, int y) {
+        for (int i = 0; i < 6; i++) {
+            image.setRGB(x + i, y, i < 3 ? WHITE : RED);
+        }
+    }
+
+    private enum Kind {
+        NO_PATTERN(204),
+        ONE_PATTERN(200),
+        AMBIGUOUS(400);
+
+        private final int status;   // expected from /rotate
+
+        Kind(int status) {
+            this.status = status;
+        }
+    }
+
+    /**
+     * PNG file sent to /rotate and the status it has to be answered with
+     */
+    static final class Upload {
+        private final String name;
+        private final byte[] png;
+        private final int expectedStatus;
+
+        private Upload(String name, byte[] png, int expectedStatus) {
+            this.name = name;
+            this.png = png;
+            this.expectedStatus = expectedStatus;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        byte[] getPng() {
+            return png;
+        }
+
+        int getExpectedStatus() {
+            return expectedStatus;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.michalwesoly.pattern.finder.admission;
+
+/**
+ * Exception thrown if a job can't be admitted to the ProcessingPool right now and should be retried later
+ */
+public class AdmissionException extends Exception {
+    private final boolean overloaded; // true if the queue is full, false if the pixel budget is used up
+
+    AdmissionException(String message, boolean overloaded) {
+        super(message);
+        this.overloaded = overloaded;
+    }
+
+    /**
+     * @return true if the pool's queue is full (503), false if the pixel budget is used up (429)
+     */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+}
@@ -0,0 +1,160 @@
+package com.michalwesoly.pattern.finder.admission;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool images are decoded, rotated and encoded on, with admission control in front of it.
+ *
+ * At most maxConcurrent jobs run at a time and at most queueDepth wait for a thread; when the queue is full,
+ * new jobs are rejected instead of piling up. Independently, every job reserves the pixels of its decoded image
+ * from a budget until its response is written or given up, so a burst of large images is turned away before it
+ * fills the heap - a single image is always admitted when nothing else is in flight, however large it is.
+ */
+public class ProcessingPool {
+    private final ThreadPoolExecutor executor;
+    private final long maxPixelsInFlight;
+    private final AtomicLong pixelsInFlight = new AtomicLong();
+    private final Object budget = new Object(); // notified whenever pixels are given back
+
+    /**
+     * @param maxConcurrent jobs running at the same time
+     * @param queueDepth jobs waiting for a thread before new ones are rejected
+     * @param maxPixelsInFlight decoded pixels of all admitted jobs together
+     */
+    public ProcessingPool(int maxConcurrent, int queueDepth, long maxPixelsInFlight) {
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueDepth)), task -> {
+                    Thread thread = new Thread(task, "processing-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.maxPixelsInFlight = maxPixelsInFlight;
+    }
+
+    /**
+     * Reserves pixels of an image from the budget.
+     * @param pixels number of pixels of the decoded image
+     * @return Permit to be closed once the image and everything made out of it is no longer needed
+     * @throws AdmissionException if the budget doesn't have that many pixels left
+     */
+    public Permit admit(long pixels) throws AdmissionException {
+        while (true) {
+            long current = pixelsInFlight.get();
+            if (current > 0 && current + pixels > maxPixelsInFlight) {
+                throw new AdmissionException("Pixel budget used up: " + current + " in flight", false);
+            }
+            if (pixelsInFlight.compareAndSet(current, current + pixels)) {
+                return new Permit(pixels);
+            }
+        }
+    }
+
+    /**
+     * Reserves pixels of an image from the budget, waiting for other permits to be closed if it's used up.
+     * For work that has no caller to answer 429 to, e.g. images of a batch.
+     * @param pixels number of pixels of the decoded image
+     * @return Permit to be closed once the image and everything made out of it is no longer needed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit await(long pixels) throws InterruptedException {
+        synchronized (budget) {
+            while (true) {
+                try {
+                    return admit(pixels);
+                }
+                catch (AdmissionException e) {
+                    budget.wait(); // a single image is admitted once nothing else is in flight
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the job on the pool.
+     * @param job work to be done
+     * @return CompletableFuture completed with the job's result or exception; cancelling it takes a waiting job
+     * off the queue and interrupts a running one
+     * @throws AdmissionException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> job) throws AdmissionException {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                result.complete(job.call());
+            }
+            catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, null);
+        try {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            throw new AdmissionException("Processing queue full: " + executor.getQueue().size() + " waiting", true);
+        }
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+                executor.remove(task);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return pixels reserved by admitted jobs
+     */
+    public long getPixelsInFlight() {
+        return pixelsInFlight.get();
+    }
+
+    /**
+     * @return jobs running right now
+     */
+    public int getActiveJobs() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return jobs waiting for a thread
+     */
+    public int getQueuedJobs() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Pixels reserved from the budget; closing it more than once releases them once
+     */
+    public class Permit implements AutoCloseable {
+        private final long pixels;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long pixels) {
+            this.pixels = pixels;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                pixelsInFlight.addAndGet(-pixels);
+                synchronized (budget) {
+                    budget.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.michalwesoly.pattern.finder.api;
+
+import com.michalwesoly.pattern.finder.service.BatchEntry;
+import com.michalwesoly.pattern.finder.service.BatchRotationService;
+import com.michalwesoly.pattern.finder.service.BatchSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rest controller rotating many images in a single request.
+ * Accepts either many images (PNG, JPEG or another accepted format) or a single ZIP archive of them, and
+ * responds with a ZIP archive of rotated PNG images, streamed as they're done, and manifest.json telling what
+ * happened to every image (ROTATED, NO_PATTERN, AMBIGUOUS, UNSUPPORTED, TOO_LARGE or UNREADABLE).
+ */
+@RestController
+public class BatchUploadController {
+    private static final String ZIP = "application/zip";
+
+    @Autowired
+    private BatchRotationService batchRotationService;
+
+    @Value("${pattern.finder.batch.max-entry-bytes:33554432}")
+    private long maxEntryBytes; // archive entries larger than that aren't read
+
+    /**
+     * Endpoint providing rotated images of a batch
+     *
+     * @param files uploaded images or a single ZIP archive
+     * @return ResponseEntity writing the ZIP archive of rotated images and the manifest
+     */
+    @PostMapping(value = "/rotate/batch", produces = ZIP)
+    public ResponseEntity<StreamingResponseBody> rotateBatch(@RequestParam("files") List<MultipartFile> files) {
+        if (files.isEmpty()) {
+            return ResponseEntity.badRequest().body(null);
+        }
+        StreamingResponseBody body = out -> {
+            if (files.size() == 1 && isZip(files.get(0))) {
+                try (InputStream zip = files.get(0).getInputStream()) {
+                    batchRotationService.rotateAll(BatchSource.ofZip(zip, maxEntryBytes), out);
+                }
+            }
+            else {
+                List<BatchEntry> entries = new ArrayList<>();
+                for (MultipartFile file : files) {
+                    entries.add(new BatchEntry(file.getOriginalFilename(), file));
+                }
+                batchRotationService.rotateAll(BatchSource.of(entries), out);
+            }
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"rotated.zip\"")
+                .body(body);
+    }
+
+    private static boolean isZip(MultipartFile file) {
+        String name = file.getOriginalFilename();
+        return ZIP.equals(file.getContentType()) || "application/x-zip-compressed".equals(file.getContentType())
+                || name != null && name.toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+}
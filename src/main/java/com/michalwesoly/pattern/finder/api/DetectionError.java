@@ -0,0 +1,32 @@
+package com.michalwesoly.pattern.finder.api;
+
+import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
+
+/**
+ * Body of /detect responses for images with more than one pattern, serialized as JSON.
+ * The scan stops at the second pattern under the STOP_ON_AMBIGUITY policy, so matchCount is then a lower bound;
+ * only COLLECT_ALL counts every pattern in the image.
+ */
+public class DetectionError {
+    private final String error;     // why no rotation is given: "AMBIGUOUS"
+    private final int matchCount;   // patterns found before the scan stopped
+
+    DetectionError(AmbiguousImageException e) {
+        this.error = "AMBIGUOUS";
+        this.matchCount = e.getMatchCount();
+    }
+
+    /**
+     * @return "AMBIGUOUS" - the image has more than one pattern
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return number of patterns found, at least 2 - a lower bound unless the scan policy is COLLECT_ALL
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+}
@@ -1,21 +1,46 @@
 package com.michalwesoly.pattern.finder.api;
 
+import com.michalwesoly.pattern.finder.admission.AdmissionException;
+import com.michalwesoly.pattern.finder.admission.ProcessingPool;
 import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
 import com.michalwesoly.pattern.finder.api.exceptions.NoPatternException;
-import com.michalwesoly.pattern.finder.service.ImageProcessor;
+import com.michalwesoly.pattern.finder.api.exceptions.RejectedImageException;
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import com.michalwesoly.pattern.finder.buffer.PooledOutputStream;
+import com.michalwesoly.pattern.finder.cache.CachedResponse;
+import com.michalwesoly.pattern.finder.cache.ResultCache;
+import com.michalwesoly.pattern.finder.metrics.Phase;
+import com.michalwesoly.pattern.finder.metrics.PipelineMetrics;
+import com.michalwesoly.pattern.finder.png.PngEncoder;
+import com.michalwesoly.pattern.finder.service.Detection;
+import com.michalwesoly.pattern.finder.service.ImageHeader;
+import com.michalwesoly.pattern.finder.service.RotationService;
+import com.michalwesoly.pattern.finder.spool.SpooledUpload;
+import com.michalwesoly.pattern.finder.spool.UploadSpool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.imageio.ImageIO;
-import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyEditorSupport;
 import java.io.IOException;
-import java.util.Objects;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Rest controller for managing image upload.
@@ -23,27 +48,313 @@ import java.util.Objects;
  * I) if the uploaded image has a white-red stripe pattern, returns an image with pattern aligned vertically, white up
  * II) if the uploaded image has no pattern, returns 204 No Content response
  * III) if the uploaded image has more patterns conflicting with each other, returns 400 Bad Request response
+ * Uploads are checked by their header first: files that aren't images of an accepted format (PNG, JPEG or another
+ * ImageIO one) get 400 Bad Request, images over the size limits 413 Payload Too Large, both before anything
+ * is decoded. Rotated images are always PNG files.
+ * Responses of /rotate are cached by uploaded content, so the same file uploaded again is served from memory;
+ * images too large to be cached are encoded straight into the response. Rotated images and encoding buffers
+ * are borrowed from the BufferPool and given back once the response is encoded.
+ * With output=EXIF, /rotate returns an uploaded PNG file as it is, with an eXIf chunk telling viewers how to
+ * rotate it - the image is only scanned, never rotated or re-encoded. Other formats are rotated anyway.
+ * The /detect endpoint answers the same way, but with the rotation the image needs as JSON instead of the image,
+ * and with the number of patterns found as JSON for ambiguous images.
+ * Responses of both are counted by status in PipelineMetrics.
  */
 @RestController
 public class ImageUploadController {
+    private static final String ROTATE = "/rotate";
+    private static final String DETECT = "/detect";
+
+    @Autowired
+    private RotationService rotationService;
+    @Autowired
+    private ResultCache resultCache;
+    @Autowired
+    private PngEncoder pngEncoder;
+    @Autowired
+    private ProcessingPool processingPool;
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+    @Autowired
+    private BufferPool bufferPool;
+    @Autowired
+    private UploadSpool uploadSpool;
+
+    @Value("${pattern.finder.admission.retry-after-seconds:1}")
+    private int retryAfterSeconds; // sent with 429 and 503 responses
+
+    /**
+     * Lets the output mode be given in any case, e.g. output=exif
+     */
+    @InitBinder
+    public void outputModeBinding(WebDataBinder binder) {
+        binder.registerCustomEditor(OutputMode.class, new PropertyEditorSupport() {
+            @Override
+            public void setAsText(String text) {
+                setValue(OutputMode.valueOf(text.trim().toUpperCase(Locale.ROOT)));
+            }
+        });
+    }
+
     /**
-     * Endpoint providing rotated image
+     * Endpoint providing rotated image. The image is processed on the ProcessingPool, so the request thread
+     * isn't blocked meanwhile; when the pool is saturated, 503 or 429 with Retry-After is returned at once.
+     * If the request times out first, the job is cancelled and 503 with Retry-After is returned.
      *
      * @param multipartFile uploaded file
-     * @return ResponseEntity containing byte data of the image; since this endpoint produces IMAGE_PNG_VALUE MediaType, browser handles the conversion
+     * @param output PIXELS (default) for the rotated image, EXIF for the uploaded PNG file with eXIf orientation
+     * @return ResponseEntity writing byte data of the image; since this endpoint produces IMAGE_PNG_VALUE MediaType, browser handles the conversion
      */
     @PostMapping(value = "/rotate", produces = MediaType.IMAGE_PNG_VALUE)
-    public ResponseEntity<?> fileUploadAndServe(@RequestParam("file") MultipartFile multipartFile, HttpServletResponse response) throws IOException {
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> fileUploadAndServe(@RequestParam("file") MultipartFile multipartFile,
+                                                                                    @RequestParam(value = "output", defaultValue = "PIXELS") OutputMode output,
+                                                                                    HttpServletRequest request) throws IOException {
+        pipelineMetrics.requestStarted();
+        DeferredResult<ResponseEntity<StreamingResponseBody>> served = new DeferredResult<>();
+        try {
+            admitAndServe(multipartFile, output, request, served);
+        }
+        catch(IOException | RuntimeException e) {
+            pipelineMetrics.requestFinished(ROTATE, HttpStatus.INTERNAL_SERVER_ERROR.value());
+            throw e;
+        }
+        return served;
+    }
+
+    /**
+     * Sets the response of /rotate once the image is processed, or at once if it isn't admitted
+     */
+    private void admitAndServe(MultipartFile multipartFile, OutputMode output, HttpServletRequest request,
+                               DeferredResult<ResponseEntity<StreamingResponseBody>> served) throws IOException {
         if (!multipartFile.isEmpty()) { // Can't be empty
-            if (Objects.equals(multipartFile.getContentType(), "image/png")) {
+            if (isImage(multipartFile)) {
+                try {
+                    ImageHeader header = rotationService.inspect(multipartFile); // header read, nothing decoded
+                    OutputMode mode = ImageHeader.PNG.equals(header.getFormat()) ? output : OutputMode.PIXELS; // eXIf is a PNG chunk
+                    ResponseLease lease = new ResponseLease(processingPool.admit(header.getPixels()));
+                    CompletableFuture<ResponseEntity<StreamingResponseBody>> job;
+                    try {
+                        job = processingPool.submit(() -> serve(multipartFile, header, mode, lease));
+                    }
+                    catch(AdmissionException e) {
+                        lease.close();
+                        throw e;
+                    }
+                    lease.attach(job);
+                    job.whenComplete((entity, error) -> served(served, entity, error, lease));
+                    WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(ResponseLease.class.getName(), lease);
+                    served.onTimeout(() -> {
+                        complete(served, retryLater(HttpStatus.SERVICE_UNAVAILABLE)); // before the cancelled job fails it
+                        lease.close();
+                    });
+                    served.onError(error -> lease.close());
+                    served.onCompletion(lease::closeUnlessStreaming);
+                }
+                catch(AdmissionException e) {
+                    complete(served, retryLater(e.isOverloaded() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.TOO_MANY_REQUESTS));
+                }
+                catch(RejectedImageException e) {
+                    complete(served, ResponseEntity.status(status(e)).body(null));
+                }
+                return;
+            }
+            complete(served, ResponseEntity.badRequest().body(null));
+            return;
+        }
+        complete(served, ResponseEntity.status(HttpStatus.NO_CONTENT).body(null));
+    }
+
+    /**
+     * Response for an admitted upload, run on the ProcessingPool; the lease is closed by the caller
+     */
+    private ResponseEntity<StreamingResponseBody> serve(MultipartFile multipartFile, ImageHeader header, OutputMode mode,
+                                                        ResponseLease lease) throws IOException {
+        SpooledUpload upload = uploadSpool.spool(multipartFile); // large uploads are decoded from disk
+        lease.attach(upload);
+        return serve(upload, header, mode);
+    }
+
+    /**
+     * Sets the response of a processed upload. The lease is closed once the body is written, or at once if
+     * there's no body or the request timed out meanwhile
+     */
+    private void served(DeferredResult<ResponseEntity<StreamingResponseBody>> served,
+                        ResponseEntity<StreamingResponseBody> entity, Throwable error, ResponseLease lease) {
+        if (error != null) {
+            lease.close();
+            if (served.setErrorResult(error)) {
+                pipelineMetrics.requestFinished(ROTATE, HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
+            return;
+        }
+        StreamingResponseBody body = entity.getBody();
+        if (body == null) {
+            lease.close();
+            complete(served, entity);
+        }
+        else if (!complete(served, ResponseEntity.status(entity.getStatusCode()).body(out -> {
+            try (lease) { // the spooled file is read by eXIf copies while they're written
+                body.writeTo(out);
+            }
+        }))) {
+            lease.close();
+        }
+    }
+
+    /**
+     * Sets the response unless the request got one already, counting it in PipelineMetrics
+     * @return true if the response was set
+     */
+    private boolean complete(DeferredResult<ResponseEntity<StreamingResponseBody>> served,
+                             ResponseEntity<StreamingResponseBody> entity) {
+        if (served.setResult(entity)) {
+            pipelineMetrics.requestFinished(ROTATE, entity.getStatusCodeValue());
+            return true;
+        }
+        return false;
+    }
+
+    private ResponseEntity<StreamingResponseBody> retryLater(HttpStatus status) {
+        return ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds)).body(null);
+    }
+
+    /**
+     * Response from the cache or, for uploads too large to be cached, straight from the rotated image; the header
+     * read at admission isn't read again
+     */
+    private ResponseEntity<StreamingResponseBody> serve(SpooledUpload upload, ImageHeader header, OutputMode mode) throws IOException {
+        if (!resultCache.accepts(upload.getSize())) {
+            return rotateAndStream(upload, header, mode); // too large to be held in memory
+        }
+        CachedResponse result = resultCache.get(upload, mode.name(), () -> rotateAndEncode(upload, header, mode));
+        byte[] body = result.getBody();
+        return ResponseEntity.status(result.getStatus()).body(body == null ? null : out -> out.write(body));
+    }
+
+    /**
+     * @return true if the content type is an image one - whether the file is an image of an accepted format
+     * is told by the ImagePrefilter from the file's header
+     */
+    private static boolean isImage(MultipartFile multipartFile) {
+        String contentType = multipartFile.getContentType();
+        return contentType != null && contentType.startsWith("image/");
+    }
+
+    /**
+     * @return 413 for images over the size limits, 400 for files that aren't images of an accepted format
+     */
+    private static HttpStatus status(RejectedImageException e) {
+        return e.isTooLarge() ? HttpStatus.PAYLOAD_TOO_LARGE : HttpStatus.BAD_REQUEST;
+    }
+
+    /**
+     * Response encoding the rotated image straight into the servlet's output stream
+     */
+    private ResponseEntity<StreamingResponseBody> rotateAndStream(SpooledUpload upload, ImageHeader header, OutputMode mode) throws IOException {
+        try {
+            if (mode == OutputMode.EXIF) {
+                Detection detection = rotationService.detect(upload, header); // the image is only scanned
+                return ResponseEntity.ok(out -> rotationService.writeOriented(upload, detection, out));
+            }
+            BufferedImage rotated = rotationService.rotate(upload, header); // Here's the magic
+            return ResponseEntity.ok(out -> { // converting image to binary on the fly
                 try {
-                    ImageProcessor processor = new ImageProcessor(ImageIO.read(multipartFile.getInputStream())); // Here's the magic
-                    ByteArrayOutputStream bao = new ByteArrayOutputStream();
-                    ImageIO.write(processor.processImage(), "png", bao); // converting image to binary
-                    return ResponseEntity.ok(bao.toByteArray()); // and returning it
+                    encode(rotated, out);
+                }
+                finally {
+                    bufferPool.release(rotated);
+                }
+            });
+        }
+        catch(AmbiguousImageException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+        catch(NoPatternException e) {
+            return ResponseEntity.status(HttpStatus.NO_CONTENT).body(null);
+        }
+    }
+
+    /**
+     * Response for an upload that isn't cached yet
+     */
+    private CachedResponse rotateAndEncode(SpooledUpload upload, ImageHeader header, OutputMode mode) throws IOException {
+        try {
+            if (mode == OutputMode.EXIF) {
+                Detection detection = rotationService.detect(upload, header); // the image is only scanned
+                try (PooledOutputStream copy = new PooledOutputStream(bufferPool, (int) upload.getSize() + 64)) {
+                    rotationService.writeOriented(upload, detection, copy);
+                    return new CachedResponse(HttpStatus.OK.value(), copy.toByteArray());
+                }
+            }
+            BufferedImage rotated = rotationService.rotate(upload, header); // Here's the magic
+            try (PooledOutputStream encoded = new PooledOutputStream(bufferPool, (int) upload.getSize())) {
+                encode(rotated, encoded); // converting image to binary
+                return new CachedResponse(HttpStatus.OK.value(), encoded.toByteArray()); // and returning it
+            }
+            finally {
+                bufferPool.release(rotated);
+            }
+        }
+        catch(AmbiguousImageException e) {
+            return new CachedResponse(HttpStatus.BAD_REQUEST.value(), null);
+        }
+        catch(NoPatternException e) {
+            return new CachedResponse(HttpStatus.NO_CONTENT.value(), null);
+        }
+    }
+
+    private void encode(BufferedImage image, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            pngEncoder.write(image, out);
+        }
+        finally {
+            pipelineMetrics.record(Phase.ENCODE, start);
+        }
+    }
+
+    /**
+     * Endpoint providing hit and miss counters of the /rotate response cache
+     *
+     * @return ResponseEntity containing cache statistics serialized as JSON
+     */
+    @GetMapping(value = "/cache/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ResultCache.Statistics> cacheStatistics() {
+        return ResponseEntity.ok(resultCache.getStatistics());
+    }
+
+    /**
+     * Endpoint providing only the rotation the image needs - the image is neither rotated nor encoded
+     *
+     * @param multipartFile uploaded file
+     * @return ResponseEntity containing Detection serialized as JSON, or DetectionError with the number of
+     * patterns found if the image is ambiguous
+     */
+    @PostMapping(value = "/detect", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> fileUploadAndDetect(@RequestParam("file") MultipartFile multipartFile) throws IOException {
+        pipelineMetrics.requestStarted();
+        int status = HttpStatus.INTERNAL_SERVER_ERROR.value(); // unless a response is returned
+        try {
+            ResponseEntity<?> detected = detect(multipartFile);
+            status = detected.getStatusCodeValue();
+            return detected;
+        }
+        finally {
+            pipelineMetrics.requestFinished(DETECT, status);
+        }
+    }
+
+    private ResponseEntity<?> detect(MultipartFile multipartFile) throws IOException {
+        if (!multipartFile.isEmpty()) { // Can't be empty
+            if (isImage(multipartFile)) {
+                try (SpooledUpload upload = uploadSpool.spool(multipartFile)) {
+                    return ResponseEntity.ok(rotationService.detect(upload));
+                }
+                catch(RejectedImageException e) {
+                    return ResponseEntity.status(status(e)).body(null);
                 }
                 catch(AmbiguousImageException e) {
-                    return ResponseEntity.badRequest().body(null);
+                    return ResponseEntity.badRequest().body(new DetectionError(e));
                 }
                 catch(NoPatternException e) {
                     return ResponseEntity.status(HttpStatus.NO_CONTENT).body(null);
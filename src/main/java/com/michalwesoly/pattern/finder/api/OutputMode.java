@@ -0,0 +1,9 @@
+package com.michalwesoly.pattern.finder.api;
+
+/**
+ * What /rotate responds with.
+ */
+public enum OutputMode {
+    PIXELS,     // the image rotated and encoded as a new PNG file
+    EXIF        // the uploaded PNG file byte for byte, with an eXIf chunk telling viewers how to rotate it
+}
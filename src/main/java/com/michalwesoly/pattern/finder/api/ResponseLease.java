@@ -0,0 +1,91 @@
+package com.michalwesoly.pattern.finder.api;
+
+import com.michalwesoly.pattern.finder.admission.ProcessingPool;
+import com.michalwesoly.pattern.finder.spool.SpooledUpload;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * What an admitted /rotate request holds until its response is written: the pixels reserved from the
+ * ProcessingPool, the spooled upload and the job processing it.
+ *
+ * Closing the lease cancels the job if it's still running, releases the pixels and deletes the spooled file, once
+ * however many times it's closed. Besides the response body, it's closed when the asynchronous request times out,
+ * fails or completes - registered with the WebAsyncManager, it sees the request writing the body as well, so a
+ * body that's never written doesn't keep its pixels and file for the life of the process.
+ */
+class ResponseLease implements AutoCloseable, CallableProcessingInterceptor {
+    private final ProcessingPool.Permit permit;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile SpooledUpload upload;  // set once the job spooled it
+    private volatile Future<?> job;
+    private volatile boolean streaming;     // the body is being written, in a second asynchronous request
+
+    ResponseLease(ProcessingPool.Permit permit) {
+        this.permit = permit;
+    }
+
+    /**
+     * Hands the job processing the upload over, to be cancelled if the lease is closed first
+     */
+    void attach(Future<?> job) {
+        this.job = job;
+        if (closed.get()) {
+            job.cancel(true);
+        }
+    }
+
+    /**
+     * Hands the spooled upload over, deleted at once if the lease is closed already
+     */
+    void attach(SpooledUpload upload) throws IOException {
+        this.upload = upload;
+        if (closed.get()) {
+            upload.close();
+        }
+    }
+
+    /**
+     * Closes the lease unless the body is being written, which closes it itself
+     */
+    void closeUnlessStreaming() {
+        if (!streaming) {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            Future<?> job = this.job;
+            if (job != null) {
+                job.cancel(true);
+            }
+            permit.close();
+            SpooledUpload upload = this.upload;
+            if (upload != null) {
+                try {
+                    upload.close();
+                }
+                catch (IOException e) {
+                    // left behind for the spool's sweep
+                }
+            }
+        }
+    }
+
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+        streaming = true;
+    }
+
+    @Override
+    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+        close(); // written, timed out or failed
+    }
+}
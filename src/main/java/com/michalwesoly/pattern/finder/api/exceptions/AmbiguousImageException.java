@@ -3,4 +3,30 @@ package com.michalwesoly.pattern.finder.api.exceptions;
 /**
  * Exception thrown when provided image has more than 1 pattern and they're conflicting
  */
-public class AmbiguousImageException extends Exception { }
+public class AmbiguousImageException extends Exception {
+    private final long pixelsScanned; // scan positions visited before the ambiguity was found
+    private final int matchCount;     // patterns found before the scan stopped
+
+    public AmbiguousImageException() {
+        this(0, 2);
+    }
+
+    public AmbiguousImageException(long pixelsScanned, int matchCount) {
+        this.pixelsScanned = pixelsScanned;
+        this.matchCount = matchCount;
+    }
+
+    /**
+     * @return number of scan positions visited before the scan stopped
+     */
+    public long getPixelsScanned() {
+        return pixelsScanned;
+    }
+
+    /**
+     * @return number of patterns found - a lower bound if the scan policy stopped the scan at the second one
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+}
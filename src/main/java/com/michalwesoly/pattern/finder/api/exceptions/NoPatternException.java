@@ -3,4 +3,21 @@ package com.michalwesoly.pattern.finder.api.exceptions;
 /**
  * Exception thrown if provided image has no pattern
  */
-public class NoPatternException extends Exception { }
+public class NoPatternException extends Exception {
+    private final long pixelsScanned; // scan positions visited before giving up
+
+    public NoPatternException() {
+        this(0);
+    }
+
+    public NoPatternException(long pixelsScanned) {
+        this.pixelsScanned = pixelsScanned;
+    }
+
+    /**
+     * @return number of scan positions visited before the scan stopped
+     */
+    public long getPixelsScanned() {
+        return pixelsScanned;
+    }
+}
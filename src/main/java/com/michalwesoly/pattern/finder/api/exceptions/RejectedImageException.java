@@ -0,0 +1,20 @@
+package com.michalwesoly.pattern.finder.api.exceptions;
+
+/**
+ * Exception thrown if the upload is rejected from its header alone, before anything is decoded
+ */
+public class RejectedImageException extends Exception {
+    private final boolean tooLarge; // true if the image exceeds the size limits, false if it isn't a PNG file
+
+    public RejectedImageException(String message, boolean tooLarge) {
+        super(message);
+        this.tooLarge = tooLarge;
+    }
+
+    /**
+     * @return true if the image is a PNG file exceeding the size limits (413), false if it isn't a PNG file (400)
+     */
+    public boolean isTooLarge() {
+        return tooLarge;
+    }
+}
@@ -0,0 +1,190 @@
+package com.michalwesoly.pattern.finder.buffer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.Deque;
+import java.util.Hashtable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-classed pool of int and byte arrays reused between requests - rotated image rasters and encoder buffers,
+ * which would otherwise be allocated for every image and promoted to the old generation when large.
+ *
+ * Arrays are rounded up to size classes, four per power of two, so an array fits any request of its class and
+ * wastes at most a quarter of its length. Idle arrays of every class are kept on a lock-free stack shared by all
+ * threads, so an array may be released by another thread than the one that borrowed it - e.g. a rotated image
+ * encoded into a streamed response - and still be reused. The bytes held are capped: arrays released over the cap,
+ * or larger than the largest pooled array, are left to the garbage collector.
+ */
+public class BufferPool {
+    public static final BufferPool NONE = new BufferPool(0, 0);  // never holds anything, every borrow allocates
+    private static final String POOLED = "pattern.finder.pooled"; // property of images whose raster is pooled
+
+    private static final int MIN_LENGTH = 1 << 10;   // shorter arrays are allocated, pooling them isn't worth it
+    private static final int CLASSES = 4 * Integer.SIZE;
+
+    private final long maxBytes;         // held by idle arrays
+    private final long maxArrayBytes;    // larger arrays are never held
+    private final AtomicLong heldBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+    private final Deque<?>[] ints = stacks();    // idle int arrays by size class, most recently released first
+    private final Deque<?>[] bytes = stacks();
+
+    /**
+     * @param maxBytes bytes held by idle arrays; 0 disables pooling
+     * @param maxArrayBytes size of the largest array held
+     */
+    public BufferPool(long maxBytes, long maxArrayBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxArrayBytes = Math.max(0, maxArrayBytes);
+    }
+
+    /**
+     * @param length elements needed
+     * @return array of at least that many ints, contents undefined
+     */
+    public int[] borrowInts(int length) {
+        if (!pooled(length, Integer.BYTES)) {
+            return new int[length];
+        }
+        int[] array = (int[]) take(ints, length, Integer.BYTES);
+        return array != null ? array : new int[classLength(length)];
+    }
+
+    /**
+     * @param length elements needed
+     * @return array of at least that many bytes, contents undefined
+     */
+    public byte[] borrowBytes(int length) {
+        if (!pooled(length, 1)) {
+            return new byte[length];
+        }
+        byte[] array = (byte[]) take(bytes, length, 1);
+        return array != null ? array : new byte[classLength(length)];
+    }
+
+    /**
+     * Gives back an array borrowed from this pool; it mustn't be used afterwards
+     */
+    public void release(int[] array) {
+        if (array != null && pooled(array.length, Integer.BYTES) && classLength(array.length) == array.length) {
+            put(ints, array, array.length, (long) array.length * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Gives back an array borrowed from this pool; it mustn't be used afterwards
+     */
+    public void release(byte[] array) {
+        if (array != null && pooled(array.length, 1) && classLength(array.length) == array.length) {
+            put(bytes, array, array.length, array.length);
+        }
+    }
+
+    /**
+     * Creates an image over a raster whose data array was borrowed from this pool, so that releasing the image
+     * gives the array back.
+     * @param colorModel ColorModel of the image
+     * @param raster WritableRaster over a DataBufferInt or DataBufferByte of a borrowed array
+     * @param alphaPremultiplied whether the samples are premultiplied by alpha
+     * @return BufferedImage to be released once it's no longer used
+     */
+    public BufferedImage image(ColorModel colorModel, WritableRaster raster, boolean alphaPremultiplied) {
+        Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put(POOLED, this);
+        return new BufferedImage(colorModel, raster, alphaPremultiplied, properties);
+    }
+
+    /**
+     * Gives back the raster data of an image created by image(), e.g. rotated by ImageRotator;
+     * other images are ignored. The image mustn't be used afterwards.
+     * @param image BufferedImage or null
+     */
+    public void release(BufferedImage image) {
+        if (image == null || image.getProperty(POOLED) != this) {
+            return;
+        }
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (buffer instanceof DataBufferInt) {
+            release(((DataBufferInt) buffer).getData());
+        }
+        else if (buffer instanceof DataBufferByte) {
+            release(((DataBufferByte) buffer).getData());
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return arrays released but left to the garbage collector, because the pool was full
+     */
+    public long getDiscards() {
+        return discards.sum();
+    }
+
+    public long getHeldBytes() {
+        return heldBytes.get();
+    }
+
+    private boolean pooled(int length, int elementBytes) {
+        return length > MIN_LENGTH && (long) classLength(length) * elementBytes <= maxArrayBytes;
+    }
+
+    private Object take(Deque<?>[] stacks, int length, int elementBytes) {
+        int length0 = classLength(length);
+        Object array = stacks[classIndex(length0)].pollFirst();
+        if (array == null) {
+            misses.increment();
+            return null;
+        }
+        heldBytes.addAndGet(-(long) length0 * elementBytes);
+        hits.increment();
+        return array;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void put(Deque<?>[] stacks, Object array, int length, long bytes) {
+        if (heldBytes.addAndGet(bytes) > maxBytes) {
+            heldBytes.addAndGet(-bytes);
+            discards.increment();
+            return;
+        }
+        ((Deque<Object>) stacks[classIndex(length)]).offerFirst(array);
+    }
+
+    /**
+     * @return length rounded up to a quarter of the power of two below it
+     */
+    static int classLength(int length) {
+        int step = Math.max(1, Integer.highestOneBit(length - 1) >> 2);
+        return (int) Math.min(Integer.MAX_VALUE - 8, ((long) length + step - 1) / step * step);
+    }
+
+    private static int classIndex(int classLength) {
+        int high = Integer.highestOneBit(classLength - 1);
+        int step = Math.max(1, high >> 2);
+        return 4 * Integer.numberOfTrailingZeros(high) + classLength / step - 5;
+    }
+
+    private static Deque<?>[] stacks() {
+        Deque<?>[] stacks = new Deque<?>[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+            stacks[i] = new ConcurrentLinkedDeque<>();
+        }
+        return stacks;
+    }
+}
@@ -0,0 +1,72 @@
+package com.michalwesoly.pattern.finder.buffer;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * In-memory output stream, like ByteArrayOutputStream, whose buffer is borrowed from a BufferPool and grown
+ * by borrowing a larger one - encoding an image into memory leaves behind only the copy toByteArray() returns.
+ * The buffer goes back to the pool when the stream is closed.
+ */
+public class PooledOutputStream extends OutputStream {
+    private final BufferPool pool;
+    private byte[] buffer;
+    private int count;
+
+    /**
+     * @param pool BufferPool buffers are borrowed from
+     * @param expectedBytes initial capacity, e.g. a guess of the encoded size
+     */
+    public PooledOutputStream(BufferPool pool, int expectedBytes) {
+        this.pool = pool;
+        this.buffer = pool.borrowBytes(Math.max(32, expectedBytes));
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(data, offset, buffer, count, length);
+        count += length;
+    }
+
+    /**
+     * @return copy of the bytes written so far
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gives the buffer back to the pool; the stream mustn't be used afterwards
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new OutOfMemoryError("Pooled output stream can't hold more than 2 GB");
+        }
+        if (capacity > buffer.length) {
+            byte[] grown = pool.borrowBytes((int) Math.min(Integer.MAX_VALUE - 8, Math.max(capacity,
+                    2L * buffer.length)));
+            System.arraycopy(buffer, 0, grown, 0, count);
+            pool.release(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.michalwesoly.pattern.finder.cache;
+
+/**
+ * Outcome of processing an upload, as sent back to the client: HTTP status and body bytes.
+ * Failures such as 204 (no pattern) and 400 (ambiguous image) are cached just like rotated images.
+ */
+public final class CachedResponse {
+    private final int status;   // HTTP status code
+    private final byte[] body;  // response body, null if there's none
+
+    public CachedResponse(int status, byte[] body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return response body shared by every hit - must not be modified; null if there's no body
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return approximate memory taken by the response in the cache
+     */
+    long getWeight() {
+        return body == null ? 0 : body.length;
+    }
+}
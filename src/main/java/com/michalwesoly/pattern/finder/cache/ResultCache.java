@@ -0,0 +1,281 @@
+package com.michalwesoly.pattern.finder.cache;
+
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of responses keyed by the SHA-256 hash of the uploaded bytes, so re-uploading the same file skips
+ * decoding, scanning, rotating and encoding.
+ *
+ * Entries are evicted in least recently used order once their bodies take more than the byte budget.
+ * Concurrent uploads of the same file are computed once: the first one computes the response,
+ * the others wait for it and get the same result, or its failure - unless it was cancelled, e.g. by its own
+ * request timing out, in which case one of them computes the response instead.
+ */
+public class ResultCache {
+    private static final int ENTRY_OVERHEAD = 128; // key, map entry and response object, roughly
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long maxBytes;        // budget for all entries, 0 disables caching
+    private final long maxEntryBytes;   // uploads larger than that aren't cached
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long usedBytes; // guarded by entries
+
+    /**
+     * @param maxBytes memory budget for cached responses; 0 or less disables caching
+     */
+    public ResultCache(long maxBytes) {
+        this(maxBytes, maxBytes);
+    }
+
+    /**
+     * @param maxBytes memory budget for cached responses; 0 or less disables caching
+     * @param maxEntryBytes size of the largest upload whose response is cached
+     */
+    public ResultCache(long maxBytes, long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    /**
+     * Tells whether the response to an upload of given size is worth caching. Responses to larger uploads
+     * should be streamed to the client instead of being held in memory as a whole.
+     * @param uploadBytes size of the uploaded file
+     * @return false if caching is disabled or the upload is too large
+     */
+    public boolean accepts(long uploadBytes) {
+        return maxBytes > 0 && uploadBytes <= maxEntryBytes;
+    }
+
+    /**
+     * Returns the cached response for the upload's content or computes it.
+     * @param upload uploaded file, read once to hash its content
+     * @param computation produces the response if it isn't cached yet
+     * @return cached or computed response
+     * @throws IOException if the upload can't be read or the computation fails; failures aren't cached
+     */
+    public CachedResponse get(InputStreamSource upload, Computation computation) throws IOException {
+        return get(upload, "", computation);
+    }
+
+    /**
+     * Returns the cached response of a given kind for the upload's content or computes it.
+     * @param upload uploaded file, read once to hash its content
+     * @param variant kind of response, e.g. an output mode - responses of different variants are cached apart
+     * @param computation produces the response if it isn't cached yet
+     * @return cached or computed response
+     * @throws IOException if the upload can't be read or the computation fails; failures aren't cached
+     */
+    public CachedResponse get(InputStreamSource upload, String variant, Computation computation) throws IOException {
+        if (maxBytes <= 0) {
+            misses.incrementAndGet();
+            return computation.compute();
+        }
+        String key = variant.isEmpty() ? key(upload) : variant + ":" + key(upload);
+        CachedResponse cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        while (true) {
+            CompletableFuture<CachedResponse> own = new CompletableFuture<>();
+            CompletableFuture<CachedResponse> running = inFlight.putIfAbsent(key, own);
+            if (running == null) {
+                return compute(key, own, computation);
+            }
+            CachedResponse joined = await(running); // the same file is being processed right now
+            if (joined != null) {
+                hits.incrementAndGet();
+                return joined;
+            }
+            // its computation was cancelled, so it's tried again - here, unless another upload got to it first
+        }
+    }
+
+    /**
+     * Computes the response as the owner of the in-flight future, which is completed whatever happens
+     */
+    private CachedResponse compute(String key, CompletableFuture<CachedResponse> own, Computation computation) throws IOException {
+        CachedResponse cached;
+        try {
+            cached = lookup(key); // stored by a computation that finished after the first lookup
+            if (cached != null) {
+                hits.incrementAndGet();
+            }
+            else {
+                misses.incrementAndGet();
+                cached = computation.compute();
+                store(key, cached);
+            }
+            own.complete(cached);
+            return cached;
+        }
+        catch (Throwable e) {
+            if (e instanceof InterruptedIOException || e instanceof ClosedByInterruptException
+                    || Thread.currentThread().isInterrupted()) {
+                own.cancel(false); // the failure is this request's, not the upload's
+            }
+            else {
+                own.completeExceptionally(e); // even an Error, so waiters don't wait forever
+            }
+            throw e;
+        }
+        finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private CachedResponse lookup(String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private void store(String key, CachedResponse response) {
+        long weight = weight(key, response);
+        if (weight > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            CachedResponse previous = entries.put(key, response);
+            usedBytes += weight - (previous == null ? 0 : weight(key, previous));
+
+            Iterator<Map.Entry<String, CachedResponse>> eldest = entries.entrySet().iterator();
+            while (usedBytes > maxBytes) {
+                Map.Entry<String, CachedResponse> entry = eldest.next();
+                usedBytes -= weight(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    private static long weight(String key, CachedResponse response) {
+        return ENTRY_OVERHEAD + 2L * key.length() + response.getWeight();
+    }
+
+    /**
+     * @return result of the running computation, null if it was cancelled
+     */
+    private static CachedResponse await(CompletableFuture<CachedResponse> running) throws IOException {
+        try {
+            return running.get();
+        }
+        catch (CancellationException e) {
+            return null;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the same upload to be processed");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * @return hex encoded SHA-256 hash of the upload's content
+     */
+    static String key(InputStreamSource upload) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+        byte[] buffer = new byte[8192];
+        try (InputStream in = upload.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >>> 4) & 0xF];
+            hex[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * @return current counters and size of the cache
+     */
+    public Statistics getStatistics() {
+        synchronized (entries) {
+            return new Statistics(hits.get(), misses.get(), entries.size(), usedBytes, maxBytes);
+        }
+    }
+
+    /**
+     * Produces the response for an upload that isn't cached
+     */
+    @FunctionalInterface
+    public interface Computation {
+        CachedResponse compute() throws IOException;
+    }
+
+    /**
+     * Snapshot of cache counters, served by /cache/stats
+     */
+    public static final class Statistics {
+        private final long hits;        // responses served without computing them, including joined computations
+        private final long misses;      // responses computed
+        private final int entries;      // responses cached
+        private final long usedBytes;   // approximate memory taken by cached responses
+        private final long maxBytes;    // memory budget
+
+        Statistics(long hits, long misses, int entries, long usedBytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.entries = entries;
+            this.usedBytes = usedBytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getUsedBytes() {
+            return usedBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+    }
+}
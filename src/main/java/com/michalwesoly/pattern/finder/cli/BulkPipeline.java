@@ -0,0 +1,296 @@
+package com.michalwesoly.pattern.finder.cli;
+
+import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
+import com.michalwesoly.pattern.finder.api.exceptions.NoPatternException;
+import com.michalwesoly.pattern.finder.api.exceptions.RejectedImageException;
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import com.michalwesoly.pattern.finder.png.PngEncoder;
+import com.michalwesoly.pattern.finder.service.BatchOutcome;
+import com.michalwesoly.pattern.finder.service.ImageHeader;
+import com.michalwesoly.pattern.finder.service.ImagePrefilter;
+import com.michalwesoly.pattern.finder.service.ImageProcessor;
+import com.michalwesoly.pattern.finder.service.ImageRotator;
+import com.michalwesoly.pattern.finder.service.MarkerSet;
+import com.michalwesoly.pattern.finder.service.PatternScanner;
+import com.michalwesoly.pattern.finder.service.ScanPolicy;
+import org.springframework.core.io.FileSystemResource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Offline pipeline rotating every image of a directory tree into another directory tree, without the web stack.
+ *
+ * Files go through the stages read, decode, scan, rotate and write, each run by a thread count of its own and
+ * connected by bounded queues, so a slow stage holds back the ones before it instead of filling memory with
+ * decoded images. A file failing in a stage skips the remaining ones but still reaches the writer, which records
+ * its outcome in the Checkpoint; files an earlier run recorded are skipped. Files that couldn't be read or written,
+ * or whose processing ran into an Error (e.g. out of memory), aren't recorded, so the next run tries them again.
+ * Rotated images are written as PNG under the same relative path with .png appended, into a .part file renamed
+ * once it's complete, so an output file is never left half written.
+ *
+ * Rotated rasters aren't pooled: a queue of them waits between rotating and writing threads, more than a pool
+ * sized for a few images would keep, so releasing them would mostly discard. Encoder buffers are pooled.
+ */
+public class BulkPipeline {
+    private static final Job END = new Job(null, null); // no more files for a stage
+
+    private final PatternScanner scanner;
+    private final MarkerSet markers;        // what the scanner looks for, to rule out grayscale images
+    private final ScanPolicy policy;
+    private final ImagePrefilter prefilter; // header check before a file is read
+    private final PngEncoder encoder;
+    private final Map<Stage, Integer> threads; // threads of every stage
+    private final int queueCapacity;        // files waiting between two stages
+    private final BulkStatistics statistics = new BulkStatistics();
+
+    /**
+     * @param scanner PatternScanner looking for the markers in decoded images
+     * @param markers MarkerSet the scanner looks for
+     * @param policy ScanPolicy deciding when the scan may stop before the end of the image
+     * @param prefilter header check; rejected files are recorded as UNSUPPORTED or TOO_LARGE
+     * @param encoder PngEncoder writing rotated images
+     * @param threads threads of every stage, 1 for stages missing from the map
+     * @param queueCapacity files waiting between two stages
+     */
+    public BulkPipeline(PatternScanner scanner, MarkerSet markers, ScanPolicy policy, ImagePrefilter prefilter,
+                        PngEncoder encoder, Map<Stage, Integer> threads, int queueCapacity) {
+        this.scanner = scanner;
+        this.markers = markers;
+        this.policy = policy;
+        this.prefilter = prefilter;
+        this.encoder = encoder;
+        this.threads = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            this.threads.put(stage, Math.max(1, threads.getOrDefault(stage, 1)));
+        }
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Processes every regular file under the input directory not finished according to the checkpoint.
+     * @param input directory walked for images
+     * @param output directory rotated images are written to, created if needed
+     * @param checkpoint files finished by earlier runs, and where files finished by this run are recorded
+     * @return statistics of the run, the same as getStatistics()
+     * @throws IOException if the input directory can't be walked or the checkpoint can't be written
+     * @throws InterruptedIOException if the thread is interrupted while waiting for the stages
+     */
+    public BulkStatistics run(Path input, Path output, Checkpoint checkpoint) throws IOException {
+        List<BlockingQueue<Job>> queues = new ArrayList<>();
+        for (int i = 0; i < Stage.values().length; i++) {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        List<Thread> workers = new ArrayList<>();
+        IOException[] checkpointFailure = new IOException[1];
+        for (Stage stage : Stage.values()) {
+            BlockingQueue<Job> in = queues.get(stage.ordinal());
+            BlockingQueue<Job> out = stage.ordinal() + 1 < queues.size() ? queues.get(stage.ordinal() + 1) : null;
+            AtomicInteger running = new AtomicInteger(threads.get(stage));
+            for (int i = 0; i < threads.get(stage); i++) {
+                Thread worker = new Thread(() -> work(stage, in, out, running, output, checkpoint, checkpointFailure),
+                        "bulk-" + stage.tag() + "-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+        }
+
+        Path outputTree = output.toAbsolutePath().normalize();
+        try (Stream<Path> files = Files.walk(input)) {
+            Iterator<Path> walk = files.filter(Files::isRegularFile)
+                    .filter(file -> !file.toAbsolutePath().normalize().startsWith(outputTree)) // output inside input
+                    .iterator();
+            while (walk.hasNext()) {
+                Path file = walk.next();
+                String name = input.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                if (checkpoint.isFinished(name)) {
+                    statistics.skipped();
+                }
+                else {
+                    queues.get(0).put(new Job(file, name));
+                }
+            }
+            queues.get(0).put(END);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+        catch (InterruptedException e) {
+            workers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing files");
+        }
+        if (checkpointFailure[0] != null) {
+            throw checkpointFailure[0];
+        }
+        return statistics;
+    }
+
+    /**
+     * @return statistics of the current or last run, updated as files go through the stages
+     */
+    public BulkStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Loop of a single stage thread: takes files until the end of the input, passes END on to its sibling threads,
+     * and the last of them to end passes it on to the next stage.
+     */
+    private void work(Stage stage, BlockingQueue<Job> in, BlockingQueue<Job> out, AtomicInteger running,
+                      Path output, Checkpoint checkpoint, IOException[] checkpointFailure) {
+        try {
+            for (Job job = in.take(); job != END; job = in.take()) {
+                if (job.outcome == null) {
+                    long start = System.nanoTime();
+                    try {
+                        process(stage, job, output);
+                    }
+                    catch (Throwable e) {
+                        job.fail(stage, e); // even an Error only fails the file, the stage goes on
+                    }
+                    statistics.record(stage, start);
+                }
+                if (out != null) {
+                    out.put(job);
+                }
+                else {
+                    finish(job, checkpoint, checkpointFailure);
+                }
+            }
+            in.put(END);
+            if (running.decrementAndGet() == 0 && out != null) {
+                out.put(END);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // run() was interrupted and stops waiting for the stages
+        }
+    }
+
+    private void process(Stage stage, Job job, Path output) throws Exception {
+        switch (stage) {
+            case READ:
+                ImageHeader header = prefilter.inspect(new FileSystemResource(job.source));
+                if (header.isGrayscale() && !markers.mayMatchGray()) {
+                    throw new NoPatternException(); // known without decoding a single row
+                }
+                job.bytes = Files.readAllBytes(job.source);
+                statistics.read(job.bytes.length, header.getPixels());
+                break;
+            case DECODE:
+                job.image = ImageIO.read(new ByteArrayInputStream(job.bytes));
+                job.bytes = null;
+                if (job.image == null) {
+                    throw new IOException("No ImageIO reader decodes " + job.name);
+                }
+                break;
+            case SCAN:
+                job.rotation = new ImageProcessor(job.image, scanner, policy).detect().getRotation();
+                break;
+            case ROTATE:
+                job.image = ImageRotator.rotate(job.image, job.rotation, BufferPool.NONE);
+                break;
+            case WRITE:
+                Path target = output.resolve(outputName(job.name));
+                Path part = target.resolveSibling(target.getFileName() + ".part");
+                Files.createDirectories(target.getParent());
+                try {
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(part), 1 << 16)) {
+                        encoder.write(job.image, out);
+                    }
+                    Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                finally {
+                    Files.deleteIfExists(part); // still there only if writing failed
+                }
+                job.image = null;
+                job.outcome = BatchOutcome.ROTATED;
+                break;
+            default:
+                throw new IllegalStateException("Unknown stage " + stage);
+        }
+    }
+
+    private void finish(Job job, Checkpoint checkpoint, IOException[] checkpointFailure) {
+        if (job.retry) {
+            statistics.failed();
+            return;
+        }
+        statistics.finished(job.outcome);
+        try {
+            checkpoint.record(job.name, job.outcome);
+        }
+        catch (IOException e) {
+            synchronized (checkpointFailure) {
+                checkpointFailure[0] = e; // reported once the run ends; the file is processed again next time
+            }
+        }
+    }
+
+    /**
+     * Input path with .png appended, PNG files included - keeping their names would let x.png collide with the
+     * output of x, so different inputs never share an output
+     */
+    static String outputName(String name) {
+        return name + ".png";
+    }
+
+    /**
+     * File going through the stages; only one stage thread holds it at a time
+     */
+    private static final class Job {
+        private final Path source;
+        private final String name;      // path relative to the input directory, as in the checkpoint
+        private byte[] bytes;           // read, not decoded yet
+        private BufferedImage image;    // decoded, then rotated
+        private int rotation;
+        private BatchOutcome outcome;   // set once the file is written or failed
+        private boolean retry;          // failed for a reason other than its content, not recorded
+
+        private Job(Path source, String name) {
+            this.source = source;
+            this.name = name;
+        }
+
+        /**
+         * Sets the outcome from the exception a stage failed with, like for an image of a batch. Failures to read
+         * or write the file and Errors say nothing about the image, so the file is tried again by the next run.
+         */
+        private void fail(Stage stage, Throwable e) {
+            bytes = null;
+            image = null;
+            if (e instanceof RejectedImageException) {
+                outcome = ((RejectedImageException) e).isTooLarge() ? BatchOutcome.TOO_LARGE : BatchOutcome.UNSUPPORTED;
+            }
+            else if (e instanceof NoPatternException) {
+                outcome = BatchOutcome.NO_PATTERN;
+            }
+            else if (e instanceof AmbiguousImageException) {
+                outcome = BatchOutcome.AMBIGUOUS;
+            }
+            else {
+                outcome = BatchOutcome.UNREADABLE;
+            }
+            retry = e instanceof Error || e instanceof IOException && (stage == Stage.READ || stage == Stage.WRITE);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.michalwesoly.pattern.finder.cli;
+
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import com.michalwesoly.pattern.finder.png.PngEncoder;
+import com.michalwesoly.pattern.finder.png.PngProfile;
+import com.michalwesoly.pattern.finder.service.AutomatonScanner;
+import com.michalwesoly.pattern.finder.service.ImagePrefilter;
+import com.michalwesoly.pattern.finder.service.MarkerSet;
+import com.michalwesoly.pattern.finder.service.ParallelScanner;
+import com.michalwesoly.pattern.finder.service.PatternScanner;
+import com.michalwesoly.pattern.finder.service.ScanPolicy;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line entry point rotating a directory tree of images offline, through the BulkPipeline.
+ *
+ * No Spring context is started, so the command is ready in a fraction of a second. It's run from the same
+ * artifact as the application, e.g.
+ * java -cp pattern.finder.jar -Dloader.main=com.michalwesoly.pattern.finder.cli.BulkRotate
+ *      org.springframework.boot.loader.PropertiesLauncher INPUT OUTPUT [options]
+ */
+public final class BulkRotate {
+    static final String USAGE = "Usage: BulkRotate INPUT_DIR OUTPUT_DIR [--checkpoint FILE] [--queue N]"
+            + " [--read-threads N] [--decode-threads N] [--scan-threads N] [--rotate-threads N] [--write-threads N]"
+            + " [--markers DEFINITIONS] [--tolerance N] [--policy STOP_ON_AMBIGUITY|FIRST_MATCH|COLLECT_ALL]"
+            + " [--png-profile FAST|BALANCED|SMALL] [--progress-seconds N]";
+
+    private BulkRotate() { }
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args, System.out));
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        catch (IOException e) {
+            System.err.println("Bulk rotation failed: " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses the arguments and runs the pipeline, printing progress and a report at the end
+     * @return exit code - 0 if every file was processed, whatever its outcome, 1 if some couldn't be read or written
+     * @throws IllegalArgumentException if the arguments are invalid
+     * @throws IOException if the directories or the checkpoint can't be read or written
+     */
+    static int run(String[] args, PrintStream out) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Input and output directories are required");
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        if (!Files.isDirectory(input)) {
+            throw new IllegalArgumentException("Not a directory: " + input);
+        }
+
+        Map<Stage, Integer> threads = new EnumMap<>(Stage.class);
+        int processors = Runtime.getRuntime().availableProcessors();
+        threads.put(Stage.READ, 2);
+        threads.put(Stage.DECODE, processors);
+        threads.put(Stage.SCAN, Math.max(1, processors / 2));
+        threads.put(Stage.ROTATE, Math.max(1, processors / 2));
+        threads.put(Stage.WRITE, processors);
+        Path checkpointFile = null;
+        int queue = 2 * processors;
+        String[] markerDefinitions = {"stripe=FFFFFF:3/FF0000:3"};
+        int tolerance = 0;
+        ScanPolicy policy = ScanPolicy.STOP_ON_AMBIGUITY;
+        PngProfile profile = PngProfile.BALANCED;
+        int progressSeconds = 10;
+
+        for (int i = 2; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value of " + option);
+            }
+            String value = args[++i];
+            if (option.startsWith("--") && option.endsWith("-threads")) {
+                threads.put(stage(option.substring(2, option.length() - "-threads".length())), positive(option, value));
+                continue;
+            }
+            switch (option) {
+                case "--checkpoint":
+                    checkpointFile = Paths.get(value);
+                    break;
+                case "--queue":
+                    queue = positive(option, value);
+                    break;
+                case "--markers":
+                    markerDefinitions = value.split(",");
+                    break;
+                case "--tolerance":
+                    tolerance = Integer.parseInt(value);
+                    break;
+                case "--policy":
+                    policy = ScanPolicy.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "--png-profile":
+                    profile = PngProfile.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "--progress-seconds":
+                    progressSeconds = positive(option, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        MarkerSet markers = MarkerSet.of(tolerance, markerDefinitions);
+        PatternScanner scanner = markers.isStripe()
+                ? new ParallelScanner(ForkJoinPool.commonPool(), 1_000_000, markers.getTolerance())
+                : new AutomatonScanner(markers);
+        ImagePrefilter prefilter = new ImagePrefilter(20000, 20000, 100_000_000L,
+                Set.of("png", "jpeg", "gif", "bmp", "tiff"));
+        PngEncoder encoder = new PngEncoder(profile.getCompressionLevel(), profile.getFilter(),
+                new BufferPool(64L << 20, 16L << 20));
+        BulkPipeline pipeline = new BulkPipeline(scanner, markers, policy, prefilter, encoder, threads, queue);
+
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> out.println(pipeline.getStatistics().progress()),
+                progressSeconds, progressSeconds, TimeUnit.SECONDS);
+        try (Checkpoint checkpoint = checkpointFile != null ? Checkpoint.open(checkpointFile) : Checkpoint.none()) {
+            out.println("Rotating " + input + " into " + output + ", " + threads + ", "
+                    + checkpoint.getFinishedCount() + " files finished before");
+            BulkStatistics statistics = pipeline.run(input, output, checkpoint);
+            out.print(statistics.report());
+            return statistics.getFailed() == 0 ? 0 : 1;
+        }
+        finally {
+            progress.shutdownNow();
+        }
+    }
+
+    private static Stage stage(String name) {
+        try {
+            return Stage.valueOf(name.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown stage " + name);
+        }
+    }
+
+    private static int positive(String option, String value) {
+        int number = Integer.parseInt(value);
+        if (number < 1) {
+            throw new IllegalArgumentException(option + " has to be at least 1");
+        }
+        return number;
+    }
+}
@@ -0,0 +1,123 @@
+package com.michalwesoly.pattern.finder.cli;
+
+import com.michalwesoly.pattern.finder.service.BatchOutcome;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a BulkPipeline run, updated by all stage threads and readable while the run goes on.
+ */
+public class BulkStatistics {
+    private final long startNanos = System.nanoTime();
+    private final Map<Stage, LongAdder> busyNanos = new EnumMap<>(Stage.class);  // time stage threads worked
+    private final Map<Stage, LongAdder> processed = new EnumMap<>(Stage.class);  // files a stage worked on
+    private final Map<BatchOutcome, LongAdder> outcomes = new EnumMap<>(BatchOutcome.class);
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder pixels = new LongAdder();
+    private final LongAdder skipped = new LongAdder();   // finished by an earlier run
+    private final LongAdder failed = new LongAdder();    // not finished, tried again by the next run
+
+    public BulkStatistics() {
+        for (Stage stage : Stage.values()) {
+            busyNanos.put(stage, new LongAdder());
+            processed.put(stage, new LongAdder());
+        }
+        for (BatchOutcome outcome : BatchOutcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    /**
+     * Records work of a stage on a single file which started at the given System.nanoTime()
+     */
+    void record(Stage stage, long startNanos) {
+        busyNanos.get(stage).add(System.nanoTime() - startNanos);
+        processed.get(stage).increment();
+    }
+
+    void finished(BatchOutcome outcome) {
+        outcomes.get(outcome).increment();
+    }
+
+    void read(long bytes, long imagePixels) {
+        bytesRead.add(bytes);
+        pixels.add(imagePixels);
+    }
+
+    void skipped() {
+        skipped.increment();
+    }
+
+    void failed() {
+        failed.increment();
+    }
+
+    /**
+     * @return files finished by this run, whatever their outcome
+     */
+    public long getFinished() {
+        return outcomes.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * @return files finished with the given outcome
+     */
+    public long getCount(BatchOutcome outcome) {
+        return outcomes.get(outcome).sum();
+    }
+
+    /**
+     * @return files skipped because an earlier run finished them
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * @return files that couldn't be read or written, or ran into an Error; they aren't recorded as finished
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return single line with files done so far and the current throughput
+     */
+    public String progress() {
+        double seconds = elapsedSeconds();
+        return String.format(Locale.ROOT, "%d files in %.1f s - %.1f files/s, %.1f MB/s",
+                getFinished(), seconds, getFinished() / seconds, bytesRead.sum() / seconds / 1e6);
+    }
+
+    /**
+     * @return summary of the run: throughput, outcomes and how busy every stage was
+     */
+    public String report() {
+        double seconds = elapsedSeconds();
+        StringBuilder report = new StringBuilder(progress()).append(System.lineSeparator());
+        report.append(String.format(Locale.ROOT, "  %.1f megapixels/s, %d files skipped as finished before",
+                pixels.sum() / seconds / 1e6, getSkipped())).append(System.lineSeparator());
+        report.append(String.format(Locale.ROOT, "  %d files failed and are tried again by the next run",
+                getFailed())).append(System.lineSeparator());
+        for (BatchOutcome outcome : BatchOutcome.values()) {
+            report.append(String.format(Locale.ROOT, "  %-12s %d", outcome, getCount(outcome)))
+                    .append(System.lineSeparator());
+        }
+        for (Stage stage : Stage.values()) {
+            long count = processed.get(stage).sum();
+            double busy = busyNanos.get(stage).sum() / 1e9;
+            report.append(String.format(Locale.ROOT, "  %-8s %d files, %.1f thread-seconds, %.2f ms/file",
+                    stage.tag(), count, busy, count == 0 ? 0 : busy * 1000 / count))
+                    .append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(1e-3, (System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+}
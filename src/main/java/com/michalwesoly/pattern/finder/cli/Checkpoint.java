@@ -0,0 +1,118 @@
+package com.michalwesoly.pattern.finder.cli;
+
+import com.michalwesoly.pattern.finder.service.BatchOutcome;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only record of the files a BulkPipeline has finished, so an interrupted run can be resumed.
+ *
+ * Every line is the outcome and the path of a file relative to the input directory, separated by a tab.
+ * Lines are flushed as files finish; a line cut short by a crash is dropped when the checkpoint is loaded,
+ * and its file is processed again.
+ */
+public class Checkpoint implements Closeable {
+    private final Map<String, BatchOutcome> finished;   // loaded from the file, not updated by record()
+    private final BufferedWriter writer;                 // null if nothing is recorded
+
+    private Checkpoint(Map<String, BatchOutcome> finished, BufferedWriter writer) {
+        this.finished = finished;
+        this.writer = writer;
+    }
+
+    /**
+     * Checkpoint that remembers nothing - every file is processed
+     */
+    public static Checkpoint none() {
+        return new Checkpoint(Map.of(), null);
+    }
+
+    /**
+     * Loads files finished by earlier runs and opens the file for appending the ones finished by this run
+     * @param file checkpoint file; created if it doesn't exist
+     * @return Checkpoint to be closed once the run ends
+     * @throws IOException if the file can't be read or opened
+     */
+    public static Checkpoint open(Path file) throws IOException {
+        Map<String, BatchOutcome> finished = new HashMap<>();
+        byte[] bytes = Files.exists(file) ? Files.readAllBytes(file) : new byte[0];
+        // A line cut short may still look complete, e.g. a path cut to another file's, so only lines ended by
+        // a new line count; malformed bytes of a character cut in half are decoded as replacement characters
+        String[] lines = new String(bytes, StandardCharsets.UTF_8).split("\r?\n", -1);
+        for (int i = 0; i < lines.length - 1; i++) { // the last one is empty or cut short
+            int tab = lines[i].indexOf('\t');
+            BatchOutcome outcome = tab > 0 ? outcome(lines[i].substring(0, tab)) : null;
+            if (outcome != null && tab + 1 < lines[i].length()) {
+                finished.put(lines[i].substring(tab + 1), outcome);
+            }
+        }
+        int complete = bytes.length;
+        while (complete > 0 && bytes[complete - 1] != '\n') {
+            complete--;
+        }
+        if (complete < bytes.length) { // cut off, so it isn't completed by the next line recorded
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(complete);
+            }
+        }
+        BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new Checkpoint(finished, writer);
+    }
+
+    /**
+     * @param name path relative to the input directory, with / separators
+     * @return true if an earlier run finished the file
+     */
+    public boolean isFinished(String name) {
+        return finished.containsKey(name);
+    }
+
+    /**
+     * @return number of files finished by earlier runs
+     */
+    public int getFinishedCount() {
+        return finished.size();
+    }
+
+    /**
+     * Records a file as finished; safe to call from many threads
+     * @param name path relative to the input directory, with / separators
+     * @param outcome what happened to the file
+     * @throws IOException if the line can't be written
+     */
+    public synchronized void record(String name, BatchOutcome outcome) throws IOException {
+        if (writer != null) {
+            writer.write(outcome.name());
+            writer.write('\t');
+            writer.write(name);
+            writer.newLine();
+            writer.flush(); // a crash loses at most the files being processed
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    private static BatchOutcome outcome(String name) {
+        try {
+            return BatchOutcome.valueOf(name);
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
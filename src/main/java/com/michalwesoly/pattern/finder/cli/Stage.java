@@ -0,0 +1,21 @@
+package com.michalwesoly.pattern.finder.cli;
+
+import java.util.Locale;
+
+/**
+ * Stages of the BulkPipeline, in the order files go through them.
+ */
+public enum Stage {
+    READ,       // header check and reading the file into memory
+    DECODE,     // ImageIO decoding the whole image
+    SCAN,       // looking for the pattern
+    ROTATE,     // rotating the image
+    WRITE;      // encoding the rotated image as PNG into the output tree
+
+    /**
+     * @return lower case name, for statistics
+     */
+    public String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,28 @@
+package com.michalwesoly.pattern.finder.config;
+
+import com.michalwesoly.pattern.finder.admission.ProcessingPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the pool /rotate requests are processed on and of its admission limits.
+ */
+@Configuration
+public class AdmissionConfiguration {
+
+    /**
+     * Pool processing uploaded images
+     * @param maxConcurrent images processed at the same time; 0 or less uses every available processor
+     * @param queueDepth images waiting for processing before new ones are rejected with 503
+     * @param maxPixelsInFlight decoded pixels of all admitted images before new ones are rejected with 429
+     * @return ProcessingPool shut down together with the application context
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ProcessingPool processingPool(@Value("${pattern.finder.admission.max-concurrent:0}") int maxConcurrent,
+                                         @Value("${pattern.finder.admission.queue-depth:64}") int queueDepth,
+                                         @Value("${pattern.finder.admission.max-pixels-in-flight:200000000}") long maxPixelsInFlight) {
+        return new ProcessingPool(maxConcurrent > 0 ? maxConcurrent : Runtime.getRuntime().availableProcessors(),
+                queueDepth, maxPixelsInFlight);
+    }
+}
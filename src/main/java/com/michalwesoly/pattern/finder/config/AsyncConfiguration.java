@@ -0,0 +1,48 @@
+package com.michalwesoly.pattern.finder.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Configuration of the threads Spring MVC writes streamed response bodies on.
+ * The executor pools of scanning and batches keep Spring Boot from creating its own task executor, which would
+ * leave MVC with a new thread for every streamed response; a fixed pool with a bounded queue is used instead.
+ */
+@Configuration
+public class AsyncConfiguration {
+
+    /**
+     * Pool writing StreamingResponseBody responses
+     * @param threads bodies written at the same time - writing blocks on slow clients, so more than processors
+     * @param queueCapacity bodies waiting for a thread before new ones fail
+     * @return ThreadPoolTaskExecutor shut down together with the application context
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mvcTaskExecutor(@Value("${pattern.finder.async.threads:16}") int threads,
+                                                  @Value("${pattern.finder.async.queue-capacity:256}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("mvc-async-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    /**
+     * @return WebMvcConfigurer handing the pool to Spring MVC's async support
+     */
+    @Bean
+    public WebMvcConfigurer asyncSupport(ThreadPoolTaskExecutor mvcTaskExecutor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(mvcTaskExecutor);
+            }
+        };
+    }
+}
@@ -0,0 +1,36 @@
+package com.michalwesoly.pattern.finder.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Configuration of batch rotation.
+ * Images of all batches are processed on a single fixed size pool, so concurrent batches share the same
+ * threads instead of multiplying them.
+ */
+@Configuration
+public class BatchConfiguration {
+
+    /**
+     * Pool rotating images of batches
+     * @param parallelism number of threads; 0 or less uses every available processor
+     * @return ExecutorService shut down together with the application context
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService batchExecutor(@Value("${pattern.finder.batch.parallelism:0}") int parallelism) {
+        AtomicInteger threads = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "batch-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                factory);
+    }
+}
@@ -0,0 +1,25 @@
+package com.michalwesoly.pattern.finder.config;
+
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the pool of rotated image rasters and encoder buffers.
+ */
+@Configuration
+public class BufferConfiguration {
+
+    /**
+     * Buffers reused between requests
+     * @param maxBytes memory all threads together may hold in idle buffers; 0 disables pooling
+     * @param maxArrayBytes larger buffers are allocated for a single image and never held
+     * @return BufferPool shared by all requests
+     */
+    @Bean
+    public BufferPool bufferPool(@Value("${pattern.finder.buffers.max-bytes:134217728}") long maxBytes,
+                                 @Value("${pattern.finder.buffers.max-array-bytes:67108864}") long maxArrayBytes) {
+        return new BufferPool(maxBytes, maxArrayBytes);
+    }
+}
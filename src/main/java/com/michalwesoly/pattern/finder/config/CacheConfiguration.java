@@ -0,0 +1,25 @@
+package com.michalwesoly.pattern.finder.config;
+
+import com.michalwesoly.pattern.finder.cache.ResultCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the cache of /rotate responses.
+ */
+@Configuration
+public class CacheConfiguration {
+
+    /**
+     * Cache of responses keyed by uploaded content
+     * @param maxBytes memory budget for cached responses; 0 disables caching
+     * @param maxEntryBytes responses to larger uploads are streamed without being cached
+     * @return ResultCache shared by all requests
+     */
+    @Bean
+    public ResultCache resultCache(@Value("${pattern.finder.cache.max-bytes:67108864}") long maxBytes,
+                                   @Value("${pattern.finder.cache.max-entry-bytes:4194304}") long maxEntryBytes) {
+        return new ResultCache(maxBytes, maxEntryBytes);
+    }
+}
@@ -0,0 +1,94 @@
+package com.michalwesoly.pattern.finder.config;
+
+import com.michalwesoly.pattern.finder.admission.ProcessingPool;
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import com.michalwesoly.pattern.finder.cache.ResultCache;
+import com.michalwesoly.pattern.finder.metrics.PipelineMetrics;
+import com.michalwesoly.pattern.finder.metrics.TimedMultipartResolver;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * Configuration of the meters exposed by Actuator, e.g. on /actuator/prometheus.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    /**
+     * @param registry MeterRegistry set up by Actuator
+     * @return PipelineMetrics shared by all requests
+     */
+    @Bean
+    public PipelineMetrics pipelineMetrics(MeterRegistry registry) {
+        return new PipelineMetrics(registry);
+    }
+
+    /**
+     * Multipart resolver timing the parsing of uploads; replaces the one Spring Boot would set up
+     * @param metrics PipelineMetrics the MULTIPART phase is recorded to
+     * @param properties spring.servlet.multipart settings
+     * @return TimedMultipartResolver used by the DispatcherServlet
+     */
+    @Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+    public TimedMultipartResolver multipartResolver(PipelineMetrics metrics, MultipartProperties properties) {
+        TimedMultipartResolver resolver = new TimedMultipartResolver(metrics);
+        resolver.setResolveLazily(properties.isResolveLazily());
+        return resolver;
+    }
+
+    /**
+     * @param pool ProcessingPool /rotate images are processed on
+     * @return gauges of jobs running and waiting, and of pixels reserved by admitted images
+     */
+    @Bean
+    public MeterBinder processingPoolMetrics(ProcessingPool pool) {
+        return registry -> {
+            Gauge.builder("pattern.finder.pool.active", pool, ProcessingPool::getActiveJobs)
+                    .description("Images being processed").register(registry);
+            Gauge.builder("pattern.finder.pool.queued", pool, ProcessingPool::getQueuedJobs)
+                    .description("Images waiting for a thread").register(registry);
+            Gauge.builder("pattern.finder.pool.pixels", pool, ProcessingPool::getPixelsInFlight)
+                    .description("Pixels reserved by admitted images").baseUnit("pixels").register(registry);
+        };
+    }
+
+    /**
+     * @param pool BufferPool of rotated image rasters and encoder buffers
+     * @return counters of buffers borrowed from the pool and allocated, and gauge of memory held by idle buffers
+     */
+    @Bean
+    public MeterBinder bufferPoolMetrics(BufferPool pool) {
+        return registry -> {
+            FunctionCounter.builder("pattern.finder.buffers.borrowed", pool, BufferPool::getHits)
+                    .tag("result", "hit").description("Buffers reused from the pool").register(registry);
+            FunctionCounter.builder("pattern.finder.buffers.borrowed", pool, BufferPool::getMisses)
+                    .tag("result", "miss").description("Buffers allocated, none was idle").register(registry);
+            FunctionCounter.builder("pattern.finder.buffers.discarded", pool, BufferPool::getDiscards)
+                    .description("Buffers released while the pool was full").register(registry);
+            Gauge.builder("pattern.finder.buffers.held", pool, BufferPool::getHeldBytes)
+                    .baseUnit("bytes").register(registry);
+        };
+    }
+
+    /**
+     * @param cache ResultCache of /rotate responses
+     * @return counters of hits and misses, and gauge of memory used by cached responses
+     */
+    @Bean
+    public MeterBinder resultCacheMetrics(ResultCache cache) {
+        return registry -> {
+            FunctionCounter.builder("pattern.finder.cache.hits", cache, c -> c.getStatistics().getHits())
+                    .register(registry);
+            FunctionCounter.builder("pattern.finder.cache.misses", cache, c -> c.getStatistics().getMisses())
+                    .register(registry);
+            Gauge.builder("pattern.finder.cache.used", cache, c -> c.getStatistics().getUsedBytes())
+                    .baseUnit("bytes").register(registry);
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package com.michalwesoly.pattern.finder.config;
+
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import com.michalwesoly.pattern.finder.png.PngEncoder;
+import com.michalwesoly.pattern.finder.png.PngFilter;
+import com.michalwesoly.pattern.finder.png.PngProfile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the PNG encoder writing rotated images.
+ */
+@Configuration
+public class PngConfiguration {
+
+    /**
+     * Encoder shared by all requests
+     * @param profile FAST, BALANCED or SMALL
+     * @param compressionLevel deflate level overriding the profile's one, null keeps the profile's
+     * @param filter row filter overriding the profile's one, null keeps the profile's
+     * @param bufferPool BufferPool chunk buffers are borrowed from
+     * @return PngEncoder reusing its deflaters and buffers between requests
+     */
+    @Bean
+    public PngEncoder pngEncoder(@Value("${pattern.finder.png.profile:BALANCED}") PngProfile profile,
+                                 @Value("${pattern.finder.png.compression-level:#{null}}") Integer compressionLevel,
+                                 @Value("${pattern.finder.png.filter:#{null}}") PngFilter filter,
+                                 BufferPool bufferPool) {
+        return new PngEncoder(compressionLevel != null ? compressionLevel : profile.getCompressionLevel(),
+                filter != null ? filter : profile.getFilter(), bufferPool);
+    }
+}
@@ -0,0 +1,32 @@
+package com.michalwesoly.pattern.finder.config;
+
+import com.michalwesoly.pattern.finder.service.ImagePrefilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
+
+/**
+ * Configuration of the formats and size limits uploads are checked against before being decoded.
+ */
+@Configuration
+public class PrefilterConfiguration {
+
+    /**
+     * Header check of every uploaded image
+     * @param maxWidth widest image accepted, in pixels
+     * @param maxHeight highest image accepted, in pixels
+     * @param maxPixels largest image accepted, in pixels
+     * @param formats ImageIO format names accepted
+     * @return ImagePrefilter shared by all requests
+     */
+    @Bean
+    public ImagePrefilter imagePrefilter(@Value("${pattern.finder.prefilter.max-width:20000}") int maxWidth,
+                                         @Value("${pattern.finder.prefilter.max-height:20000}") int maxHeight,
+                                         @Value("${pattern.finder.prefilter.max-pixels:100000000}") long maxPixels,
+                                         @Value("${pattern.finder.prefilter.formats:png,jpeg,gif,bmp,tiff}")
+                                                 String[] formats) {
+        return new ImagePrefilter(maxWidth, maxHeight, maxPixels, Set.of(formats));
+    }
+}
@@ -0,0 +1,59 @@
+package com.michalwesoly.pattern.finder.config;
+
+import com.michalwesoly.pattern.finder.service.AutomatonScanner;
+import com.michalwesoly.pattern.finder.service.MarkerSet;
+import com.michalwesoly.pattern.finder.service.ParallelScanner;
+import com.michalwesoly.pattern.finder.service.PatternScanner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Configuration of the pattern scanning engine.
+ * Scans of large images run on a dedicated ForkJoinPool, so they never take more threads than configured
+ * and don't compete with the common pool or with Tomcat's request threads.
+ */
+@Configuration
+public class ScanConfiguration {
+
+    /**
+     * Pool for parallel scans
+     * @param parallelism number of scanning threads; 0 or less uses every available processor
+     * @return ForkJoinPool shut down together with the application context
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool scanPool(@Value("${pattern.finder.scan.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Markers looked for in uploaded images, compiled into a single automaton
+     * @param definitions marker definitions, e.g. stripe=FFFFFF:3/FF0000:3
+     * @param tolerance largest difference allowed in every channel of a pixel matching a marker color, 0 - 255
+     * @return MarkerSet matching all of them
+     */
+    @Bean
+    public MarkerSet markerSet(@Value("${pattern.finder.markers:stripe=FFFFFF:3/FF0000:3}") String[] definitions,
+                               @Value("${pattern.finder.markers.tolerance:0}") int tolerance) {
+        return MarkerSet.of(tolerance, definitions);
+    }
+
+    /**
+     * Scanning engine used for uploaded images - the stripe has engines of its own, other markers are matched
+     * by the automaton
+     * @param scanPool pool for parallel scans
+     * @param markerSet markers looked for
+     * @param thresholdPixels images smaller than that are scanned on the request thread
+     * @return PatternScanner used by ImageProcessor
+     */
+    @Bean
+    public PatternScanner patternScanner(ForkJoinPool scanPool, MarkerSet markerSet,
+                                         @Value("${pattern.finder.scan.parallel-threshold:1000000}") long thresholdPixels) {
+        if (!markerSet.isStripe()) {
+            return new AutomatonScanner(markerSet);
+        }
+        return new ParallelScanner(scanPool, thresholdPixels, markerSet.getTolerance());
+    }
+}
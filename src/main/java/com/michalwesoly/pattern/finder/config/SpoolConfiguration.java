@@ -0,0 +1,32 @@
+package com.michalwesoly.pattern.finder.config;
+
+import com.michalwesoly.pattern.finder.spool.UploadSpool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Configuration of the directory large uploads are spooled to.
+ */
+@Configuration
+public class SpoolConfiguration {
+
+    /**
+     * Spool shared by all requests
+     * @param location directory spooled uploads are kept in, created if needed
+     * @param threshold uploads of at least that many bytes are spooled and decoded from disk; negative disables it
+     * @param maxAge spooled files and multipart parts older than that are swept as left behind by a crash
+     * @return UploadSpool sweeping until the application context is closed
+     * @throws IOException if the directory can't be created
+     */
+    @Bean(destroyMethod = "close")
+    public UploadSpool uploadSpool(@Value("${pattern.finder.spool.location:${java.io.tmpdir}/pattern-finder-uploads}") String location,
+                                   @Value("${pattern.finder.spool.threshold:1048576}") long threshold,
+                                   @Value("${pattern.finder.spool.max-age:1h}") Duration maxAge) throws IOException {
+        return new UploadSpool(Paths.get(location), threshold, maxAge);
+    }
+}
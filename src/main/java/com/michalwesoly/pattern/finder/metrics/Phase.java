@@ -0,0 +1,24 @@
+package com.michalwesoly.pattern.finder.metrics;
+
+import java.util.Locale;
+
+/**
+ * Step of the pipeline taking an upload to the response, timed separately.
+ */
+public enum Phase {
+    MULTIPART,      // parsing the multipart request, before the controller is called
+    PREFILTER,      // reading the PNG signature and IHDR chunk
+    STREAM_SCAN,    // scanning a PNG file while decoding it row by row
+    DECODE,         // ImageIO decoding the whole image
+    SCAN,           // scanning the decoded image
+    ROTATE,         // moving pixels of the decoded image
+    ENCODE,         // writing the rotated image as PNG - for streamed responses, including the network write
+    ORIENT;         // copying the uploaded PNG file with an eXIf orientation chunk, instead of rotating it
+
+    /**
+     * @return value of the phase tag
+     */
+    public String tag() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
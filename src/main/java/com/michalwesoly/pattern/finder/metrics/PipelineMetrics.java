@@ -0,0 +1,86 @@
+package com.michalwesoly.pattern.finder.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters of the rotate pipeline:
+ * - pattern.finder.phase - timer with a percentile histogram for every Phase
+ * - pattern.finder.responses - counter of responses by endpoint and status
+ * - pattern.finder.requests.in-flight - gauge of requests being processed
+ * - pattern.finder.image.pixels - distribution of the pixels uploaded images decode to
+ */
+public class PipelineMetrics {
+    private final MeterRegistry registry;
+    private final Map<Phase, Timer> phases = new EnumMap<>(Phase.class);
+    private final DistributionSummary imagePixels;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, Timer.builder("pattern.finder.phase")
+                    .description("Time spent in a step of the rotate pipeline")
+                    .tag("phase", phase.tag())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        imagePixels = DistributionSummary.builder("pattern.finder.image.pixels")
+                .description("Pixels of uploaded images, read from their headers")
+                .baseUnit("pixels")
+                .publishPercentileHistogram()
+                .register(registry);
+        registry.gauge("pattern.finder.requests.in-flight", inFlight);
+    }
+
+    /**
+     * Records time of a phase which started at the given System.nanoTime()
+     * @param phase finished Phase
+     * @param startNanos System.nanoTime() taken when the phase started
+     */
+    public void record(Phase phase, long startNanos) {
+        phases.get(phase).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param pixels number of pixels of an uploaded image
+     */
+    public void recordImage(long pixels) {
+        imagePixels.record(pixels);
+    }
+
+    /**
+     * Counts a request as being processed until requestFinished() is called for it
+     */
+    public void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * @param endpoint path of the endpoint, e.g. /rotate
+     * @param status HTTP status of the response
+     */
+    public void requestFinished(String endpoint, int status) {
+        inFlight.decrementAndGet();
+        Counter.builder("pattern.finder.responses")
+                .description("Responses by endpoint and status")
+                .tag("endpoint", endpoint)
+                .tag("status", String.valueOf(status))
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * @return number of requests being processed
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
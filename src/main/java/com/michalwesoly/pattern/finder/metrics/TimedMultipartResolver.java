@@ -0,0 +1,30 @@
+package com.michalwesoly.pattern.finder.metrics;
+
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Servlet multipart resolver recording how long parsing of multipart requests takes - the time spent before
+ * the controller is even called.
+ */
+public class TimedMultipartResolver extends StandardServletMultipartResolver {
+    private final PipelineMetrics metrics;
+
+    public TimedMultipartResolver(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public MultipartHttpServletRequest resolveMultipart(HttpServletRequest request) throws MultipartException {
+        long start = System.nanoTime();
+        try {
+            return super.resolveMultipart(request); // parts are parsed eagerly here
+        }
+        finally {
+            metrics.record(Phase.MULTIPART, start);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.michalwesoly.pattern.finder.png;
+
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+
+import javax.imageio.ImageIO;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes BufferedImages as PNG files straight into an output stream, with configurable deflate level and
+ * row filter.
+ *
+ * Rows are read from the image's raster one at a time, filtered and deflated into IDAT chunks as they go,
+ * so apart from a few row buffers nothing proportional to the image is allocated. Deflaters are pooled
+ * and reused between images, IDAT chunk buffers are borrowed from a BufferPool. Images are written as
+ * 8 bit RGB, RGBA or gray, or as palette images of their own bit depth; images with deeper samples are
+ * left to ImageIO.
+ */
+public class PngEncoder {
+    private static final int PLTE = 0x504C5445;
+    private static final int TRNS = 0x74524E53;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454E44;
+    private static final int IDAT_LENGTH = 1 << 16;    // image data buffered before a chunk is written
+
+    private final int compressionLevel;
+    private final PngFilter filter;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>(); // idle deflaters, reused
+    private final BufferPool pool;      // IDAT chunk buffers
+
+    /**
+     * @param profile deflate level and row filter to encode with
+     */
+    public PngEncoder(PngProfile profile) {
+        this(profile.getCompressionLevel(), profile.getFilter());
+    }
+
+    /**
+     * @param compressionLevel deflate level, 0 (store) - 9 (smallest)
+     * @param filter row filter; palette and lower than 8 bit images are never filtered
+     */
+    public PngEncoder(int compressionLevel, PngFilter filter) {
+        this(compressionLevel, filter, BufferPool.NONE);
+    }
+
+    /**
+     * @param compressionLevel deflate level, 0 (store) - 9 (smallest)
+     * @param filter row filter; palette and lower than 8 bit images are never filtered
+     * @param pool BufferPool IDAT chunk buffers are borrowed from
+     */
+    public PngEncoder(int compressionLevel, PngFilter filter, BufferPool pool) {
+        if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("PNG compression level has to be 0 - 9, got " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        this.filter = filter;
+        this.pool = pool;
+    }
+
+    /**
+     * Writes the image as a PNG file. The stream isn't closed.
+     * @param image BufferedImage to be written
+     * @param out stream the file is written to
+     * @throws IOException if the stream can't be written
+     */
+    public void write(BufferedImage image, OutputStream out) throws IOException {
+        RowSource rows = rowSource(image);
+        if (rows == null) {
+            ImageIO.write(image, "png", out);
+            return;
+        }
+        out.write(PngHeader.SIGNATURE);
+        writeHeader(image, rows, out);
+        if (rows.colorType == PngHeader.COLOR_PALETTE) {
+            writePalette((IndexColorModel) image.getColorModel(), rows.bitDepth, out);
+        }
+
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel);
+        }
+        byte[] buffer = pool.borrowBytes(IDAT_LENGTH);
+        try {
+            ChunkOutputStream idat = new ChunkOutputStream(out, buffer);
+            DeflaterOutputStream compressed = new DeflaterOutputStream(idat, deflater, IDAT_LENGTH);
+            writeRows(image, rows, compressed);
+            compressed.finish();
+            idat.flush();
+        }
+        finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+            pool.release(buffer);
+        }
+        writeChunk(out, IEND, new byte[0], 0);
+    }
+
+    private void writeHeader(BufferedImage image, RowSource rows, OutputStream out) throws IOException {
+        byte[] data = new byte[PngHeader.IHDR_LENGTH];
+        writeInt(data, 0, image.getWidth());
+        writeInt(data, 4, image.getHeight());
+        data[8] = (byte) rows.bitDepth;
+        data[9] = (byte) rows.colorType;
+        writeChunk(out, PngHeader.IHDR, data, data.length); // compression, filter method and interlace are 0
+    }
+
+    /**
+     * PLTE chunk with every entry of the color model a pixel can refer to, followed by tRNS chunk
+     * if any entry isn't opaque
+     */
+    private static void writePalette(IndexColorModel colorModel, int bitDepth, OutputStream out) throws IOException {
+        int size = Math.min(colorModel.getMapSize(), 1 << bitDepth);
+        byte[] entries = new byte[3 * size];
+        byte[] alpha = new byte[size];
+        int transparent = 0; // entries up to the last non opaque one
+        for (int i = 0; i < size; i++) {
+            int argb = colorModel.getRGB(i);
+            entries[3 * i] = (byte) (argb >> 16);
+            entries[3 * i + 1] = (byte) (argb >> 8);
+            entries[3 * i + 2] = (byte) argb;
+            alpha[i] = (byte) (argb >>> 24);
+            if (argb >>> 24 != 0xFF) {
+                transparent = i + 1;
+            }
+        }
+        writeChunk(out, PLTE, entries, entries.length);
+        if (transparent > 0) {
+            writeChunk(out, TRNS, alpha, transparent);
+        }
+    }
+
+    private void writeRows(BufferedImage image, RowSource rows, OutputStream out) throws IOException {
+        int rowBytes = (int) (((long) image.getWidth() * rows.bitsPerPixel() + 7) / 8);
+        int bpp = Math.max(1, rows.bitsPerPixel() / 8);
+        boolean filtered = rows.colorType != PngHeader.COLOR_PALETTE && rows.bitDepth == 8;
+        PngFilter rowFilter = filtered ? filter : PngFilter.NONE;
+
+        byte[] row = new byte[rowBytes];
+        byte[] previous = new byte[rowBytes];
+        byte[] best = new byte[rowBytes + 1];
+        byte[] candidate = rowFilter == PngFilter.ADAPTIVE ? new byte[rowBytes + 1] : null;
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            rows.read(y, row);
+            if (rowFilter != PngFilter.ADAPTIVE) {
+                PngFilter.apply(rowFilter.getType(), row, previous, bpp, best);
+            }
+            else {
+                PngFilter.apply(0, row, previous, bpp, best);
+                long bestCost = PngFilter.cost(best);
+                for (int type = 1; type <= 4; type++) {
+                    PngFilter.apply(type, row, previous, bpp, candidate);
+                    long cost = PngFilter.cost(candidate);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        byte[] swap = best;
+                        best = candidate;
+                        candidate = swap;
+                    }
+                }
+            }
+            out.write(best);
+            byte[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+    }
+
+    /**
+     * Picks the way rows are read and the PNG color type they're written as.
+     * @return RowSource or null if the image has to be written by ImageIO
+     */
+    private static RowSource rowSource(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        Raster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        int width = image.getWidth();
+        boolean direct = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getNumBanks() == 1;
+
+        if (colorModel instanceof IndexColorModel) {
+            if (direct && raster.getDataBuffer() instanceof DataBufferByte) {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                int offset = raster.getDataBuffer().getOffset();
+                if (sampleModel instanceof MultiPixelPackedSampleModel
+                        && ((MultiPixelPackedSampleModel) sampleModel).getDataBitOffset() == 0) {
+                    // Packed rows are laid out the way PNG expects them
+                    int stride = ((MultiPixelPackedSampleModel) sampleModel).getScanlineStride();
+                    int bits = ((MultiPixelPackedSampleModel) sampleModel).getPixelBitStride();
+                    return new RowSource(PngHeader.COLOR_PALETTE, bits, (y, row) ->
+                            System.arraycopy(data, offset + y * stride, row, 0, row.length));
+                }
+                if (sampleModel instanceof ComponentSampleModel && sampleModel.getSampleSize(0) == 8
+                        && ((ComponentSampleModel) sampleModel).getPixelStride() == 1) {
+                    int stride = ((ComponentSampleModel) sampleModel).getScanlineStride();
+                    int start = offset + ((ComponentSampleModel) sampleModel).getBandOffsets()[0];
+                    return new RowSource(PngHeader.COLOR_PALETTE, 8, (y, row) ->
+                            System.arraycopy(data, start + y * stride, row, 0, row.length));
+                }
+            }
+            if (colorModel.getPixelSize() <= 8 && raster.getTransferType() == DataBuffer.TYPE_BYTE) {
+                return new RowSource(PngHeader.COLOR_PALETTE, 8, (y, row) -> raster.getDataElements(0, y, width, 1, row));
+            }
+            return null;
+        }
+
+        for (int size : colorModel.getComponentSize()) {
+            if (size > 8) {
+                return null; // 16 bit samples would lose precision
+            }
+        }
+        boolean alpha = colorModel.hasAlpha();
+
+        if (direct && !colorModel.isAlphaPremultiplied() && colorModel instanceof ComponentColorModel
+                && sampleModel instanceof ComponentSampleModel && raster.getDataBuffer() instanceof DataBufferByte
+                && (colorModel.getColorSpace().isCS_sRGB()
+                    || colorModel.getColorSpace().getType() == ColorSpace.TYPE_GRAY && !alpha)) {
+            // Interleaved bytes only need reordering into R, G, B, A (or gray) order
+            ComponentSampleModel components = (ComponentSampleModel) sampleModel;
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            int[] bandOffsets = components.getBandOffsets();
+            int bands = bandOffsets.length;
+            int pixelStride = components.getPixelStride();
+            int stride = components.getScanlineStride();
+            int offset = raster.getDataBuffer().getOffset();
+            int colorType = bands == 1 ? PngHeader.COLOR_GRAY : alpha ? PngHeader.COLOR_RGB_ALPHA : PngHeader.COLOR_RGB;
+            return new RowSource(colorType, 8, (y, row) -> {
+                int pixel = offset + y * stride;
+                for (int x = 0, i = 0; x < width; x++, pixel += pixelStride) {
+                    for (int band = 0; band < bands; band++) {
+                        row[i++] = data[pixel + bandOffsets[band]];
+                    }
+                }
+            });
+        }
+
+        if (direct && colorModel instanceof DirectColorModel && !colorModel.isAlphaPremultiplied()
+                && sampleModel instanceof SinglePixelPackedSampleModel && raster.getDataBuffer() instanceof DataBufferInt
+                && ((DirectColorModel) colorModel).getRedMask() == 0xFF0000
+                && ((DirectColorModel) colorModel).getGreenMask() == 0xFF00
+                && ((DirectColorModel) colorModel).getBlueMask() == 0xFF
+                && (!alpha || ((DirectColorModel) colorModel).getAlphaMask() == 0xFF000000)) {
+            int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            int stride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+            int offset = raster.getDataBuffer().getOffset();
+            return new RowSource(alpha ? PngHeader.COLOR_RGB_ALPHA : PngHeader.COLOR_RGB, 8, (y, row) ->
+                    argbToRow(data, offset + y * stride, width, alpha, row));
+        }
+
+        int[] argb = new int[width];
+        return new RowSource(alpha ? PngHeader.COLOR_RGB_ALPHA : PngHeader.COLOR_RGB, 8, (y, row) -> {
+            image.getRGB(0, y, width, 1, argb, 0, width);
+            argbToRow(argb, 0, width, alpha, row);
+        });
+    }
+
+    private static void argbToRow(int[] pixels, int offset, int width, boolean alpha, byte[] row) {
+        for (int x = 0, i = 0; x < width; x++) {
+            int argb = pixels[offset + x];
+            row[i++] = (byte) (argb >> 16);
+            row[i++] = (byte) (argb >> 8);
+            row[i++] = (byte) argb;
+            if (alpha) {
+                row[i++] = (byte) (argb >>> 24);
+            }
+        }
+    }
+
+    private static void writeChunk(OutputStream out, int type, byte[] data, int length) throws IOException {
+        byte[] header = new byte[8];
+        writeInt(header, 0, length);
+        writeInt(header, 4, type);
+        CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, length);
+        byte[] trailer = new byte[4];
+        writeInt(trailer, 0, (int) crc.getValue());
+
+        out.write(header);
+        out.write(data, 0, length);
+        out.write(trailer);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Copies raw bytes of a single image row, without the filter type byte
+     */
+    private interface RowReader {
+        void read(int y, byte[] row);
+    }
+
+    /**
+     * Rows of an image together with the PNG color type and bit depth they're laid out in
+     */
+    private static class RowSource {
+        private final int colorType;
+        private final int bitDepth;
+        private final RowReader reader;
+
+        RowSource(int colorType, int bitDepth, RowReader reader) {
+            this.colorType = colorType;
+            this.bitDepth = bitDepth;
+            this.reader = reader;
+        }
+
+        int bitsPerPixel() {
+            switch (colorType) {
+                case PngHeader.COLOR_RGB:
+                    return 3 * bitDepth;
+                case PngHeader.COLOR_RGB_ALPHA:
+                    return 4 * bitDepth;
+                default:
+                    return bitDepth;
+            }
+        }
+
+        void read(int y, byte[] row) {
+            reader.read(y, row);
+        }
+    }
+
+    /**
+     * Splits deflated image data into IDAT chunks of up to IDAT_LENGTH bytes.
+     */
+    private static class ChunkOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer;
+        private int count;
+
+        ChunkOutputStream(OutputStream out, byte[] buffer) {
+            this.out = out;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int copied = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        /**
+         * Writes buffered data as an IDAT chunk
+         */
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeChunk(out, IDAT, buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
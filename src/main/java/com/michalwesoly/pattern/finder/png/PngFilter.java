@@ -0,0 +1,90 @@
+package com.michalwesoly.pattern.finder.png;
+
+/**
+ * Filter applied to PNG rows before compression. ADAPTIVE picks the filter giving the smallest sum of absolute
+ * differences for every row - the heuristic recommended by the PNG specification and used by ImageIO.
+ */
+public enum PngFilter {
+    NONE(0),
+    SUB(1),
+    UP(2),
+    AVERAGE(3),
+    PAETH(4),
+    ADAPTIVE(-1);
+
+    private final int type; // filter type byte written before the row, -1 if chosen per row
+
+    PngFilter(int type) {
+        this.type = type;
+    }
+
+    int getType() {
+        return type;
+    }
+
+    /**
+     * Filters a row.
+     * @param type filter type, 0 - 4
+     * @param row raw row bytes
+     * @param previous raw bytes of the previous row, zeros for the first row
+     * @param bpp distance to the corresponding byte of the previous pixel
+     * @param out filtered row: type byte followed by filtered bytes
+     */
+    static void apply(int type, byte[] row, byte[] previous, int bpp, byte[] out) {
+        int length = row.length;
+        out[0] = (byte) type;
+        switch (type) {
+            case 0:
+                System.arraycopy(row, 0, out, 1, length);
+                break;
+            case 1:
+                for (int i = 0; i < length; i++) {
+                    out[i + 1] = (byte) (row[i] - (i >= bpp ? row[i - bpp] : 0));
+                }
+                break;
+            case 2:
+                for (int i = 0; i < length; i++) {
+                    out[i + 1] = (byte) (row[i] - previous[i]);
+                }
+                break;
+            case 3:
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    out[i + 1] = (byte) (row[i] - ((left + (previous[i] & 0xFF)) >>> 1));
+                }
+                break;
+            default:
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    int upLeft = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                    out[i + 1] = (byte) (row[i] - paeth(left, previous[i] & 0xFF, upLeft));
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return sum of filtered bytes taken as signed values - the lower, the better the row compresses
+     */
+    static long cost(byte[] filtered) {
+        long sum = 0;
+        for (int i = 1; i < filtered.length; i++) {
+            sum += Math.abs(filtered[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * Paeth predictor: whichever of left, up and upper left neighbour is closest to left + up - upper left.
+     */
+    static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+            return left;
+        }
+        return distanceUp <= distanceUpLeft ? up : upLeft;
+    }
+}
@@ -0,0 +1,145 @@
+package com.michalwesoly.pattern.finder.png;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Image properties stored in the IHDR chunk of a PNG file.
+ */
+public class PngHeader {
+    public static final int COLOR_GRAY = 0;
+    public static final int COLOR_RGB = 2;
+    public static final int COLOR_PALETTE = 3;
+    public static final int COLOR_GRAY_ALPHA = 4;
+    public static final int COLOR_RGB_ALPHA = 6;
+
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    static final int IHDR = 0x49484452;
+    static final int IHDR_LENGTH = 13;
+
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private final int colorType;
+    private final boolean interlaced;
+
+    PngHeader(int width, int height, int bitDepth, int colorType, boolean interlaced) {
+        this.width = width;
+        this.height = height;
+        this.bitDepth = bitDepth;
+        this.colorType = colorType;
+        this.interlaced = interlaced;
+    }
+
+    /**
+     * Reads PNG signature and IHDR chunk - the first 33 bytes of every PNG file.
+     * @param in stream positioned at the start of the file; it's left right after the IHDR chunk
+     * @return PngHeader or null if the stream doesn't start with a PNG signature followed by a valid IHDR
+     * @throws IOException if the stream can't be read
+     */
+    public static PngHeader read(InputStream in) throws IOException {
+        byte[] signature = new byte[SIGNATURE.length];
+        if (readFully(in, signature) < signature.length || !Arrays.equals(signature, SIGNATURE)) {
+            return null;
+        }
+        byte[] chunk = new byte[8 + IHDR_LENGTH + 4]; // length, type, data, crc
+        if (readFully(in, chunk) < chunk.length) {
+            return null;
+        }
+        if (readInt(chunk, 0) != IHDR_LENGTH || readInt(chunk, 4) != IHDR) {
+            return null;
+        }
+        int width = readInt(chunk, 8);
+        int height = readInt(chunk, 12);
+        int bitDepth = chunk[16];
+        int colorType = chunk[17];
+        int interlace = chunk[20];
+        if (width <= 0 || height <= 0 || !isValid(colorType, bitDepth) || interlace > 1) {
+            return null;
+        }
+        return new PngHeader(width, height, bitDepth, colorType, interlace == 1);
+    }
+
+    private static boolean isValid(int colorType, int bitDepth) {
+        switch (colorType) {
+            case COLOR_GRAY:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8 || bitDepth == 16;
+            case COLOR_PALETTE:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8;
+            case COLOR_RGB:
+            case COLOR_GRAY_ALPHA:
+            case COLOR_RGB_ALPHA:
+                return bitDepth == 8 || bitDepth == 16;
+            default:
+                return false;
+        }
+    }
+
+    static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * @return number of channels a pixel of this color type has
+     */
+    public int getChannels() {
+        switch (colorType) {
+            case COLOR_RGB:
+                return 3;
+            case COLOR_GRAY_ALPHA:
+                return 2;
+            case COLOR_RGB_ALPHA:
+                return 4;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @return true if pixels of this color type can only be shades of gray, so never pure red
+     */
+    public boolean isGrayscale() {
+        return colorType == COLOR_GRAY || colorType == COLOR_GRAY_ALPHA;
+    }
+
+    /**
+     * @return number of pixels in the image
+     */
+    public long getPixels() {
+        return (long) width * height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBitDepth() {
+        return bitDepth;
+    }
+
+    public int getColorType() {
+        return colorType;
+    }
+
+    public boolean isInterlaced() {
+        return interlaced;
+    }
+}
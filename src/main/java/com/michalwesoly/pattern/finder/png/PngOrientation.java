@@ -0,0 +1,190 @@
+package com.michalwesoly.pattern.finder.png;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Tells viewers how to rotate a PNG file through the Orientation tag of its eXIf chunk, instead of rotating
+ * its pixels.
+ *
+ * The file is copied chunk by chunk; image data is never decoded, so the output is lossless and costs a copy
+ * proportional to the file size. The eXIf chunk is inserted before the first IDAT chunk. If the file has one
+ * already, its Orientation tag is patched and other metadata is kept; an eXIf chunk without the tag is
+ * replaced by one holding only the orientation. Only eXIf chunks of up to MAX_EXIF bytes are read into memory:
+ * larger ones, and any after the first, are skipped as they're read, whatever length the upload claims.
+ */
+public final class PngOrientation {
+    static final int EXIF = 0x65584966;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454E44;
+    private static final int ORIENTATION_TAG = 0x0112;
+    private static final int TYPE_SHORT = 3;
+    private static final int COPY_BUFFER = 8192;
+    static final int MAX_EXIF = 65536;  // EXIF data is kilobytes; JPEG files can't hold more than that either
+
+    private PngOrientation() { }
+
+    /**
+     * Copies the PNG file with its orientation set.
+     * @param png stream of the PNG file; read up to the IEND chunk
+     * @param out stream the file is written to; it isn't closed
+     * @param degrees clockwise rotation viewers should apply: 0, 90, 180 or 270
+     * @throws IOException if the file isn't a PNG file, is truncated, or the streams fail
+     */
+    public static void write(InputStream png, OutputStream out, int degrees) throws IOException {
+        int orientation = exifOrientation(degrees);
+        DataInputStream in = new DataInputStream(png);
+        DataOutputStream data = new DataOutputStream(out);
+
+        byte[] signature = new byte[PngHeader.SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, PngHeader.SIGNATURE)) {
+            throw new IOException("Not a PNG file");
+        }
+        data.write(signature);
+
+        boolean written = false;
+        byte[] buffer = new byte[COPY_BUFFER];
+        int type;
+        do {
+            int length = in.readInt();
+            type = in.readInt();
+            if (length < 0) {
+                throw new IOException("Malformed PNG chunk length " + Integer.toUnsignedString(length));
+            }
+            if (type == EXIF && (written || length > MAX_EXIF)) {
+                copy(in, OutputStream.nullOutputStream(), length + 4L, buffer); // never buffered
+                if (!written) {
+                    writeChunk(data, EXIF, withOrientation(null, orientation));
+                    written = true;
+                }
+                continue;
+            }
+            if (type == EXIF) {
+                byte[] exif = new byte[length];
+                in.readFully(exif);
+                in.readInt(); // CRC, recomputed
+                writeChunk(data, EXIF, withOrientation(exif, orientation));
+                written = true;
+                continue; // a second eXIf chunk would be invalid
+            }
+            if (!written && (type == IDAT || type == IEND)) {
+                writeChunk(data, EXIF, withOrientation(null, orientation));
+                written = true;
+            }
+            data.writeInt(length);
+            data.writeInt(type);
+            copy(in, data, length + 4L, buffer); // data and CRC as they are
+        } while (type != IEND);
+        data.flush();
+    }
+
+    /**
+     * @param degrees clockwise rotation: 0, 90, 180 or 270
+     * @return EXIF Orientation value telling viewers to apply that rotation
+     */
+    public static int exifOrientation(int degrees) {
+        switch (degrees) {
+            case 0:
+                return 1;
+            case 90:
+                return 6;
+            case 180:
+                return 3;
+            case 270:
+                return 8;
+            default:
+                throw new IllegalArgumentException("Only right angle rotations are supported, got " + degrees);
+        }
+    }
+
+    /**
+     * Patches the Orientation tag of the first IFD of the EXIF data, or builds EXIF data holding only the tag
+     * @param exif TIFF structure of an existing eXIf chunk, or null
+     * @return EXIF data with the orientation
+     */
+    static byte[] withOrientation(byte[] exif, int orientation) {
+        if (exif != null && exif.length >= 8) {
+            boolean bigEndian = exif[0] == 'M' && exif[1] == 'M';
+            if (bigEndian || exif[0] == 'I' && exif[1] == 'I') {
+                long ifd = readInt(exif, 4, bigEndian) & 0xFFFFFFFFL;
+                if (ifd + 2 <= exif.length) {
+                    int entries = readShort(exif, (int) ifd, bigEndian);
+                    for (int i = 0; i < entries && ifd + 2 + 12L * (i + 1) <= exif.length; i++) {
+                        int entry = (int) ifd + 2 + 12 * i;
+                        if (readShort(exif, entry, bigEndian) == ORIENTATION_TAG) {
+                            byte[] patched = exif.clone();
+                            writeShort(patched, entry + 2, TYPE_SHORT, bigEndian);
+                            writeInt(patched, entry + 4, 1, bigEndian);
+                            writeInt(patched, entry + 8, 0, bigEndian);
+                            writeShort(patched, entry + 8, orientation, bigEndian);
+                            return patched;
+                        }
+                    }
+                }
+            }
+        }
+        byte[] minimal = new byte[8 + 2 + 12 + 4]; // header, a single IFD entry and no next IFD
+        minimal[0] = 'M';
+        minimal[1] = 'M';
+        writeShort(minimal, 2, 42, true);
+        writeInt(minimal, 4, 8, true);
+        writeShort(minimal, 8, 1, true);
+        writeShort(minimal, 10, ORIENTATION_TAG, true);
+        writeShort(minimal, 12, TYPE_SHORT, true);
+        writeInt(minimal, 14, 1, true);
+        writeShort(minimal, 18, orientation, true);
+        return minimal;
+    }
+
+    private static void writeChunk(DataOutputStream out, int type, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type >>> 24);
+        crc.update(type >>> 16);
+        crc.update(type >>> 8);
+        crc.update(type);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.writeInt(type);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void copy(InputStream in, OutputStream out, long length, byte[] buffer) throws IOException {
+        while (length > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0) {
+                throw new IOException("Truncated PNG file");
+            }
+            out.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    private static int readShort(byte[] bytes, int offset, boolean bigEndian) {
+        return bigEndian
+                ? (bytes[offset] & 0xFF) << 8 | bytes[offset + 1] & 0xFF
+                : (bytes[offset + 1] & 0xFF) << 8 | bytes[offset] & 0xFF;
+    }
+
+    private static int readInt(byte[] bytes, int offset, boolean bigEndian) {
+        return bigEndian
+                ? readShort(bytes, offset, true) << 16 | readShort(bytes, offset + 2, true)
+                : readShort(bytes, offset + 2, false) << 16 | readShort(bytes, offset, false);
+    }
+
+    private static void writeShort(byte[] bytes, int offset, int value, boolean bigEndian) {
+        bytes[offset + (bigEndian ? 0 : 1)] = (byte) (value >>> 8);
+        bytes[offset + (bigEndian ? 1 : 0)] = (byte) value;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value, boolean bigEndian) {
+        writeShort(bytes, offset + (bigEndian ? 0 : 2), value >>> 16, bigEndian);
+        writeShort(bytes, offset + (bigEndian ? 2 : 0), value, bigEndian);
+    }
+}
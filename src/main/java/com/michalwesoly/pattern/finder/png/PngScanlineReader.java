@@ -0,0 +1,360 @@
+package com.michalwesoly.pattern.finder.png;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.IntPredicate;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes a PNG file one row at a time, keeping only the current and the previous row in memory.
+ *
+ * Pixels are returned as packed ARGB ints equal to what BufferedImage.getRGB() gives for the same file read by
+ * ImageIO. That holds for the variants reported by isSupported(): non-interlaced 8 bit RGB and RGBA images and
+ * palette images of any bit depth. Other variants have to be decoded by ImageIO.
+ */
+public class PngScanlineReader implements Closeable {
+    private static final int PLTE = 0x504C5445;
+    private static final int TRNS = 0x74524E53;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454E44;
+    private static final int CRC_LENGTH = 4;
+    private static final int MAX_PALETTE_LENGTH = 3 * 256;
+
+    private final DataInputStream in;
+    private final PngHeader header;
+    private final Inflater inflater = new Inflater();
+    private int[] palette;              // ARGB value of every palette index
+    private byte[] paletteAlpha;        // alpha of palette entries from tRNS chunk
+    private boolean transparentColor;   // tRNS chunk of an RGB image
+    private InputStream imageData;      // inflated content of IDAT chunks
+    private byte[] currentRow;          // filter type byte followed by row data
+    private byte[] previousRow;
+    private int bytesPerPixel;          // distance to the corresponding byte of the previous pixel
+    private int rowsRead;
+
+    private PngScanlineReader(DataInputStream in, PngHeader header) {
+        this.in = in;
+        this.header = header;
+    }
+
+    /**
+     * Reads PNG header and chunks preceding image data.
+     * @param stream PNG file
+     * @return PngScanlineReader positioned at the first row or null if the stream isn't a PNG file
+     * @throws IOException if the stream can't be read or chunks before image data are malformed; the reader
+     * is closed then, together with the stream
+     */
+    public static PngScanlineReader open(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        PngHeader header = PngHeader.read(in);
+        if (header == null) {
+            return null;
+        }
+        PngScanlineReader reader = new PngScanlineReader(in, header);
+        try {
+            reader.readChunksBeforeImageData();
+        }
+        catch (IOException | RuntimeException e) {
+            reader.close(); // the Inflater's native memory isn't left to the finalizer
+            throw e;
+        }
+        return reader;
+    }
+
+    private void readChunksBeforeImageData() throws IOException {
+        while (true) {
+            int length = in.readInt();
+            int type = in.readInt();
+            if (length < 0) {
+                throw new IOException("Invalid PNG chunk length");
+            }
+            if (type == IDAT) {
+                imageData = new InflaterInputStream(new ImageDataStream(length), inflater);
+                break;
+            }
+            if (type == IEND) {
+                throw new IOException("PNG file has no image data");
+            }
+
+            boolean paletteChunk = type == PLTE || type == TRNS;
+            if (paletteChunk && header.getColorType() == PngHeader.COLOR_PALETTE && length > MAX_PALETTE_LENGTH) {
+                throw new IOException("PNG palette too long");
+            }
+
+            if (type == PLTE && header.getColorType() == PngHeader.COLOR_PALETTE) {
+                byte[] entries = new byte[length];
+                in.readFully(entries);
+                readPalette(entries);
+            }
+            else if (type == TRNS && header.getColorType() == PngHeader.COLOR_PALETTE) {
+                paletteAlpha = new byte[length];
+                in.readFully(paletteAlpha);
+            }
+            else {
+                transparentColor |= type == TRNS;
+                skipFully(length);
+            }
+            skipFully(CRC_LENGTH);
+        }
+
+        if (header.getColorType() == PngHeader.COLOR_PALETTE) {
+            if (palette == null) {
+                throw new IOException("Palette PNG file has no PLTE chunk");
+            }
+            applyPaletteAlpha();
+        }
+        int bitsPerPixel = header.getChannels() * header.getBitDepth();
+        long rowBytes = ((long) header.getWidth() * bitsPerPixel + 7) / 8;
+        if (rowBytes >= Integer.MAX_VALUE) {
+            throw new IOException("PNG row too long");
+        }
+        bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+        currentRow = new byte[(int) rowBytes + 1];
+        previousRow = new byte[(int) rowBytes + 1];
+    }
+
+    /**
+     * Builds ARGB palette the same way ImageIO does: entries missing up to 2^bitDepth repeat the last one.
+     */
+    private void readPalette(byte[] entries) throws IOException {
+        int count = entries.length / 3;
+        if (count == 0) {
+            throw new IOException("Empty PNG palette");
+        }
+        palette = new int[1 << header.getBitDepth()];
+        for (int i = 0; i < palette.length; i++) {
+            int entry = 3 * Math.min(i, count - 1);
+            palette[i] = 0xFF000000 | (entries[entry] & 0xFF) << 16 | (entries[entry + 1] & 0xFF) << 8
+                    | (entries[entry + 2] & 0xFF);
+        }
+    }
+
+    /**
+     * Alpha values from tRNS chunk, entries missing are opaque
+     */
+    private void applyPaletteAlpha() {
+        if (paletteAlpha == null) {
+            return;
+        }
+        for (int i = 0; i < Math.min(paletteAlpha.length, palette.length); i++) {
+            palette[i] = (paletteAlpha[i] & 0xFF) << 24 | (palette[i] & 0x00FFFFFF);
+        }
+    }
+
+    /**
+     * @return true if rows of this file can be decoded here exactly as ImageIO decodes them
+     */
+    public boolean isSupported() {
+        boolean rgb = header.getColorType() == PngHeader.COLOR_RGB;
+        return isSupported(header) && !(rgb && transparentColor); // ImageIO adds alpha for tRNS color
+    }
+
+    /**
+     * Tells from the IHDR chunk alone whether the file may be decoded row by row; an RGB file still can't be
+     * if it turns out to have a tRNS chunk.
+     * @param header IHDR chunk of the file
+     * @return false if the file's variant has to be decoded by ImageIO
+     */
+    public static boolean isSupported(PngHeader header) {
+        if (header.isInterlaced()) {
+            return false;
+        }
+        switch (header.getColorType()) {
+            case PngHeader.COLOR_PALETTE:
+                return true;
+            case PngHeader.COLOR_RGB:
+            case PngHeader.COLOR_RGB_ALPHA:
+                return header.getBitDepth() == 8;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Tells whether the color can appear in the image at all - palette images can rule it out before
+     * any row is decoded.
+     * @param argb packed ARGB color
+     * @return false if no palette entry has that color; always true for images without a palette
+     */
+    public boolean mayContain(int argb) {
+        return mayContainAny(entry -> entry == argb);
+    }
+
+    /**
+     * Tells whether any pixel may satisfy the condition, e.g. be close enough to a marker color.
+     * @param condition test of a packed ARGB color
+     * @return false if no palette entry satisfies it; always true for images without a palette
+     */
+    public boolean mayContainAny(IntPredicate condition) {
+        if (palette == null) {
+            return true;
+        }
+        for (int entry : palette) {
+            if (condition.test(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes the next row of the image.
+     * @param argb array of at least image width length, filled with ARGB values of the row's pixels
+     * @throws IOException if image data is malformed or ends before the last row
+     */
+    public void readRow(int[] argb) throws IOException {
+        if (rowsRead == header.getHeight()) {
+            throw new EOFException("All rows of the PNG image were read");
+        }
+        byte[] row = previousRow;
+        previousRow = currentRow;
+        currentRow = row;
+        readImageData(row);
+        unfilter(row, previousRow);
+        toArgb(row, argb);
+        rowsRead++;
+    }
+
+    private void readImageData(byte[] row) throws IOException {
+        int total = 0;
+        while (total < row.length) {
+            int read = imageData.read(row, total, row.length - total);
+            if (read < 0) {
+                throw new EOFException("PNG image data ends at row " + rowsRead);
+            }
+            total += read;
+        }
+    }
+
+    /**
+     * Reverses the filter the row was encoded with; byte 0 of both rows is the filter type.
+     */
+    private void unfilter(byte[] row, byte[] previous) throws IOException {
+        int bpp = bytesPerPixel;
+        int length = row.length;
+        switch (row[0]) {
+            case 0: // None
+                break;
+            case 1: // Sub
+                for (int i = 1 + bpp; i < length; i++) {
+                    row[i] += row[i - bpp];
+                }
+                break;
+            case 2: // Up
+                for (int i = 1; i < length; i++) {
+                    row[i] += previous[i];
+                }
+                break;
+            case 3: // Average
+                for (int i = 1; i < length; i++) {
+                    int left = i > bpp ? row[i - bpp] & 0xFF : 0;
+                    row[i] += (left + (previous[i] & 0xFF)) >>> 1;
+                }
+                break;
+            case 4: // Paeth
+                for (int i = 1; i < length; i++) {
+                    int left = i > bpp ? row[i - bpp] & 0xFF : 0;
+                    int up = previous[i] & 0xFF;
+                    int upLeft = i > bpp ? previous[i - bpp] & 0xFF : 0;
+                    row[i] += PngFilter.paeth(left, up, upLeft);
+                }
+                break;
+            default:
+                throw new IOException("Unknown PNG filter type " + row[0]);
+        }
+    }
+
+    private void toArgb(byte[] row, int[] argb) {
+        int width = header.getWidth();
+        switch (header.getColorType()) {
+            case PngHeader.COLOR_RGB:
+                for (int x = 0, i = 1; x < width; x++, i += 3) {
+                    argb[x] = 0xFF000000 | (row[i] & 0xFF) << 16 | (row[i + 1] & 0xFF) << 8 | (row[i + 2] & 0xFF);
+                }
+                break;
+            case PngHeader.COLOR_RGB_ALPHA:
+                for (int x = 0, i = 1; x < width; x++, i += 4) {
+                    argb[x] = (row[i + 3] & 0xFF) << 24 | (row[i] & 0xFF) << 16 | (row[i + 1] & 0xFF) << 8
+                            | (row[i + 2] & 0xFF);
+                }
+                break;
+            default: // palette
+                int bitDepth = header.getBitDepth();
+                int mask = (1 << bitDepth) - 1;
+                for (int x = 0; x < width; x++) {
+                    int bit = x * bitDepth;
+                    int index = (row[1 + (bit >>> 3)] & 0xFF) >>> (8 - bitDepth - (bit & 7)) & mask;
+                    argb[x] = palette[index];
+                }
+                break;
+        }
+    }
+
+    public PngHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Skips bytes of the file; unlike skipBytes, doesn't stop short of them before the end of the file
+     * @throws EOFException if the file ends first
+     */
+    private void skipFully(int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped == 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("PNG file ends inside a chunk");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Content of consecutive IDAT chunks as one stream, ending at the first chunk of another type.
+     */
+    private class ImageDataStream extends InputStream {
+        private int remaining; // bytes left in the current IDAT chunk, -1 after the last one
+
+        ImageDataStream(int length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            while (remaining == 0) {
+                skipFully(CRC_LENGTH);
+                int chunkLength = in.readInt();
+                remaining = in.readInt() == IDAT ? chunkLength : -1;
+            }
+            if (remaining < 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, Math.min(length, remaining));
+            if (read < 0) {
+                throw new EOFException("PNG file ends inside an IDAT chunk");
+            }
+            remaining -= read;
+            return read;
+        }
+    }
+}
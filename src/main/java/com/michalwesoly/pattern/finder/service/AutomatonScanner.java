@@ -0,0 +1,38 @@
+package com.michalwesoly.pattern.finder.service;
+
+/**
+ * Scanning engine matching any number of configured markers with a MarkerSet automaton, in a single pass
+ * over the rows - columns are matched along the way. Adding markers grows the automaton, not the number of
+ * passes, so the cost per pixel stays nearly flat.
+ */
+public class AutomatonScanner implements PatternScanner {
+    private final MarkerSet markers;
+
+    /**
+     * @param markers MarkerSet to be matched
+     */
+    public AutomatonScanner(MarkerSet markers) {
+        this.markers = markers;
+    }
+
+    @Override
+    public ScanResult findPatterns(PixelRaster raster, ScanPolicy policy) {
+        int width = raster.getWidth();
+        MarkerMatcher matcher = new MarkerMatcher(markers, width, new ScanResult(policy));
+        int[] row = new int[width];
+        for (int y = 0; y < raster.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = raster.getRGB(x, y);
+            }
+            if (!matcher.scanRow(row, y)) {
+                return matcher.stopped();
+            }
+        }
+        return matcher.completed();
+    }
+
+    @Override
+    public boolean mayMatch(PixelRaster raster) {
+        return markers.mayMatch(raster::mayContainAny);
+    }
+}
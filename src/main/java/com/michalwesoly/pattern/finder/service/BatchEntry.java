@@ -0,0 +1,27 @@
+package com.michalwesoly.pattern.finder.service;
+
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * Single image of a batch - an uploaded file or an entry of an uploaded archive.
+ */
+public class BatchEntry {
+    private final String name;              // file name, used for the output entry
+    private final InputStreamSource source; // image bytes, null if the entry is too large to be read
+
+    public BatchEntry(String name, InputStreamSource source) {
+        this.name = name;
+        this.source = source;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return source of the image bytes or null if the entry was skipped for being too large
+     */
+    public InputStreamSource getSource() {
+        return source;
+    }
+}
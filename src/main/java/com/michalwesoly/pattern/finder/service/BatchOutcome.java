@@ -0,0 +1,13 @@
+package com.michalwesoly.pattern.finder.service;
+
+/**
+ * What happened to a single image of a batch.
+ */
+public enum BatchOutcome {
+    ROTATED,        // rotated image is in the output archive
+    NO_PATTERN,     // 204 for a single upload
+    AMBIGUOUS,      // 400 for a single upload
+    UNSUPPORTED,    // file isn't an image of an accepted format
+    TOO_LARGE,      // entry is larger than the batch entry limit, or its image exceeds the size limits
+    UNREADABLE      // image that can't be decoded
+}
@@ -0,0 +1,54 @@
+package com.michalwesoly.pattern.finder.service;
+
+/**
+ * Outcome of a single image of a batch - a line of the batch manifest.
+ */
+public class BatchResult {
+    private final int index;            // position of the image in the batch
+    private final String name;          // name of the uploaded file or archive entry
+    private final BatchOutcome outcome;
+    private final String output;        // name of the rotated image in the output archive, null if there's none
+    private final byte[] body;          // encoded rotated image until it's written to the archive
+
+    BatchResult(int index, String name, BatchOutcome outcome, String output, byte[] body) {
+        this.index = index;
+        this.name = name;
+        this.outcome = outcome;
+        this.output = output;
+        this.body = body;
+    }
+
+    BatchResult(int index, String name, BatchOutcome outcome) {
+        this(index, name, outcome, null, null);
+    }
+
+    /**
+     * @return the same result with the rotated image written out as the given archive entry
+     */
+    BatchResult written(String output) {
+        return new BatchResult(index, name, outcome, output, null);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BatchOutcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return name of the rotated image in the output archive, null if the image wasn't rotated
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+}
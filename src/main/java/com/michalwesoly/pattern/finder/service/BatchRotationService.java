@@ -0,0 +1,215 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.michalwesoly.pattern.finder.admission.ProcessingPool;
+import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
+import com.michalwesoly.pattern.finder.api.exceptions.NoPatternException;
+import com.michalwesoly.pattern.finder.api.exceptions.RejectedImageException;
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import com.michalwesoly.pattern.finder.buffer.PooledOutputStream;
+import com.michalwesoly.pattern.finder.metrics.Phase;
+import com.michalwesoly.pattern.finder.metrics.PipelineMetrics;
+import com.michalwesoly.pattern.finder.png.PngEncoder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Service rotating a batch of images in parallel and writing them out as a ZIP archive.
+ *
+ * Images are taken from the batch only as fast as the executor processes them - at most maxInFlight of a batch
+ * are read, decoded or waiting to be written at any time - so memory stays bounded however large the batch is.
+ * Like /rotate uploads, every image reserves its decoded pixels from the ProcessingPool's budget while it's
+ * decoded, rotated and encoded; a batch waits for the budget instead of being turned away.
+ * Rotated images are written to the archive in the order they finish, followed by manifest.json listing
+ * the outcome of every image in batch order.
+ */
+@Service
+public class BatchRotationService {
+    static final String MANIFEST = "manifest.json";
+
+    private final RotationService rotationService;
+    private final PngEncoder pngEncoder;
+    private final ExecutorService executor;     // shared by all batches, bounds the threads
+    private final int maxInFlight;              // images of a single batch being processed or waiting to be written
+    private final PipelineMetrics metrics;
+    private final BufferPool bufferPool;        // rotated images and encoding buffers
+    private final ProcessingPool processingPool; // pixel budget shared with /rotate
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public BatchRotationService(RotationService rotationService, PngEncoder pngEncoder,
+                                @Qualifier("batchExecutor") ExecutorService executor,
+                                @Value("${pattern.finder.batch.max-in-flight:8}") int maxInFlight,
+                                PipelineMetrics metrics, BufferPool bufferPool, ProcessingPool processingPool) {
+        this.rotationService = rotationService;
+        this.pngEncoder = pngEncoder;
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.metrics = metrics;
+        this.bufferPool = bufferPool;
+        this.processingPool = processingPool;
+    }
+
+    /**
+     * Rotates every image of the batch and writes the results as a ZIP archive. The stream isn't closed.
+     * @param batch images to be rotated
+     * @param out stream the archive is written to
+     * @return outcome of every image, in batch order
+     * @throws IOException if the batch can't be read or the archive can't be written
+     */
+    public List<BatchResult> rotateAll(BatchSource batch, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        CompletionService<BatchResult> completion = new ExecutorCompletionService<>(executor);
+        Set<Future<BatchResult>> running = new HashSet<>();
+        List<BatchResult> results = new ArrayList<>();
+        Set<String> outputs = new HashSet<>();
+        try {
+            int index = 0;
+            for (BatchEntry entry = batch.next(); entry != null; entry = batch.next()) {
+                if (running.size() == maxInFlight) {
+                    results.add(write(take(completion, running), zip, outputs));
+                }
+                int position = index++;
+                BatchEntry image = entry;
+                running.add(completion.submit(() -> process(position, image)));
+            }
+            while (!running.isEmpty()) {
+                results.add(write(take(completion, running), zip, outputs));
+            }
+        }
+        finally {
+            running.forEach(future -> future.cancel(true)); // left behind only if writing failed
+        }
+
+        results.sort(Comparator.comparingInt(BatchResult::getIndex));
+        zip.putNextEntry(new ZipEntry(MANIFEST));
+        zip.write(objectMapper.writeValueAsBytes(results));
+        zip.closeEntry();
+        zip.finish();
+        return results;
+    }
+
+    /**
+     * Rotates and encodes a single image on the executor
+     */
+    private BatchResult process(int index, BatchEntry entry) {
+        InputStreamSource source = entry.getSource();
+        if (source == null) {
+            return new BatchResult(index, entry.getName(), BatchOutcome.TOO_LARGE);
+        }
+        try {
+            ImageHeader header = rotationService.inspect(source);
+            try (ProcessingPool.Permit permit = processingPool.await(header.getPixels())) {
+                BufferedImage rotated = rotationService.rotate(source, header);
+                try (PooledOutputStream png = new PooledOutputStream(bufferPool, 1 << 16)) {
+                    long start = System.nanoTime();
+                    pngEncoder.write(rotated, png);
+                    metrics.record(Phase.ENCODE, start);
+                    return new BatchResult(index, entry.getName(), BatchOutcome.ROTATED, null, png.toByteArray());
+                }
+                finally {
+                    bufferPool.release(rotated);
+                }
+            }
+        }
+        catch (RejectedImageException e) {
+            BatchOutcome outcome = e.isTooLarge() ? BatchOutcome.TOO_LARGE : BatchOutcome.UNSUPPORTED;
+            return new BatchResult(index, entry.getName(), outcome);
+        }
+        catch (NoPatternException e) {
+            return new BatchResult(index, entry.getName(), BatchOutcome.NO_PATTERN);
+        }
+        catch (AmbiguousImageException e) {
+            return new BatchResult(index, entry.getName(), BatchOutcome.AMBIGUOUS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // the batch is given up, its results aren't written
+            return new BatchResult(index, entry.getName(), BatchOutcome.UNREADABLE);
+        }
+        catch (IOException | RuntimeException e) {
+            return new BatchResult(index, entry.getName(), BatchOutcome.UNREADABLE);
+        }
+    }
+
+    private static BatchResult take(CompletionService<BatchResult> completion, Set<Future<BatchResult>> running)
+            throws IOException {
+        try {
+            Future<BatchResult> done = completion.take();
+            running.remove(done);
+            return done.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rotating a batch");
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Batch image processing failed", e.getCause()); // process() catches all
+        }
+    }
+
+    /**
+     * Writes the rotated image, if there's one, as an archive entry named after the input file
+     * @return result without the image bytes, so they can be collected
+     */
+    private static BatchResult write(BatchResult result, ZipOutputStream zip, Set<String> outputs) throws IOException {
+        if (result.getBody() == null) {
+            return result;
+        }
+        String output = outputName(result.getName(), outputs);
+        byte[] body = result.getBody();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ZipEntry entry = new ZipEntry(output);
+        entry.setMethod(ZipEntry.STORED); // PNG data is deflated already
+        entry.setSize(body.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(body);
+        zip.closeEntry();
+        return result.written(output);
+    }
+
+    /**
+     * Input file name with its extension, e.g. .jpg, replaced by .png, made unique within the archive. Leading
+     * slashes, drive letters and "." or ".." segments are dropped, so entries don't extract outside the target
+     * directory whatever names the uploaded archive had.
+     */
+    static String outputName(String name, Set<String> outputs) {
+        StringBuilder path = new StringBuilder();
+        for (String segment : (name == null ? "" : name).replace('\\', '/').split("/")) {
+            if (!segment.isEmpty() && !segment.equals(".") && !segment.equals("..") && !segment.endsWith(":")) {
+                path.append(path.length() == 0 ? "" : "/").append(segment);
+            }
+        }
+        String base = path.length() == 0 ? "image" : path.toString();
+        int extension = base.lastIndexOf('.');
+        if (extension > 0 && extension > base.lastIndexOf('/')) {
+            base = base.substring(0, extension);
+        }
+        String output = base + ".png";
+        for (int copy = 1; !outputs.add(output); copy++) {
+            output = base + "-" + copy + ".png";
+        }
+        return output;
+    }
+}
@@ -0,0 +1,64 @@
+package com.michalwesoly.pattern.finder.service;
+
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Images of a batch, handed out one at a time so only the entries being processed are held in memory.
+ */
+public interface BatchSource {
+
+    /**
+     * @return next image of the batch or null after the last one
+     * @throws IOException if the batch can't be read
+     */
+    BatchEntry next() throws IOException;
+
+    /**
+     * Batch of separately uploaded files
+     * @param files uploaded files with their names
+     * @return BatchSource handing out the files in order
+     */
+    static BatchSource of(List<BatchEntry> files) {
+        Iterator<BatchEntry> iterator = files.iterator();
+        return () -> iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Batch of ZIP archive entries, read from the stream as they're needed. Directories are skipped,
+     * entries larger than the limit are handed out without their bytes.
+     * @param zip stream of the archive
+     * @param maxEntryBytes size of the largest entry read into memory
+     * @return BatchSource handing out the archive's files in order
+     */
+    static BatchSource ofZip(InputStream zip, long maxEntryBytes) {
+        ZipInputStream in = new ZipInputStream(zip);
+        byte[] buffer = new byte[8192];
+        return () -> {
+            ZipEntry entry;
+            do {
+                entry = in.getNextEntry();
+                if (entry == null) {
+                    return null;
+                }
+            } while (entry.isDirectory());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                if (bytes.size() + read > maxEntryBytes) {
+                    return new BatchEntry(entry.getName(), null); // the rest is skipped by getNextEntry()
+                }
+                bytes.write(buffer, 0, read);
+            }
+            return new BatchEntry(entry.getName(), new ByteArrayResource(bytes.toByteArray()));
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package com.michalwesoly.pattern.finder.service;
+
+/**
+ * Maps pixels to the marker colors they match, allowing every channel to be off by up to a tolerance - slightly
+ * off-color markers and JPEG artifacts still match.
+ *
+ * Classification is precomputed: every channel value has a bit mask of the colors it's close enough to, so
+ * a pixel is classified by four table lookups and ANDing the masks, with no distance arithmetic per pixel.
+ * With tolerance 0 it's exact matching. A pixel close to several colors gets the first of them.
+ */
+final class ColorClassifier {
+    static final int MAX_COLORS = Long.SIZE;
+
+    private final int[] colors;
+    private final int tolerance;
+    private final long[] alpha = new long[256];
+    private final long[] red = new long[256];
+    private final long[] green = new long[256];
+    private final long[] blue = new long[256];
+
+    /**
+     * @param colors packed ARGB colors, at most 64
+     * @param tolerance largest difference allowed in every channel, 0 - 255
+     */
+    ColorClassifier(int[] colors, int tolerance) {
+        if (colors.length > MAX_COLORS) {
+            throw new IllegalArgumentException("At most " + MAX_COLORS + " marker colors are supported");
+        }
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("Color tolerance has to be 0 - 255, got " + tolerance);
+        }
+        this.colors = colors.clone();
+        this.tolerance = tolerance;
+        for (int i = 0; i < colors.length; i++) {
+            long bit = 1L << i;
+            mark(alpha, colors[i] >>> 24, bit);
+            mark(red, colors[i] >> 16 & 0xFF, bit);
+            mark(green, colors[i] >> 8 & 0xFF, bit);
+            mark(blue, colors[i] & 0xFF, bit);
+        }
+    }
+
+    private void mark(long[] channel, int value, long bit) {
+        for (int v = Math.max(0, value - tolerance); v <= Math.min(255, value + tolerance); v++) {
+            channel[v] |= bit;
+        }
+    }
+
+    /**
+     * @param argb packed ARGB pixel
+     * @return 1 + index of the first color the pixel matches, 0 if it matches none
+     */
+    int classify(int argb) {
+        long matches = alpha[argb >>> 24] & red[argb >> 16 & 0xFF] & green[argb >> 8 & 0xFF] & blue[argb & 0xFF];
+        return matches == 0 ? 0 : Long.numberOfTrailingZeros(matches) + 1;
+    }
+
+    /**
+     * Same as classify(argb) == symbol, but rejects most pixels by a channel or two - for checks of a single
+     * color, where most pixels are something else.
+     * @param argb packed ARGB pixel
+     * @param symbol 1 + index of the color
+     */
+    boolean is(int argb, int symbol) {
+        long bit = 1L << (symbol - 1);
+        return (red[argb >> 16 & 0xFF] & bit) != 0 && (green[argb >> 8 & 0xFF] & bit) != 0
+                && (blue[argb & 0xFF] & bit) != 0 && classify(argb) == symbol;
+    }
+
+    /**
+     * @return true if some shade of gray matches the color of the given index
+     */
+    boolean matchesGray(int index) {
+        int color = colors[index];
+        int r = color >> 16 & 0xFF;
+        int g = color >> 8 & 0xFF;
+        int b = color & 0xFF;
+        return Math.max(r, Math.max(g, b)) - Math.min(r, Math.min(g, b)) <= 2 * tolerance;
+    }
+
+    int getTolerance() {
+        return tolerance;
+    }
+}
@@ -0,0 +1,89 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
+import com.michalwesoly.pattern.finder.api.exceptions.NoPatternException;
+
+/**
+ * Where the pattern is and how the image has to be rotated to align it vertically, white up.
+ * Serialized as the body of /detect responses, so callers can rotate the image in their own pipeline.
+ */
+public class Detection {
+    private final int rotation;         // clockwise rotation in degrees: 0, 90, 180 or 270
+    private final int x;                // column of the pattern's first pixel (leftmost or topmost)
+    private final int y;                // row of the pattern's first pixel (leftmost or topmost)
+    private final boolean vertical;     // pattern runs up - down
+    private final boolean whiteFirst;   // white part (first band of the marker) comes first (left or up)
+    private final String marker;        // name of the marker found
+    private final int matchCount;       // patterns found before the scan stopped
+
+    Detection(Pattern pattern, int matchCount) {
+        this.rotation = pattern.getRotation();
+        this.x = pattern.getX();
+        this.y = pattern.getY();
+        this.vertical = pattern.getNeedsRotation();
+        this.whiteFirst = pattern.getAlignment() == 0;
+        this.marker = pattern.getMarker().getName();
+        this.matchCount = matchCount;
+    }
+
+    /**
+     * Builds the detection out of a scan that found exactly one pattern.
+     * @param scan ScanResult of the image
+     * @return Detection of the only pattern
+     * @throws AmbiguousImageException if the scan found more than 1 pattern
+     * @throws NoPatternException if the scan found no pattern
+     */
+    static Detection of(ScanResult scan) throws NoPatternException, AmbiguousImageException {
+        return new Detection(scan.getSinglePattern(), scan.getMatchCount());
+    }
+
+    /**
+     * @return clockwise rotation in degrees aligning the pattern vertically, white up
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * @return column of the pattern's leftmost (or topmost for vertical patterns) pixel
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return row of the pattern's leftmost (or topmost for vertical patterns) pixel
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return "VERTICAL" if the pattern runs up - down, "HORIZONTAL" if left - right
+     */
+    public String getAlignment() {
+        return vertical ? "VERTICAL" : "HORIZONTAL";
+    }
+
+    /**
+     * @return true if the white part of the pattern (the first band of a configured marker) comes first - left or up
+     */
+    public boolean isWhiteFirst() {
+        return whiteFirst;
+    }
+
+    /**
+     * @return name of the marker found, "stripe" for the white - red stripe
+     */
+    public String getMarker() {
+        return marker;
+    }
+
+    /**
+     * @return number of patterns found - 1, unless the FIRST_MATCH policy stopped the scan at the first one,
+     * in which case it's only a lower bound
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+}
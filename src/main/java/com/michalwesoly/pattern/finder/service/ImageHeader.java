@@ -0,0 +1,56 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.png.PngHeader;
+
+/**
+ * Format and size of an uploaded image, read from its header before anything is decoded.
+ */
+public final class ImageHeader {
+    public static final String PNG = "png";
+
+    private final String format;        // lower case ImageIO format name, e.g. png or jpeg
+    private final int width;
+    private final int height;
+    private final PngHeader png;        // null for other formats
+
+    ImageHeader(String format, int width, int height, PngHeader png) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.png = png;
+    }
+
+    static ImageHeader of(PngHeader png) {
+        return new ImageHeader(PNG, png.getWidth(), png.getHeight(), png);
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getPixels() {
+        return (long) width * height;
+    }
+
+    /**
+     * @return PngHeader of a PNG file, null for other formats
+     */
+    public PngHeader getPngHeader() {
+        return png;
+    }
+
+    /**
+     * @return true if the image is known to have gray pixels only - told only by PNG headers
+     */
+    public boolean isGrayscale() {
+        return png != null && png.isGrayscale();
+    }
+}
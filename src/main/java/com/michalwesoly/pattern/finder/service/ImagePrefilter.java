@@ -0,0 +1,142 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.api.exceptions.RejectedImageException;
+import com.michalwesoly.pattern.finder.png.PngHeader;
+import org.springframework.core.io.InputStreamSource;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * First check of every upload: only the image header is read - the PNG signature and IHDR chunk, 33 bytes,
+ * or for other formats as much as their ImageIO reader needs to tell the image size.
+ *
+ * Files that aren't images of an accepted format whatever their content type says, and images decoding to
+ * more pixels than allowed (e.g. decompression bombs, a few KB of zeros inflating to gigabytes), are rejected
+ * before any decoder sees them. The header of an accepted file tells which decode and scan path suits it.
+ */
+public class ImagePrefilter {
+    private final int maxWidth;         // in pixels
+    private final int maxHeight;        // in pixels
+    private final long maxPixels;       // width * height
+    private final Set<String> formats;  // lower case ImageIO format names accepted
+
+    /**
+     * Prefilter accepting PNG files only
+     * @param maxWidth widest image accepted
+     * @param maxHeight highest image accepted
+     * @param maxPixels largest number of pixels accepted
+     */
+    public ImagePrefilter(int maxWidth, int maxHeight, long maxPixels) {
+        this(maxWidth, maxHeight, maxPixels, Set.of(ImageHeader.PNG));
+    }
+
+    /**
+     * @param maxWidth widest image accepted
+     * @param maxHeight highest image accepted
+     * @param maxPixels largest number of pixels accepted
+     * @param formats ImageIO format names accepted, e.g. png, jpeg, gif, bmp
+     */
+    public ImagePrefilter(int maxWidth, int maxHeight, long maxPixels, Set<String> formats) {
+        if (maxWidth <= 0 || maxHeight <= 0 || maxPixels <= 0) {
+            throw new IllegalArgumentException("Image size limits have to be positive");
+        }
+        if (formats.isEmpty()) {
+            throw new IllegalArgumentException("At least one image format has to be accepted");
+        }
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.maxPixels = maxPixels;
+        this.formats = formats.stream().map(format -> format.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Reads the header of the upload and checks it against the limits.
+     * @param upload source of the image bytes; only the header is read
+     * @return ImageHeader of the accepted file
+     * @throws IOException if the upload can't be read
+     * @throws RejectedImageException if the upload isn't an image of an accepted format or exceeds the limits
+     */
+    public ImageHeader inspect(InputStreamSource upload) throws IOException, RejectedImageException {
+        ImageHeader header = readPng(upload);
+        if (header == null && (formats.size() > 1 || !formats.contains(ImageHeader.PNG))) {
+            header = readOther(upload);
+        }
+        if (header == null) {
+            throw new RejectedImageException("Not an image of an accepted format " + formats, false);
+        }
+        if (header.getWidth() > maxWidth || header.getHeight() > maxHeight || header.getPixels() > maxPixels) {
+            throw new RejectedImageException("Image of " + header.getWidth() + "x" + header.getHeight()
+                    + " pixels exceeds the limits", true);
+        }
+        return header;
+    }
+
+    /**
+     * @return ImageHeader or null if the upload isn't an accepted PNG file
+     */
+    private ImageHeader readPng(InputStreamSource upload) throws IOException {
+        if (!formats.contains(ImageHeader.PNG)) {
+            return null;
+        }
+        try (InputStream in = upload.getInputStream()) {
+            PngHeader png = PngHeader.read(in);
+            return png == null ? null : ImageHeader.of(png);
+        }
+    }
+
+    /**
+     * Lets ImageIO's readers recognize the file and read the size of its first image
+     * @return ImageHeader or null if no reader of an accepted format recognizes the file
+     * @throws RejectedImageException if the file is recognized but its header is malformed
+     */
+    private ImageHeader readOther(InputStreamSource upload) throws IOException, RejectedImageException {
+        try (InputStream in = upload.getInputStream();
+             ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            if (stream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            while (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                String format = acceptedFormat(reader);
+                if (format == null || ImageHeader.PNG.equals(format)) {
+                    continue; // PNG headers are read by PngHeader
+                }
+                try {
+                    reader.setInput(stream, true, true);
+                    return new ImageHeader(format, reader.getWidth(0), reader.getHeight(0), null);
+                }
+                catch (IIOException | IndexOutOfBoundsException e) {
+                    throw new RejectedImageException("Malformed " + format + " header", false);
+                }
+                finally {
+                    reader.dispose();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return accepted format name the reader reads, null if it reads none
+     */
+    private String acceptedFormat(ImageReader reader) {
+        for (String name : reader.getOriginatingProvider().getFormatNames()) {
+            String format = name.toLowerCase(Locale.ROOT);
+            if (formats.contains(format)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -2,12 +2,9 @@ package com.michalwesoly.pattern.finder.service;
 
 import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
 import com.michalwesoly.pattern.finder.api.exceptions.NoPatternException;
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
 
-import java.awt.*;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
 
 /**
  * Class serving a purpose of:
@@ -16,52 +13,54 @@ import java.util.ArrayList;
  * - image rotation and returning new image
  */
 public class ImageProcessor {
+    private static final PatternScanner DEFAULT_SCANNER = new SkipScanner();
+
     private final BufferedImage image;      // Actual image
-    private final String[][] imageAsStringMatrix;     // representation of the image as matrix
+    private final PatternScanner scanner;   // engine looking for the pattern
+    private final ScanPolicy policy;        // when the scan may stop early
+    private final BufferPool pool;          // the rotated image's raster is borrowed from
+    private PixelRaster raster;             // direct view of the image's pixels, created for the first scan
+    private ScanResult lastScan;            // outcome of the most recent scan
 
     /**
-     * Pattern structure for providing correct rotation of the image
+     * Constructor providing image assignment; scanning stops as soon as the image turns out ambiguous
+     * @param image BufferedImage to be processed
      */
-    private static class Pattern {
-        private final int alignment; // vertical or horizontal
-        private final boolean needsRotation; // white starts or red starts the pattern
-
-        Pattern(int alignment, boolean needsRotation) {
-            this.alignment = alignment;
-            this.needsRotation = needsRotation;
-        }
+    public ImageProcessor(BufferedImage image) {
+        this(image, ScanPolicy.STOP_ON_AMBIGUITY);
+    }
 
-        /**
-         * Value informing whether the pattern is aligned vertically or horizontally.
-         *
-         * If the alignment is 0 (vertical), image needs 0 or 180 degrees rotation.
-         * If it's 1 (horizontal), image needs 90 or 270 degrees rotation
-         * @return integer value representing pattern alignment - 0 for vertical, 1 for horizontal
-         */
-        protected int getAlignment() {
-            return alignment;
-        }
+    /**
+     * Constructor providing image and scan policy assignment
+     * @param image BufferedImage to be processed
+     * @param policy ScanPolicy deciding when the scan may stop before the end of the image
+     */
+    public ImageProcessor(BufferedImage image, ScanPolicy policy) {
+        this(image, DEFAULT_SCANNER, policy);
+    }
 
-        /**
-         * Value informing whether the patterns starts with white or red color - so if it needs to be rotated
-         * by additional 180 degrees.
-         *
-         * If it starts with white, it doesn't need additional rotation (false)
-         * If it starts with red, it starts with additional +180 degree rotation (true)
-         * @return returns a boolean representing whether the image needs additional rotation.
-         */
-        protected boolean getNeedsRotation() {
-            return needsRotation;
-        }
+    /**
+     * Constructor providing image, scanning engine and scan policy assignment
+     * @param image BufferedImage to be processed
+     * @param scanner PatternScanner looking for the pattern, e.g. ParallelScanner for large images
+     * @param policy ScanPolicy deciding when the scan may stop before the end of the image
+     */
+    public ImageProcessor(BufferedImage image, PatternScanner scanner, ScanPolicy policy) {
+        this(image, scanner, policy, BufferPool.NONE);
     }
 
     /**
-     * Constructor providing image and imageAsStringMatrix assignment
-     * @param image Takes BufferedImage and assigns to fields: BufferedImage image and imageAsStringMatrix - uses imageToStringArray() to convert it
+     * Constructor providing image, scanning engine, scan policy and buffer pool assignment
+     * @param image BufferedImage to be processed
+     * @param scanner PatternScanner looking for the pattern, e.g. ParallelScanner for large images
+     * @param policy ScanPolicy deciding when the scan may stop before the end of the image
+     * @param pool BufferPool the rotated image's raster is borrowed from; release the image to it once encoded
      */
-    public ImageProcessor(BufferedImage image) {
+    public ImageProcessor(BufferedImage image, PatternScanner scanner, ScanPolicy policy, BufferPool pool) {
         this.image = image;
-        this.imageAsStringMatrix = imageToStringArray(image);
+        this.scanner = scanner;
+        this.policy = policy;
+        this.pool = pool;
     }
 
     /**
@@ -71,147 +70,72 @@ public class ImageProcessor {
      * @throws NoPatternException if there's no pattern provided (ArrayList is empty)
      */
     public BufferedImage processImage() throws NoPatternException, AmbiguousImageException {
-        ArrayList<Pattern> patternArrayList = findPatternList();
-        if (patternArrayList.size() > 1) {
-            throw new AmbiguousImageException();
-        }
-        else if (patternArrayList.isEmpty()) {
-            throw new NoPatternException();
-        }
-        return rotate(patternArrayList.get(0));
+        return processImage(findPatternList());
     }
 
     /**
-     * Scans the String matrix for 3 pixels white and 3 pixels red stripe pattern left - right and up - down.
-     * @return Pattern ArrayList with patterns found in the image
+     * Rotates the image according to a scan already done elsewhere - e.g. by StreamingScanner while the image
+     * was being decoded - so it doesn't have to be scanned again.
+     * @param scan ScanResult of this image
+     * @return Rotated BufferedImage based on the pattern found by the scan
+     * @throws AmbiguousImageException if the scan found more than 1 pattern
+     * @throws NoPatternException if the scan found no pattern
      */
-    private ArrayList<Pattern> findPatternList() {
-        ArrayList<Pattern> patterns = new ArrayList<>();
-        final String WHITE = String.valueOf(new Color(255, 255, 255).getRGB());
-        final String RED = String.valueOf(new Color(255, 0, 0).getRGB());
-
-        final String whitePattern = WHITE + WHITE + WHITE + RED + RED + RED;
-        final String redPattern = RED + RED + RED + WHITE + WHITE + WHITE;
+    public BufferedImage processImage(ScanResult scan) throws NoPatternException, AmbiguousImageException {
+        lastScan = scan;
+        return rotate(scan.getSinglePattern());
+    }
 
-        // Search array left - right
-        for (String[] colors : imageAsStringMatrix) {
-            for (int column = 0; column < colors.length; column++) {
-                if ((colors[column].equals(WHITE) || colors[column].equals(RED)) && column + 5 < colors.length) {
-                    String probablePattern = colors[column] +
-                            colors[column + 1] +
-                            colors[column + 2] +
-                            colors[column + 3] +
-                            colors[column + 4] +
-                            colors[column + 5];
-                    if (probablePattern.equals(whitePattern)) {
-                        patterns.add(new Pattern(0, false));
-                    }
-                    if (probablePattern.equals(redPattern)) {
-                        patterns.add(new Pattern(1, false));
-                    }
-                }
-            }
-        }
+    /**
+     * Finds the pattern without rotating the image, for callers that rotate it themselves.
+     * @return Detection with the rotation the image needs and the pattern's position
+     * @throws AmbiguousImageException if there's more than 1 pattern in the image
+     * @throws NoPatternException if there's no pattern in the image
+     */
+    public Detection detect() throws NoPatternException, AmbiguousImageException {
+        return Detection.of(scan());
+    }
 
-        // Search the array up - down
-        for (int row = 0; row < imageAsStringMatrix.length; row++) {
-            for (int column = 0; column < imageAsStringMatrix[row].length; column++) {
-                if ((imageAsStringMatrix[row][column].equals(WHITE) || imageAsStringMatrix[row][column].equals(RED))
-                        && row + 5 < imageAsStringMatrix.length) {
-                    String probablePattern = imageAsStringMatrix[row][column] +
-                            imageAsStringMatrix[row + 1][column] +
-                            imageAsStringMatrix[row + 2][column] +
-                            imageAsStringMatrix[row + 3][column] +
-                            imageAsStringMatrix[row + 4][column] +
-                            imageAsStringMatrix[row + 5][column];
+    /**
+     * Scans the image without interpreting the outcome, for callers timing the scan on its own.
+     * @return ScanResult with patterns found in the image
+     */
+    ScanResult scan() {
+        lastScan = findPatternList();
+        return lastScan;
+    }
 
-                    if (probablePattern.equals(whitePattern)) {
-                        patterns.add(new Pattern(0, true));
-                    }
-                    if (probablePattern.equals(redPattern)) {
-                        patterns.add(new Pattern(1, true));
-                    }
-                }
-            }
+    /**
+     * Scans the image for 3 pixels white and 3 pixels red stripe pattern left - right and up - down.
+     * Gray and palette images without pure white or pure red pixel values aren't scanned at all.
+     * @return ScanResult with patterns found in the image, stopped early if the policy allows it
+     */
+    private ScanResult findPatternList() {
+        if (raster == null) {
+            raster = PixelRaster.of(image);
+        }
+        if (!scanner.mayMatch(raster)) {
+            return new ScanResult(policy).completed(0); // e.g. a palette without pure red - no pixel has to be read
         }
-        return patterns;
+        return scanner.findPatterns(raster, policy);
     }
 
     /**
-     * Image to String converter; converts image's pixels' RGB values to String and puts them in corresponding
-     * place in the array.
-     * @param image BufferedImage to be turned into RGB value String matrix
-     * @return String matrix filled with RGB value of each pixel
+     * Outcome of the last processImage() call - how many pixels were scanned and whether the scan stopped early.
+     * @return ScanResult of the last scan or null if the image hasn't been processed yet
      */
-    private String[][] imageToStringArray(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        String[][] imageStringArray = new String[height][width];
-
-        for (int row = 0; row < height; row++) {
-            for (int column = 0; column < width; column++) {
-                imageStringArray[row][column] += String.valueOf(image.getRGB(column, row));
-                imageStringArray[row][column] = imageStringArray[row][column].substring(4);
-            }
-        }
-        return imageStringArray;
+    public ScanResult getLastScan() {
+        return lastScan;
     }
 
     /**
      * Rotates the image by *Theta* degrees basing on it's alignment and whether it needs additional rotation
      * - Vertical - 0 or 180 degrees
      * - Horizontal - 90 or 270 degrees
-     * @return new BufferedImage containing processed image basing on the pattern provided.
+     * @return BufferedImage containing processed image basing on the pattern provided - the same image if it
+     * doesn't need any rotation
      */
     private BufferedImage rotate(Pattern pattern) {
-        AffineTransform transform = new AffineTransform();
-        BufferedImage out;
-        // Vertical
-        if (pattern.getNeedsRotation()) {
-            double offset = 0;
-            out = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-
-            // no rotation (0 degrees)
-            if (pattern.getAlignment() == 0) {
-                transform.translate(offset, offset);
-                transform.rotate(0, image.getWidth() / 2.0, image.getHeight() / 2.0);
-
-                AffineTransformOp atop = new AffineTransformOp(transform, AffineTransformOp.TYPE_BILINEAR);
-                atop.filter(image, out);
-            }
-
-            // + 180 degrees rotation (180 degrees)
-            else {
-                transform.translate(offset, offset);
-                transform.rotate(Math.PI, image.getWidth() / 2.0, image.getHeight() / 2.0);
-
-                AffineTransformOp atop = new AffineTransformOp(transform, AffineTransformOp.TYPE_BILINEAR);
-                atop.filter(image, out);
-            }
-        }
-        // Horizontal
-        else {
-            double offset = (image.getHeight() - image.getWidth()) / 2.0;
-            out = new BufferedImage(image.getHeight(), image.getWidth(), image.getType());
-
-            // no rotation (90 degrees)
-            if (pattern.getAlignment() == 0) {
-                transform.rotate(Math.PI / 2, image.getWidth() / 2.0, image.getHeight() / 2.0);
-                transform.translate(-offset, -offset);
-
-                AffineTransformOp atop = new AffineTransformOp(transform, AffineTransformOp.TYPE_BILINEAR);
-                atop.filter(image, out);
-            }
-
-            // + 180 degrees rotation (270 degrees)
-            else {
-                transform.rotate(3 * Math.PI / 2, image.getWidth() / 2.0, image.getHeight() / 2.0);
-                transform.translate(offset, offset);
-
-                AffineTransformOp atop = new AffineTransformOp(transform, AffineTransformOp.TYPE_BILINEAR);
-                atop.filter(image, out);
-            }
-        }
-        return out;
+        return ImageRotator.rotate(image, pattern.getRotation(), pool);
     }
 }
@@ -0,0 +1,275 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Lossless clockwise rotation of images by multiples of 90 degrees.
+ *
+ * Pixels are moved, never interpolated, so the output is bit-exact and keeps the source's color model
+ * (a palette image stays a palette image). Int and byte interleaved rasters are remapped index by index,
+ * 1, 2 and 4 bit packed ones (low depth palette images) bit field by bit field; quarter turns walk
+ * the destination in square tiles, so the columns read from the source stay in cache. Rasters of those layouts
+ * can be borrowed from a BufferPool instead of being allocated for every image.
+ */
+public final class ImageRotator {
+    private static final int TILE = 64; // tile side in pixels - 64 source rows of a tile fit in L1/L2 cache
+
+    private ImageRotator() { }
+
+    /**
+     * Rotates the image clockwise.
+     * @param image BufferedImage to be rotated
+     * @param degrees 0, 90, 180 or 270
+     * @return rotated BufferedImage; for 0 degrees the same image, not a copy
+     */
+    public static BufferedImage rotate(BufferedImage image, int degrees) {
+        return rotate(image, degrees, BufferPool.NONE);
+    }
+
+    /**
+     * Rotates the image clockwise into a raster borrowed from the pool, if its layout allows it.
+     * @param image BufferedImage to be rotated
+     * @param degrees 0, 90, 180 or 270
+     * @param pool BufferPool the rotated image's raster is borrowed from
+     * @return rotated BufferedImage, to be released to the pool once it's encoded; for 0 degrees the same image
+     */
+    public static BufferedImage rotate(BufferedImage image, int degrees, BufferPool pool) {
+        if (degrees == 0) {
+            return image;
+        }
+        if (degrees != 90 && degrees != 180 && degrees != 270) {
+            throw new IllegalArgumentException("Only right angle rotations are supported, got " + degrees);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean quarterTurn = degrees != 180;
+        WritableRaster source = image.getRaster();
+        WritableRaster target = pooledRaster(source, quarterTurn ? height : width, quarterTurn ? width : height,
+                pool);
+        boolean pooled = target != null;
+        if (!pooled) {
+            target = source.createCompatibleWritableRaster(quarterTurn ? height : width, quarterTurn ? width : height);
+        }
+
+        if (!copyDirectly(source, target, degrees)) {
+            copyByElements(source, target, degrees);
+        }
+        return pooled
+                ? pool.image(image.getColorModel(), target, image.isAlphaPremultiplied())
+                : new BufferedImage(image.getColorModel(), target, image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Raster like the source's one, of the given size, over an array borrowed from the pool
+     * @return WritableRaster or null if the source's layout isn't int packed, byte interleaved or bit packed
+     */
+    private static WritableRaster pooledRaster(Raster source, int width, int height, BufferPool pool) {
+        if (pool == BufferPool.NONE || source.getDataBuffer().getNumBanks() != 1) {
+            return null;
+        }
+        SampleModel model = source.getSampleModel().createCompatibleSampleModel(width, height);
+        DataBuffer sourceBuffer = source.getDataBuffer();
+        if (sourceBuffer instanceof DataBufferInt && model instanceof SinglePixelPackedSampleModel) {
+            int size = ((SinglePixelPackedSampleModel) model).getScanlineStride() * (height - 1) + width;
+            return Raster.createWritableRaster(model, new DataBufferInt(pool.borrowInts(size), size), null);
+        }
+        if (sourceBuffer instanceof DataBufferByte && model instanceof ComponentSampleModel
+                && Arrays.stream(((ComponentSampleModel) model).getBankIndices()).allMatch(bank -> bank == 0)) {
+            ComponentSampleModel component = (ComponentSampleModel) model;
+            int size = component.getScanlineStride() * (height - 1) + component.getPixelStride() * (width - 1)
+                    + Arrays.stream(component.getBandOffsets()).max().orElse(0) + 1;
+            return Raster.createWritableRaster(model, new DataBufferByte(pool.borrowBytes(size), size), null);
+        }
+        if (sourceBuffer instanceof DataBufferByte && model instanceof MultiPixelPackedSampleModel) {
+            int size = ((MultiPixelPackedSampleModel) model).getScanlineStride() * height;
+            byte[] data = pool.borrowBytes(size);
+            Arrays.fill(data, 0, size, (byte) 0); // bit fields are ORed in
+            return Raster.createWritableRaster(model, new DataBufferByte(data, size), null);
+        }
+        return null;
+    }
+
+    /**
+     * Remaps pixels straight between the data arrays of int packed and byte interleaved rasters.
+     * @return false if the rasters' layout isn't one of those
+     */
+    private static boolean copyDirectly(Raster source, WritableRaster target, int degrees) {
+        if (source.getSampleModelTranslateX() != 0 || source.getSampleModelTranslateY() != 0
+                || source.getDataBuffer().getNumBanks() != 1) {
+            return false;
+        }
+        SampleModel sourceModel = source.getSampleModel();
+        SampleModel targetModel = target.getSampleModel();
+        DataBuffer sourceBuffer = source.getDataBuffer();
+        DataBuffer targetBuffer = target.getDataBuffer();
+
+        if (sourceBuffer instanceof DataBufferInt && sourceModel instanceof SinglePixelPackedSampleModel) {
+            int[] from = ((DataBufferInt) sourceBuffer).getData();
+            int[] to = ((DataBufferInt) targetBuffer).getData();
+            Mapping mapping = new Mapping(source.getWidth(), source.getHeight(), sourceBuffer.getOffset(),
+                    ((SinglePixelPackedSampleModel) sourceModel).getScanlineStride(), 1, degrees);
+            int toStride = ((SinglePixelPackedSampleModel) targetModel).getScanlineStride();
+            forEachTile(target, (row, firstColumn, endColumn) -> {
+                int to0 = targetBuffer.getOffset() + row * toStride + firstColumn;
+                int from0 = mapping.index(firstColumn, row);
+                for (int column = firstColumn; column < endColumn; column++) {
+                    to[to0++] = from[from0];
+                    from0 += mapping.stepX;
+                }
+            }, degrees);
+            return true;
+        }
+
+        if (sourceBuffer instanceof DataBufferByte && sourceModel instanceof ComponentSampleModel
+                && ((ComponentSampleModel) sourceModel).getPixelStride() >= sourceModel.getNumBands()
+                && Arrays.equals(((ComponentSampleModel) sourceModel).getBandOffsets(),
+                                 ((ComponentSampleModel) targetModel).getBandOffsets())) {
+            byte[] from = ((DataBufferByte) sourceBuffer).getData();
+            byte[] to = ((DataBufferByte) targetBuffer).getData();
+            int pixelStride = ((ComponentSampleModel) sourceModel).getPixelStride();
+            Mapping mapping = new Mapping(source.getWidth(), source.getHeight(), sourceBuffer.getOffset(),
+                    ((ComponentSampleModel) sourceModel).getScanlineStride(), pixelStride, degrees);
+            int toStride = ((ComponentSampleModel) targetModel).getScanlineStride();
+            forEachTile(target, (row, firstColumn, endColumn) -> {
+                int to0 = targetBuffer.getOffset() + row * toStride + firstColumn * pixelStride;
+                int from0 = mapping.index(firstColumn, row);
+                for (int column = firstColumn; column < endColumn; column++) {
+                    for (int sample = 0; sample < pixelStride; sample++) {
+                        to[to0++] = from[from0 + sample];
+                    }
+                    from0 += mapping.stepX;
+                }
+            }, degrees);
+            return true;
+        }
+
+        if (sourceBuffer instanceof DataBufferByte && sourceModel instanceof MultiPixelPackedSampleModel
+                && ((MultiPixelPackedSampleModel) sourceModel).getDataBitOffset() == 0
+                && ((MultiPixelPackedSampleModel) targetModel).getDataBitOffset() == 0) {
+            byte[] from = ((DataBufferByte) sourceBuffer).getData();
+            byte[] to = ((DataBufferByte) targetBuffer).getData(); // zeroed, so samples can be ORed in
+            int bits = ((MultiPixelPackedSampleModel) sourceModel).getPixelBitStride();
+            int mask = (1 << bits) - 1;
+            int fromStride = ((MultiPixelPackedSampleModel) sourceModel).getScanlineStride();
+            int toStride = ((MultiPixelPackedSampleModel) targetModel).getScanlineStride();
+            int width = source.getWidth();
+            int height = source.getHeight();
+            forEachTile(target, (row, firstColumn, endColumn) -> {
+                int toRow = targetBuffer.getOffset() + row * toStride;
+                for (int column = firstColumn; column < endColumn; column++) {
+                    int fromBit = sourceX(column, row, width, degrees) * bits;
+                    int fromIndex = sourceBuffer.getOffset() + sourceY(column, row, height, degrees) * fromStride
+                            + (fromBit >>> 3);
+                    int sample = from[fromIndex] >>> (8 - bits - (fromBit & 7)) & mask;
+                    int toBit = column * bits;
+                    to[toRow + (toBit >>> 3)] |= sample << (8 - bits - (toBit & 7));
+                }
+            }, degrees);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fallback for other layouts (e.g. 16 bit samples) - moves whole pixels through the raster API.
+     */
+    private static void copyByElements(Raster source, WritableRaster target, int degrees) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        Object pixel = null;
+        for (int row = 0; row < target.getHeight(); row++) {
+            for (int column = 0; column < target.getWidth(); column++) {
+                pixel = source.getDataElements(sourceX(column, row, width, degrees),
+                        sourceY(column, row, height, degrees), pixel);
+                target.setDataElements(column, row, pixel);
+            }
+        }
+    }
+
+    /**
+     * @return column of the source pixel moved to the given target pixel
+     */
+    private static int sourceX(int column, int row, int width, int degrees) {
+        return degrees == 90 ? row : degrees == 180 ? width - 1 - column : width - 1 - row;
+    }
+
+    /**
+     * @return row of the source pixel moved to the given target pixel
+     */
+    private static int sourceY(int column, int row, int height, int degrees) {
+        return degrees == 90 ? height - 1 - column : degrees == 180 ? height - 1 - row : column;
+    }
+
+    /**
+     * Visits the target row by row within square tiles for quarter turns, or whole rows for a half turn,
+     * which reads the source sequentially anyway.
+     */
+    private static void forEachTile(Raster target, RowSpan span, int degrees) {
+        int width = target.getWidth();
+        int height = target.getHeight();
+        int tile = degrees == 180 ? Math.max(width, height) : TILE;
+        for (int tileRow = 0; tileRow < height; tileRow += tile) {
+            int endRow = Math.min(tileRow + tile, height);
+            for (int tileColumn = 0; tileColumn < width; tileColumn += tile) {
+                int endColumn = Math.min(tileColumn + tile, width);
+                for (int row = tileRow; row < endRow; row++) {
+                    span.copy(row, tileColumn, endColumn);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies pixels of a single target row between two columns
+     */
+    private interface RowSpan {
+        void copy(int row, int firstColumn, int endColumn);
+    }
+
+    /**
+     * Source array index of a target pixel: base + column * stepX + row * stepY
+     */
+    private static class Mapping {
+        private final int base;
+        private final int stepX;
+        private final int stepY;
+
+        Mapping(int width, int height, int offset, int scanlineStride, int pixelStride, int degrees) {
+            int lastRow = offset + (height - 1) * scanlineStride;
+            int lastColumn = (width - 1) * pixelStride;
+            switch (degrees) {
+                case 90:    // target (x, y) = source (y, height - 1 - x)
+                    base = lastRow;
+                    stepX = -scanlineStride;
+                    stepY = pixelStride;
+                    break;
+                case 180:   // target (x, y) = source (width - 1 - x, height - 1 - y)
+                    base = lastRow + lastColumn;
+                    stepX = -pixelStride;
+                    stepY = -scanlineStride;
+                    break;
+                default:    // 270: target (x, y) = source (width - 1 - y, x)
+                    base = offset + lastColumn;
+                    stepX = scanlineStride;
+                    stepY = -pixelStride;
+                    break;
+            }
+        }
+
+        int index(int column, int row) {
+            return base + column * stepX + row * stepY;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.michalwesoly.pattern.finder.service;
+
+import java.util.Arrays;
+
+/**
+ * Definition of a marker looked for in images: bands of colors, each a run of pixels long, read left - right
+ * or up - down, and the rotation aligning the image when the marker is found vertically, first band up.
+ *
+ * Written as [name=]COLOR:RUN/COLOR:RUN/...[@ROTATION], colors in hex as RRGGBB (opaque) or AARRGGBB, e.g.
+ * stripe=FFFFFF:3/FF0000:3 for the white - red stripe, or flag=000000:2/FFCC00:4/000000:2@90.
+ */
+public final class Marker {
+    static final Marker STRIPE = parse("stripe=FFFFFF:3/FF0000:3");
+
+    private final String name;
+    private final int[] colors;     // packed ARGB color of every band
+    private final int[] runs;       // length of every band in pixels
+    private final int rotation;     // clockwise rotation for the marker found vertically, first band up
+
+    private Marker(String name, int[] colors, int[] runs, int rotation) {
+        this.name = name;
+        this.colors = colors;
+        this.runs = runs;
+        this.rotation = rotation;
+    }
+
+    /**
+     * Parses the marker definition.
+     * @param definition e.g. stripe=FFFFFF:3/FF0000:3 or flag=000000:2/FFCC00:4/000000:2@90
+     * @return Marker
+     * @throws IllegalArgumentException if the definition is malformed, has no band, or the rotation isn't
+     * 0, 90, 180 or 270
+     */
+    public static Marker parse(String definition) {
+        String spec = definition.trim();
+        String name = "marker";
+        int equals = spec.indexOf('=');
+        if (equals >= 0) {
+            name = spec.substring(0, equals).trim();
+            spec = spec.substring(equals + 1).trim();
+        }
+        int rotation = 0;
+        int at = spec.indexOf('@');
+        try {
+            if (at >= 0) {
+                rotation = Integer.parseInt(spec.substring(at + 1).trim());
+                spec = spec.substring(0, at).trim();
+            }
+            if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+                throw new IllegalArgumentException("Marker rotation has to be 0, 90, 180 or 270: " + definition);
+            }
+            String[] bands = spec.split("/");
+            int[] colors = new int[bands.length];
+            int[] runs = new int[bands.length];
+            for (int i = 0; i < bands.length; i++) {
+                String[] band = bands[i].trim().split(":");
+                if (band.length != 2 || band[0].length() != 6 && band[0].length() != 8) {
+                    throw new IllegalArgumentException("Marker band has to be COLOR:RUN: " + definition);
+                }
+                colors[i] = (int) Long.parseLong(band[0], 16) | (band[0].length() == 6 ? 0xFF000000 : 0);
+                runs[i] = Integer.parseInt(band[1]);
+                if (runs[i] <= 0) {
+                    throw new IllegalArgumentException("Marker runs have to be positive: " + definition);
+                }
+            }
+            return new Marker(name, colors, runs, rotation);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed marker: " + definition, e);
+        }
+    }
+
+    /**
+     * @return colors of the marker's pixels, first band first
+     */
+    int[] pixels() {
+        int[] pixels = new int[length()];
+        int position = 0;
+        for (int band = 0; band < colors.length; band++) {
+            Arrays.fill(pixels, position, position + runs[band], colors[band]);
+            position += runs[band];
+        }
+        return pixels;
+    }
+
+    /**
+     * @return number of pixels the marker spans
+     */
+    int length() {
+        return Arrays.stream(runs).sum();
+    }
+
+    /**
+     * @return packed ARGB color of every band
+     */
+    int[] getColors() {
+        return colors.clone();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return clockwise rotation in degrees aligning the image when the marker is found vertically, first band up
+     */
+    public int getRotation() {
+        return rotation;
+    }
+}
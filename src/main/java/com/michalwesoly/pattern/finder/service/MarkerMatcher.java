@@ -0,0 +1,66 @@
+package com.michalwesoly.pattern.finder.service;
+
+/**
+ * State of a single MarkerSet scan fed row by row: the automaton runs along the current row and, with one state
+ * per column, down every column at the same time - so rows and columns are matched in one pass over the pixels
+ * and only the current row has to be at hand.
+ */
+final class MarkerMatcher {
+    private final MarkerSet markers;
+    private final ScanResult result;
+    private final int[] columnStates;
+    private long scanned;
+
+    MarkerMatcher(MarkerSet markers, int width, ScanResult result) {
+        this.markers = markers;
+        this.result = result;
+        this.columnStates = new int[width];
+    }
+
+    /**
+     * Feeds the next row of the image.
+     * @param row packed ARGB pixels of the row
+     * @param y index of the row
+     * @return false if the policy is satisfied and the scan should stop
+     */
+    boolean scanRow(int[] row, int y) {
+        int state = 0;
+        for (int x = 0; x < columnStates.length; x++) {
+            scanned++;
+            int symbol = markers.symbol(row[x]);
+            state = markers.next(state, symbol);
+            if (markers.matches(state) != null && !report(markers.matches(state), x, y, false)) {
+                return false;
+            }
+            int column = markers.next(columnStates[x], symbol);
+            columnStates[x] = column;
+            if (markers.matches(column) != null && !report(markers.matches(column), x, y, true)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records markers ending at the pixel
+     */
+    private boolean report(int[] keys, int x, int y, boolean vertical) {
+        for (int key : keys) {
+            int start = (vertical ? y : x) - markers.length(key) + 1;
+            Pattern pattern = new Pattern(markers.isReversed(key) ? 1 : 0, vertical, vertical ? x : start,
+                    vertical ? start : y, markers.marker(key));
+            if (!result.add(pattern)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    ScanResult completed() {
+        return result.completed(scanned);
+    }
+
+    ScanResult stopped() {
+        return result.stopped(scanned);
+    }
+}
@@ -0,0 +1,257 @@
+package com.michalwesoly.pattern.finder.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Markers compiled into a single Aho-Corasick automaton, matching all of them - read both ways - in one pass.
+ *
+ * Pixels are first mapped to symbols by a ColorClassifier: one per color used by any marker (within a tolerance),
+ * 0 for every other color. Every marker is a string of symbols, added together with its reversal (the marker read
+ * right - left or down - up), and failure links are folded into a full transition table, so a pixel costs a color
+ * lookup and a table lookup however many markers there are. The automaton is immutable and shared by concurrent scans.
+ */
+public final class MarkerSet {
+    public static final MarkerSet STRIPE = compile(List.of(Marker.STRIPE), 0);
+
+    private final List<Marker> markers;
+    private final ColorClassifier classifier; // pixel -> symbol
+    private final int[] colors;         // color of every symbol but 0
+    private final int symbols;          // colors + 1 for every other color
+    private final int[] next;           // transition table: state * symbols + symbol -> state
+    private final int[][] matches;      // keys ending in every state, null if none
+    private final int[] keyMarker;      // marker of every key
+    private final boolean[] keyReversed;
+    private final int[] keyLength;
+
+    private MarkerSet(List<Marker> markers, int[] colors, int tolerance, List<int[]> keys, List<Integer> keyMarkers,
+                      List<Boolean> keyReversals) {
+        this.markers = markers;
+        this.colors = colors;
+        this.symbols = colors.length + 1;
+        this.classifier = new ColorClassifier(colors, tolerance);
+
+        keyMarker = keyMarkers.stream().mapToInt(Integer::intValue).toArray();
+        keyReversed = new boolean[keys.size()];
+        keyLength = new int[keys.size()];
+        for (int key = 0; key < keys.size(); key++) {
+            keyReversed[key] = keyReversals.get(key);
+            keyLength[key] = keys.get(key).length;
+        }
+
+        // Trie of all keys
+        List<int[]> trie = new ArrayList<>();
+        List<int[]> outputs = new ArrayList<>();
+        trie.add(newState());
+        outputs.add(new int[0]);
+        for (int key = 0; key < keys.size(); key++) {
+            int state = 0;
+            for (int pixel : keys.get(key)) {
+                int symbol = indexOf(colors, pixel) + 1;
+                if (trie.get(state)[symbol] < 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(newState());
+                    outputs.add(new int[0]);
+                }
+                state = trie.get(state)[symbol];
+            }
+            outputs.set(state, append(outputs.get(state), key));
+        }
+
+        // Breadth first: failure links folded into transitions, outputs of failure states inherited
+        int states = trie.size();
+        next = new int[states * symbols];
+        int[] failure = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < symbols; symbol++) {
+            int child = trie.get(0)[symbol];
+            next[symbol] = Math.max(child, 0);
+            if (child > 0) {
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                int child = trie.get(state)[symbol];
+                if (child < 0) {
+                    next[state * symbols + symbol] = next[failure[state] * symbols + symbol];
+                    continue;
+                }
+                failure[child] = next[failure[state] * symbols + symbol];
+                for (int key : outputs.get(failure[child])) {
+                    outputs.set(child, append(outputs.get(child), key));
+                }
+                next[state * symbols + symbol] = child;
+                queue.add(child);
+            }
+        }
+        matches = new int[states][];
+        for (int state = 0; state < states; state++) {
+            matches[state] = outputs.get(state).length == 0 ? null : outputs.get(state);
+        }
+    }
+
+    /**
+     * Compiles the markers into the automaton.
+     * @param markers Markers to be matched, at least one
+     * @param tolerance largest difference allowed in every channel of a pixel matching a marker color, 0 - 255
+     * @return MarkerSet matching all of them
+     */
+    public static MarkerSet compile(List<Marker> markers, int tolerance) {
+        if (markers.isEmpty()) {
+            throw new IllegalArgumentException("At least one marker is needed");
+        }
+        int[] colors = markers.stream().flatMapToInt(marker -> Arrays.stream(marker.getColors()))
+                .distinct().toArray();
+        List<int[]> keys = new ArrayList<>();
+        List<Integer> keyMarkers = new ArrayList<>();
+        List<Boolean> keyReversals = new ArrayList<>();
+        for (int marker = 0; marker < markers.size(); marker++) {
+            int[] pixels = markers.get(marker).pixels();
+            int[] reversed = reverse(pixels);
+            keys.add(pixels);
+            keyMarkers.add(marker);
+            keyReversals.add(false);
+            if (!Arrays.equals(pixels, reversed)) { // a symmetric marker can't tell its direction anyway
+                keys.add(reversed);
+                keyMarkers.add(marker);
+                keyReversals.add(true);
+            }
+        }
+        return new MarkerSet(List.copyOf(markers), colors, tolerance, keys, keyMarkers, keyReversals);
+    }
+
+    /**
+     * @param definitions marker definitions, see Marker.parse(); colors have to match exactly
+     * @return MarkerSet matching all of them
+     */
+    public static MarkerSet of(String... definitions) {
+        return of(0, definitions);
+    }
+
+    /**
+     * @param tolerance largest difference allowed in every channel of a pixel matching a marker color, 0 - 255
+     * @param definitions marker definitions, see Marker.parse()
+     * @return MarkerSet matching all of them
+     */
+    public static MarkerSet of(int tolerance, String... definitions) {
+        List<Marker> markers = new ArrayList<>();
+        for (String definition : definitions) {
+            markers.add(Marker.parse(definition));
+        }
+        return compile(markers, tolerance);
+    }
+
+    /**
+     * @return true if the set is just the white - red stripe, which the specialized scanners look for - with
+     * the tolerance of this set
+     */
+    public boolean isStripe() {
+        return markers.size() == 1 && markers.get(0).getRotation() == 0
+                && Arrays.equals(markers.get(0).pixels(), Marker.STRIPE.pixels());
+    }
+
+    /**
+     * Tells whether any marker can be in an image with the given colors - e.g. palette images rule most out.
+     * @param mayContainAny tells whether any pixel of the image may satisfy the given condition
+     * @return false if every marker has a color no pixel of the image can match
+     */
+    public boolean mayMatch(Predicate<IntPredicate> mayContainAny) {
+        return markers.stream().anyMatch(marker -> Arrays.stream(marker.getColors()).allMatch(color -> {
+            int symbol = indexOf(colors, color) + 1;
+            return mayContainAny.test(pixel -> classifier.classify(pixel) == symbol);
+        }));
+    }
+
+    /**
+     * @return true if some marker is made only of shades of gray, within the tolerance, so grayscale images have
+     * to be scanned too
+     */
+    public boolean mayMatchGray() {
+        return markers.stream().anyMatch(marker -> Arrays.stream(marker.getColors())
+                .allMatch(color -> classifier.matchesGray(indexOf(colors, color))));
+    }
+
+    /**
+     * @return largest difference allowed in every channel of a pixel matching a marker color
+     */
+    public int getTolerance() {
+        return classifier.getTolerance();
+    }
+
+    public List<Marker> getMarkers() {
+        return markers;
+    }
+
+    /**
+     * @return symbol of the color, 0 for colors no marker uses
+     */
+    int symbol(int argb) {
+        return classifier.classify(argb);
+    }
+
+    /**
+     * @return ColorClassifier mapping pixels to symbols
+     */
+    ColorClassifier getClassifier() {
+        return classifier;
+    }
+
+    int next(int state, int symbol) {
+        return next[state * symbols + symbol];
+    }
+
+    /**
+     * @return keys ending in the state, null if none does
+     */
+    int[] matches(int state) {
+        return matches[state];
+    }
+
+    Marker marker(int key) {
+        return markers.get(keyMarker[key]);
+    }
+
+    boolean isReversed(int key) {
+        return keyReversed[key];
+    }
+
+    int length(int key) {
+        return keyLength[key];
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int[] newState() {
+        int[] transitions = new int[symbols];
+        Arrays.fill(transitions, -1);
+        return transitions;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
+    }
+
+    private static int[] reverse(int[] array) {
+        int[] reversed = new int[array.length];
+        for (int i = 0; i < array.length; i++) {
+            reversed[i] = array[array.length - 1 - i];
+        }
+        return reversed;
+    }
+}
@@ -0,0 +1,92 @@
+package com.michalwesoly.pattern.finder.service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scanning engine splitting large images into bands of rows scanned in parallel on a ForkJoinPool.
+ *
+ * Every band is probed by SkipScanner. A stripe belongs to the band holding its red probe pixel, and checking
+ * the probe's neighbours reads up to 5 pixels into the bordering bands, so stripes crossing a band border -
+ * vertical ones in particular - are found exactly once. Early terminating policies are applied to matches of
+ * all bands together; remaining bands stop as soon as the outcome is known.
+ *
+ * Images smaller than the threshold are scanned on the calling thread, where forking costs more than it saves.
+ */
+public class ParallelScanner implements PatternScanner {
+    private static final int MIN_BAND_ROWS = 8;         // bands thinner than that aren't worth a task
+    private static final int BANDS_PER_THREAD = 4;      // lets faster threads steal the work of slower ones
+
+    private final SkipScanner scanner;
+    private final ForkJoinPool pool;
+    private final long thresholdPixels;
+
+    /**
+     * @param pool ForkJoinPool bands are scanned on - its parallelism bounds the threads a single scan can use
+     * @param thresholdPixels images with fewer pixels are scanned sequentially
+     */
+    public ParallelScanner(ForkJoinPool pool, long thresholdPixels) {
+        this(pool, thresholdPixels, 0);
+    }
+
+    /**
+     * @param pool ForkJoinPool bands are scanned on - its parallelism bounds the threads a single scan can use
+     * @param thresholdPixels images with fewer pixels are scanned sequentially
+     * @param tolerance largest difference allowed in every channel of a white or red pixel
+     */
+    public ParallelScanner(ForkJoinPool pool, long thresholdPixels, int tolerance) {
+        this.scanner = new SkipScanner(tolerance);
+        this.pool = pool;
+        this.thresholdPixels = thresholdPixels;
+    }
+
+    @Override
+    public ScanResult findPatterns(PixelRaster raster, ScanPolicy policy) {
+        int height = raster.getHeight();
+        if ((long) raster.getWidth() * height < thresholdPixels || pool.getParallelism() < 2) {
+            return scanner.findPatterns(raster, policy);
+        }
+        int bandRows = Math.max(MIN_BAND_ROWS, height / (pool.getParallelism() * BANDS_PER_THREAD));
+        return pool.invoke(new BandTask(raster, 0, height, bandRows, policy, new AtomicInteger()));
+    }
+
+    @Override
+    public boolean mayMatch(PixelRaster raster) {
+        return scanner.mayMatch(raster);
+    }
+
+    /**
+     * Scans a range of rows - directly if it's a single band, otherwise splitting it in halves.
+     */
+    private class BandTask extends RecursiveTask<ScanResult> {
+        private final PixelRaster raster;
+        private final int firstRow;
+        private final int endRow;
+        private final int bandRows;
+        private final ScanPolicy policy;
+        private final AtomicInteger sharedMatches;
+
+        BandTask(PixelRaster raster, int firstRow, int endRow, int bandRows, ScanPolicy policy,
+                 AtomicInteger sharedMatches) {
+            this.raster = raster;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+            this.bandRows = bandRows;
+            this.policy = policy;
+            this.sharedMatches = sharedMatches;
+        }
+
+        @Override
+        protected ScanResult compute() {
+            if (endRow - firstRow <= bandRows) {
+                return scanner.scanRows(raster, firstRow, endRow, new ScanResult(policy, sharedMatches));
+            }
+            int middle = (firstRow + endRow) >>> 1;
+            BandTask lower = new BandTask(raster, middle, endRow, bandRows, policy, sharedMatches);
+            lower.fork();
+            ScanResult upper = new BandTask(raster, firstRow, middle, bandRows, policy, sharedMatches).compute();
+            return ScanResult.combine(upper, lower.join());
+        }
+    }
+}
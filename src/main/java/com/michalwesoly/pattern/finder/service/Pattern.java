@@ -0,0 +1,86 @@
+package com.michalwesoly.pattern.finder.service;
+
+/**
+ * Pattern structure for providing correct rotation of the image
+ */
+class Pattern {
+    private final int alignment; // vertical or horizontal
+    private final boolean needsRotation; // white starts or red starts the pattern
+    private final int x; // column of the pattern's first pixel (leftmost or topmost)
+    private final int y; // row of the pattern's first pixel (leftmost or topmost)
+    private final Marker marker; // definition the pattern matches
+
+    Pattern(int alignment, boolean needsRotation, int x, int y) {
+        this(alignment, needsRotation, x, y, Marker.STRIPE);
+    }
+
+    Pattern(int alignment, boolean needsRotation, int x, int y, Marker marker) {
+        this.alignment = alignment;
+        this.needsRotation = needsRotation;
+        this.x = x;
+        this.y = y;
+        this.marker = marker;
+    }
+
+    /**
+     * Value informing whether the pattern is aligned vertically or horizontally.
+     *
+     * If the alignment is 0 (vertical), image needs 0 or 180 degrees rotation.
+     * If it's 1 (horizontal), image needs 90 or 270 degrees rotation
+     * @return integer value representing pattern alignment - 0 for vertical, 1 for horizontal
+     */
+    protected int getAlignment() {
+        return alignment;
+    }
+
+    /**
+     * Value informing whether the patterns starts with white or red color - so if it needs to be rotated
+     * by additional 180 degrees.
+     *
+     * If it starts with white, it doesn't need additional rotation (false)
+     * If it starts with red, it starts with additional +180 degree rotation (true)
+     * @return returns a boolean representing whether the image needs additional rotation.
+     */
+    protected boolean getNeedsRotation() {
+        return needsRotation;
+    }
+
+    /**
+     * Clockwise rotation aligning the pattern vertically, white (or the marker's first band) up, plus the
+     * marker's own rotation:
+     * - Vertical - 0 if white starts the pattern, 180 if red does
+     * - Horizontal - 90 if white starts the pattern, 270 if red does
+     * @return rotation in degrees
+     */
+    protected int getRotation() {
+        int rotation;
+        if (needsRotation) {
+            rotation = alignment == 0 ? 0 : 180;
+        }
+        else {
+            rotation = alignment == 0 ? 90 : 270;
+        }
+        return (rotation + marker.getRotation()) % 360;
+    }
+
+    /**
+     * @return Marker the pattern matches
+     */
+    protected Marker getMarker() {
+        return marker;
+    }
+
+    /**
+     * @return column of the pattern's leftmost (or topmost for vertical patterns) pixel
+     */
+    protected int getX() {
+        return x;
+    }
+
+    /**
+     * @return row of the pattern's leftmost (or topmost for vertical patterns) pixel
+     */
+    protected int getY() {
+        return y;
+    }
+}
@@ -0,0 +1,27 @@
+package com.michalwesoly.pattern.finder.service;
+
+/**
+ * Engine looking for white-red stripe patterns (or configured markers) in image pixels.
+ *
+ * Every implementation has to find the same set of patterns for the same image when scanning it as a whole;
+ * they can differ in the order the patterns are found in, so FIRST_MATCH may pick a different one.
+ */
+public interface PatternScanner {
+    /**
+     * Scans the raster for 3 pixels white and 3 pixels red stripe pattern left - right and up - down.
+     * @param raster pixels of the image
+     * @param policy decides whether the scan may stop before the end of the image
+     * @return ScanResult with patterns found in the image
+     */
+    ScanResult findPatterns(PixelRaster raster, ScanPolicy policy);
+
+    /**
+     * Tells without reading any pixel whether the image may contain a pattern - e.g. a palette without pure red
+     * can't contain the stripe.
+     * @param raster pixels of the image
+     * @return false if no pattern can be found, so the image doesn't have to be scanned
+     */
+    default boolean mayMatch(PixelRaster raster) {
+        return raster.mayContain(RasterScanner.WHITE) && raster.mayContain(RasterScanner.RED);
+    }
+}
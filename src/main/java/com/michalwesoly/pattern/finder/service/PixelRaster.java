@@ -0,0 +1,208 @@
+package com.michalwesoly.pattern.finder.service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.function.IntPredicate;
+
+/**
+ * Read-only view of image pixels as packed ARGB ints - the same values BufferedImage.getRGB() returns.
+ *
+ * Pixels are read straight from the backing int[] or byte[] of the image's raster, so no objects are created
+ * per pixel. Gray and palette pixels - 8 bit or packed 1, 2 and 4 bit ones - are resolved through a table
+ * of ARGB values built once per image. Layouts without a fast path (e.g. 16 bit samples, premultiplied alpha)
+ * are converted once with a single bulk getRGB() call.
+ */
+public final class PixelRaster {
+    private static final int PACKED_RGB = 0;        // TYPE_INT_RGB - alpha is implied
+    private static final int PACKED_ARGB = 1;       // TYPE_INT_ARGB or bulk converted pixels
+    private static final int BYTE_BGR = 2;          // TYPE_3BYTE_BGR
+    private static final int BYTE_ABGR = 3;         // TYPE_4BYTE_ABGR
+    private static final int BYTE_LOOKUP = 4;       // single 8 bit band - gray or indexed
+    private static final int BIT_LOOKUP = 5;        // 1, 2 or 4 bit palette indices packed into bytes
+
+    private static final int OPAQUE = 0xFF000000;
+
+    private final int width;
+    private final int height;
+    private final int layout;
+    private final int[] ints;           // int backed pixels, null for byte layouts
+    private final byte[] bytes;         // byte backed pixels, null for int layouts
+    private final int[] lookup;         // ARGB value of each sample for lookup layouts
+    private final int offset;           // index of the first pixel in the data array
+    private final int scanlineStride;   // array elements between rows
+    private final int pixelStride;      // array elements between pixels of a row, bits per pixel for BIT_LOOKUP
+
+    private PixelRaster(int width, int height, int layout, int[] ints, byte[] bytes, int[] lookup,
+                        int offset, int scanlineStride, int pixelStride) {
+        this.width = width;
+        this.height = height;
+        this.layout = layout;
+        this.ints = ints;
+        this.bytes = bytes;
+        this.lookup = lookup;
+        this.offset = offset;
+        this.scanlineStride = scanlineStride;
+        this.pixelStride = pixelStride;
+    }
+
+    /**
+     * Creates a view over the raster of provided image, picking the fastest access path for its layout.
+     * @param image BufferedImage to be read
+     * @return PixelRaster backed by the image's data buffer (or by a single ARGB copy for uncommon layouts)
+     */
+    public static PixelRaster of(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Raster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+
+        // Child rasters and banked buffers are rare enough to take the slow path
+        if (raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && dataBuffer.getNumBanks() == 1) {
+            int type = image.getType();
+
+            if (dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel
+                    && (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)) {
+                int[] data = ((DataBufferInt) dataBuffer).getData();
+                int stride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+                return new PixelRaster(width, height, type == BufferedImage.TYPE_INT_RGB ? PACKED_RGB : PACKED_ARGB,
+                        data, null, null, dataBuffer.getOffset(), stride, 1);
+            }
+
+            if (dataBuffer instanceof DataBufferByte && sampleModel instanceof PixelInterleavedSampleModel) {
+                PixelInterleavedSampleModel interleaved = (PixelInterleavedSampleModel) sampleModel;
+                byte[] data = ((DataBufferByte) dataBuffer).getData();
+                int stride = interleaved.getScanlineStride();
+                int step = interleaved.getPixelStride();
+
+                if (type == BufferedImage.TYPE_3BYTE_BGR) {
+                    return new PixelRaster(width, height, BYTE_BGR, null, data, null, dataBuffer.getOffset(),
+                            stride, step);
+                }
+                if (type == BufferedImage.TYPE_4BYTE_ABGR) {
+                    return new PixelRaster(width, height, BYTE_ABGR, null, data, null, dataBuffer.getOffset(),
+                            stride, step);
+                }
+                if (interleaved.getNumBands() == 1 && interleaved.getSampleSize(0) == 8) {
+                    int bandOffset = dataBuffer.getOffset() + interleaved.getBandOffsets()[0];
+                    return new PixelRaster(width, height, BYTE_LOOKUP, null, data,
+                            sampleLookup(image.getColorModel(), 256), bandOffset, stride, step);
+                }
+            }
+
+            if (dataBuffer instanceof DataBufferByte && sampleModel instanceof MultiPixelPackedSampleModel
+                    && image.getColorModel() instanceof IndexColorModel) {
+                MultiPixelPackedSampleModel packed = (MultiPixelPackedSampleModel) sampleModel;
+                int bits = packed.getPixelBitStride();
+                if (packed.getDataBitOffset() == 0 && 8 % bits == 0) {
+                    return new PixelRaster(width, height, BIT_LOOKUP, null, ((DataBufferByte) dataBuffer).getData(),
+                            sampleLookup(image.getColorModel(), 1 << bits), dataBuffer.getOffset(),
+                            packed.getScanlineStride(), bits);
+                }
+            }
+        }
+
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        return new PixelRaster(width, height, PACKED_ARGB, argb, null, null, 0, width, 1);
+    }
+
+    /**
+     * Builds a table of ARGB values for every possible sample, so gray and indexed pixels are resolved
+     * with an array lookup instead of a ColorModel call.
+     * @param colorModel ColorModel of a single band image
+     * @param size number of possible sample values
+     * @return table of packed ARGB values
+     */
+    private static int[] sampleLookup(ColorModel colorModel, int size) {
+        int[] table = new int[size];
+        byte[] sample = new byte[1];
+        for (int value = 0; value < table.length; value++) {
+            sample[0] = (byte) value;
+            table[value] = colorModel.getRGB(sample);
+        }
+        return table;
+    }
+
+    /**
+     * Tells whether the color can appear in the image at all. Only gray and palette images can rule a color out
+     * - by checking all their possible values - without reading a single pixel.
+     * @param argb packed ARGB color
+     * @return false if no pixel of the image can have that color
+     */
+    public boolean mayContain(int argb) {
+        return mayContainAny(value -> value == argb);
+    }
+
+    /**
+     * Tells whether any pixel may satisfy the condition, e.g. be close enough to a marker color.
+     * @param condition test of a packed ARGB color
+     * @return false if no possible value of a gray or palette image satisfies it; always true for other images
+     */
+    public boolean mayContainAny(IntPredicate condition) {
+        if (lookup == null) {
+            return true;
+        }
+        for (int value : lookup) {
+            if (condition.test(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return width of the image in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the image in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Packed ARGB value of the pixel, equal to BufferedImage.getRGB(x, y) of the source image.
+     * @param x column of the pixel
+     * @param y row of the pixel
+     * @return pixel's ARGB value
+     */
+    public int getRGB(int x, int y) {
+        int index = offset + y * scanlineStride + x * pixelStride;
+        switch (layout) {
+            case PACKED_RGB:
+                return ints[index] | OPAQUE;
+            case PACKED_ARGB:
+                return ints[index];
+            case BYTE_BGR:
+                return OPAQUE
+                        | (bytes[index + 2] & 0xFF) << 16
+                        | (bytes[index + 1] & 0xFF) << 8
+                        | (bytes[index] & 0xFF);
+            case BYTE_ABGR:
+                return (bytes[index] & 0xFF) << 24
+                        | (bytes[index + 3] & 0xFF) << 16
+                        | (bytes[index + 2] & 0xFF) << 8
+                        | (bytes[index + 1] & 0xFF);
+            case BYTE_LOOKUP:
+                return lookup[bytes[index] & 0xFF];
+            default: // BIT_LOOKUP - index above is meaningless, pixels are addressed by bits
+                int bit = x * pixelStride;
+                int sample = bytes[offset + y * scanlineStride + (bit >>> 3)] >>> (8 - pixelStride - (bit & 7));
+                return lookup[sample & (lookup.length - 1)];
+        }
+    }
+}
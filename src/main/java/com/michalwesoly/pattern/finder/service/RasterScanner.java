@@ -0,0 +1,82 @@
+package com.michalwesoly.pattern.finder.service;
+
+/**
+ * Scanning engine looking for the 3 pixels white - 3 pixels red stripe pattern.
+ *
+ * Works directly on packed ARGB values provided by PixelRaster, so the only objects created during a scan
+ * are the patterns found. Visits every pixel in two passes - it's the reference the faster scanners are checked
+ * against.
+ */
+class RasterScanner implements PatternScanner {
+    static final int WHITE = 0xFFFFFFFF;    // new Color(255, 255, 255).getRGB()
+    static final int RED = 0xFFFF0000;      // new Color(255, 0, 0).getRGB()
+
+    static final int RUN = 3;                   // length of a single color run
+    static final int PATTERN_LENGTH = 2 * RUN;  // white run + red run
+
+    /**
+     * Scans the raster for 3 pixels white and 3 pixels red stripe pattern left - right and up - down.
+     * @param raster pixels of the image
+     * @param policy decides whether the scan may stop before the end of the image
+     * @return ScanResult with patterns found in the image
+     */
+    @Override
+    public ScanResult findPatterns(PixelRaster raster, ScanPolicy policy) {
+        ScanResult result = new ScanResult(policy);
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        long scanned = 0;
+
+        // Search array left - right
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column + PATTERN_LENGTH <= width; column++) {
+                scanned++;
+                int color = raster.getRGB(column, row);
+                if (color == WHITE && isStripe(raster, column, row, 1, 0, WHITE, RED)) {
+                    if (!result.add(new Pattern(0, false, column, row))) {
+                        return result.stopped(scanned);
+                    }
+                }
+                else if (color == RED && isStripe(raster, column, row, 1, 0, RED, WHITE)) {
+                    if (!result.add(new Pattern(1, false, column, row))) {
+                        return result.stopped(scanned);
+                    }
+                }
+            }
+        }
+
+        // Search the array up - down
+        for (int row = 0; row + PATTERN_LENGTH <= height; row++) {
+            for (int column = 0; column < width; column++) {
+                scanned++;
+                int color = raster.getRGB(column, row);
+                if (color == WHITE && isStripe(raster, column, row, 0, 1, WHITE, RED)) {
+                    if (!result.add(new Pattern(0, true, column, row))) {
+                        return result.stopped(scanned);
+                    }
+                }
+                else if (color == RED && isStripe(raster, column, row, 0, 1, RED, WHITE)) {
+                    if (!result.add(new Pattern(1, true, column, row))) {
+                        return result.stopped(scanned);
+                    }
+                }
+            }
+        }
+        return result.completed(scanned);
+    }
+
+    /**
+     * Checks whether the 6 pixels starting at (x, y) and going in (dx, dy) direction form a stripe:
+     * 3 pixels of the first color followed by 3 pixels of the second one.
+     * @return true if the pixels form the stripe
+     */
+    static boolean isStripe(PixelRaster raster, int x, int y, int dx, int dy, int first, int second) {
+        for (int i = 0; i < PATTERN_LENGTH; i++) {
+            int expected = i < RUN ? first : second;
+            if (raster.getRGB(x + i * dx, y + i * dy) != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
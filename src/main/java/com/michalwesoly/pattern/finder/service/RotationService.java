@@ -0,0 +1,234 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
+import com.michalwesoly.pattern.finder.api.exceptions.NoPatternException;
+import com.michalwesoly.pattern.finder.api.exceptions.RejectedImageException;
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import com.michalwesoly.pattern.finder.metrics.Phase;
+import com.michalwesoly.pattern.finder.metrics.PipelineMetrics;
+import com.michalwesoly.pattern.finder.png.PngOrientation;
+import com.michalwesoly.pattern.finder.png.PngScanlineReader;
+import com.michalwesoly.pattern.finder.spool.FileChannelImageInputStream;
+import com.michalwesoly.pattern.finder.spool.SpooledUpload;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Service taking an uploaded image from bytes to the rotated BufferedImage.
+ *
+ * Every upload is first checked by its header: files that aren't images of an accepted format or are too large
+ * are rejected, grayscale PNG files have no pattern, and the header tells whether the file can be scanned while
+ * decoding. When streaming is enabled, PNG files are scanned while being decoded row by row, so uploads without
+ * exactly one pattern are rejected without ever holding the whole image in memory. The image is decoded as
+ * a whole only when it has to be rotated, when its PNG variant can't be decoded row by row, or when it's
+ * another format (e.g. JPEG) ImageIO decodes. Uploads spooled to disk are decoded straight from their file.
+ * Rotated images are written into rasters borrowed from the BufferPool; callers release them once they're
+ * encoded. For clients respecting orientation metadata, PNG files can instead be copied as they are with the
+ * rotation in an eXIf chunk - nothing is rotated or encoded.
+ */
+@Service
+public class RotationService {
+    private final StreamingScanner streamingScanner;
+    private final MarkerSet markers;        // what the scanners look for
+    private final PatternScanner scanner;   // engine for images decoded as a whole
+    private final ImagePrefilter prefilter; // header check before anything is decoded
+    private final ScanPolicy policy;        // when the scan may stop early
+    private final boolean streaming;        // scan PNG files while decoding them
+    private final PipelineMetrics metrics;  // time of every phase
+    private final BufferPool bufferPool;    // rasters of rotated images
+
+    public RotationService(PatternScanner scanner, MarkerSet markers, ImagePrefilter prefilter,
+                           @Value("${pattern.finder.scan.policy:STOP_ON_AMBIGUITY}") ScanPolicy policy,
+                           @Value("${pattern.finder.scan.streaming:true}") boolean streaming,
+                           PipelineMetrics metrics, BufferPool bufferPool) {
+        this.scanner = scanner;
+        this.markers = markers;
+        this.streamingScanner = new StreamingScanner(markers);
+        this.prefilter = prefilter;
+        this.policy = policy;
+        this.streaming = streaming;
+        this.metrics = metrics;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Reads and checks the upload's header - nothing is decoded.
+     * @param upload source of the image bytes
+     * @return ImageHeader to be handed to rotate() or detect() of the same upload
+     * @throws IOException if the upload can't be read
+     * @throws RejectedImageException if the upload isn't an image of an accepted format or is too large
+     */
+    public ImageHeader inspect(InputStreamSource upload) throws IOException, RejectedImageException {
+        long start = System.nanoTime();
+        ImageHeader header = prefilter.inspect(upload);
+        metrics.record(Phase.PREFILTER, start);
+        metrics.recordImage(header.getPixels());
+        return header;
+    }
+
+    /**
+     * Finds the pattern in the uploaded image and rotates the image accordingly.
+     * @param upload source of the image bytes; it's read twice if the image is scanned while decoding
+     * @return rotated BufferedImage, to be released to the BufferPool once it's encoded
+     * @throws IOException if the upload can't be read or decoded
+     * @throws RejectedImageException if the upload isn't an image of an accepted format or is too large
+     * @throws AmbiguousImageException if there's more than 1 pattern in the image
+     * @throws NoPatternException if there's no pattern in the image
+     */
+    public BufferedImage rotate(InputStreamSource upload)
+            throws IOException, RejectedImageException, NoPatternException, AmbiguousImageException {
+        return rotate(upload, inspect(upload));
+    }
+
+    /**
+     * Finds the pattern in the uploaded image and rotates the image accordingly.
+     * @param upload source of the image bytes; it's read twice if the image is scanned while decoding
+     * @param header ImageHeader of the upload, see inspect()
+     * @return rotated BufferedImage, to be released to the BufferPool once it's encoded
+     * @throws IOException if the upload can't be read or decoded
+     * @throws AmbiguousImageException if there's more than 1 pattern in the image
+     * @throws NoPatternException if there's no pattern in the image
+     */
+    public BufferedImage rotate(InputStreamSource upload, ImageHeader header)
+            throws IOException, NoPatternException, AmbiguousImageException {
+        Detection detection = null;
+        if (scanWhileDecoding(header)) {
+            ScanResult scan = streamScan(upload);
+            if (scan != null) {
+                detection = Detection.of(scan); // throws before decoding anything if the outcome is already known
+            }
+        }
+        BufferedImage image = decode(upload);
+        if (detection == null) {
+            detection = scan(image);
+        }
+        long start = System.nanoTime();
+        BufferedImage rotated = ImageRotator.rotate(image, detection.getRotation(), bufferPool);
+        metrics.record(Phase.ROTATE, start);
+        return rotated;
+    }
+
+    /**
+     * Finds the pattern in the uploaded image without rotating it or encoding anything.
+     * @param upload source of the image bytes; it's read twice if the PNG variant can't be scanned while decoding
+     * @return Detection with the rotation the image needs and the pattern's position
+     * @throws IOException if the upload can't be read or decoded
+     * @throws RejectedImageException if the upload isn't an image of an accepted format or is too large
+     * @throws AmbiguousImageException if there's more than 1 pattern in the image
+     * @throws NoPatternException if there's no pattern in the image
+     */
+    public Detection detect(InputStreamSource upload)
+            throws IOException, RejectedImageException, NoPatternException, AmbiguousImageException {
+        return detect(upload, inspect(upload));
+    }
+
+    /**
+     * Finds the pattern in the uploaded image without rotating it or encoding anything.
+     * @param upload source of the image bytes; it's read twice if the PNG variant can't be scanned while decoding
+     * @param header ImageHeader of the upload, see inspect()
+     * @return Detection with the rotation the image needs and the pattern's position
+     * @throws IOException if the upload can't be read or decoded
+     * @throws AmbiguousImageException if there's more than 1 pattern in the image
+     * @throws NoPatternException if there's no pattern in the image
+     */
+    public Detection detect(InputStreamSource upload, ImageHeader header)
+            throws IOException, NoPatternException, AmbiguousImageException {
+        if (scanWhileDecoding(header)) {
+            ScanResult scan = streamScan(upload);
+            if (scan != null) {
+                return Detection.of(scan); // the image is never held in memory as a whole
+            }
+        }
+        return scan(decode(upload));
+    }
+
+    /**
+     * Copies the uploaded PNG file with an eXIf chunk telling viewers to rotate it - the pixels are neither
+     * decoded nor re-encoded. The stream isn't closed.
+     * @param upload source of the PNG file
+     * @param detection Detection of the same upload, see detect()
+     * @param out stream the file is written to
+     * @throws IOException if the upload isn't a PNG file, can't be read, or the stream can't be written
+     */
+    public void writeOriented(InputStreamSource upload, Detection detection, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        try (InputStream in = upload.getInputStream()) {
+            PngOrientation.write(in, out, detection.getRotation());
+        }
+        finally {
+            metrics.record(Phase.ORIENT, start);
+        }
+    }
+
+    /**
+     * Picks the path from the upload's header
+     * @return true if the file should be scanned while decoding, false if it has to be decoded by ImageIO first
+     * @throws NoPatternException if the image is grayscale and every marker has a color, e.g. the red stripe
+     */
+    private boolean scanWhileDecoding(ImageHeader header) throws NoPatternException {
+        if (header.isGrayscale() && !markers.mayMatchGray()) {
+            throw new NoPatternException(); // known without decoding a single row
+        }
+        return streaming && header.getPngHeader() != null && PngScanlineReader.isSupported(header.getPngHeader());
+    }
+
+    /**
+     * @return ScanResult or null if the file's variant turned out not to be decodable row by row
+     */
+    private ScanResult streamScan(InputStreamSource upload) throws IOException {
+        long start = System.nanoTime();
+        try (InputStream in = upload.getInputStream()) {
+            return streamingScanner.findPatterns(in, policy);
+        }
+        finally {
+            metrics.record(Phase.STREAM_SCAN, start);
+        }
+    }
+
+    private Detection scan(BufferedImage image) throws NoPatternException, AmbiguousImageException {
+        long start = System.nanoTime();
+        ScanResult scan = new ImageProcessor(image, scanner, policy).scan();
+        metrics.record(Phase.SCAN, start);
+        return Detection.of(scan);
+    }
+
+    private BufferedImage decode(InputStreamSource upload) throws IOException {
+        long start = System.nanoTime();
+        try {
+            BufferedImage image = upload instanceof SpooledUpload && ((SpooledUpload) upload).getFile() != null
+                    ? decode(((SpooledUpload) upload).getFile())
+                    : decode(upload.getInputStream());
+            if (image == null) {
+                throw new IOException("No ImageIO reader decodes the upload");
+            }
+            return image;
+        }
+        finally {
+            metrics.record(Phase.DECODE, start);
+        }
+    }
+
+    /**
+     * Decodes a spooled upload straight from its file, without ImageIO caching the stream on the heap or disk
+     */
+    private static BufferedImage decode(Path file) throws IOException {
+        try (ImageInputStream in = new FileChannelImageInputStream(file)) {
+            return ImageIO.read(in);
+        }
+    }
+
+    private static BufferedImage decode(InputStream stream) throws IOException {
+        try (InputStream in = stream) {
+            return ImageIO.read(in);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.michalwesoly.pattern.finder.service;
+
+/**
+ * Decides when a scan may stop before reaching the end of the image.
+ */
+public enum ScanPolicy {
+    /**
+     * Scans the whole image and collects every pattern found
+     */
+    COLLECT_ALL(Integer.MAX_VALUE),
+    /**
+     * Stops as soon as the second pattern is found - the image is ambiguous at that point already
+     */
+    STOP_ON_AMBIGUITY(2),
+    /**
+     * Stops at the first pattern found and uses it, even if the rest of the image has more of them
+     */
+    FIRST_MATCH(1);
+
+    private final int matchLimit; // number of patterns after which scanning stops
+
+    ScanPolicy(int matchLimit) {
+        this.matchLimit = matchLimit;
+    }
+
+    /**
+     * @param matches number of patterns found so far
+     * @return true if the scan can stop with that many patterns
+     */
+    boolean isSatisfied(int matches) {
+        return matches >= matchLimit;
+    }
+}
@@ -0,0 +1,141 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
+import com.michalwesoly.pattern.finder.api.exceptions.NoPatternException;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Outcome of a single scan: patterns found and how much of the image had to be read to find them.
+ */
+public class ScanResult {
+    private final ScanPolicy policy;
+    private final AtomicInteger sharedMatches;  // matches of all parts of a split scan, null for a single scan
+    private final ArrayList<Pattern> patterns = new ArrayList<>();
+    private long pixelsScanned;     // scan positions visited before the scan ended
+    private boolean complete;       // false if the policy stopped the scan early
+
+    ScanResult(ScanPolicy policy) {
+        this(policy, null);
+    }
+
+    /**
+     * Result of one part of a scan split between threads; the policy is applied to matches of all parts together.
+     * @param policy ScanPolicy of the whole scan
+     * @param sharedMatches counter of matches shared by all parts of the scan
+     */
+    ScanResult(ScanPolicy policy, AtomicInteger sharedMatches) {
+        this.policy = policy;
+        this.sharedMatches = sharedMatches;
+    }
+
+    /**
+     * Records a pattern found by the scanner.
+     * @param pattern Pattern found
+     * @return true if scanning should go on, false if the policy is already satisfied
+     */
+    boolean add(Pattern pattern) {
+        patterns.add(pattern);
+        int matches = sharedMatches == null ? patterns.size() : sharedMatches.incrementAndGet();
+        return !policy.isSatisfied(matches);
+    }
+
+    /**
+     * @return true if other parts of a split scan have already satisfied the policy
+     */
+    boolean isSatisfiedElsewhere() {
+        return sharedMatches != null && policy.isSatisfied(sharedMatches.get());
+    }
+
+    /**
+     * Joins results of two neighbouring parts of a split scan, keeping patterns in image order and
+     * no more of them than the policy asks for.
+     * @param first result of the upper part
+     * @param second result of the lower part
+     * @return combined ScanResult
+     */
+    static ScanResult combine(ScanResult first, ScanResult second) {
+        ScanResult combined = new ScanResult(first.policy, first.sharedMatches);
+        for (ScanResult part : new ScanResult[]{first, second}) {
+            for (Pattern pattern : part.patterns) {
+                if (!combined.policy.isSatisfied(combined.patterns.size())) {
+                    combined.patterns.add(pattern);
+                }
+            }
+        }
+        combined.pixelsScanned = first.pixelsScanned + second.pixelsScanned;
+        combined.complete = first.complete && second.complete;
+        return combined;
+    }
+
+    /**
+     * Marks the scan as stopped by the policy.
+     * @param pixelsScanned scan positions visited until the stop
+     * @return this result
+     */
+    ScanResult stopped(long pixelsScanned) {
+        this.pixelsScanned = pixelsScanned;
+        this.complete = false;
+        return this;
+    }
+
+    /**
+     * Marks the scan as finished after visiting the whole image.
+     * @param pixelsScanned scan positions visited in total
+     * @return this result
+     */
+    ScanResult completed(long pixelsScanned) {
+        this.pixelsScanned = pixelsScanned;
+        this.complete = true;
+        return this;
+    }
+
+    /**
+     * Pattern the image should be rotated by - there has to be exactly one.
+     * @return the only pattern found
+     * @throws AmbiguousImageException if more than 1 pattern was found
+     * @throws NoPatternException if no pattern was found
+     */
+    Pattern getSinglePattern() throws NoPatternException, AmbiguousImageException {
+        if (patterns.size() > 1) {
+            throw new AmbiguousImageException(pixelsScanned, patterns.size());
+        }
+        else if (patterns.isEmpty()) {
+            throw new NoPatternException(pixelsScanned);
+        }
+        return patterns.get(0);
+    }
+
+    ArrayList<Pattern> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @return number of patterns found - with an early terminating policy it's capped at the policy's limit
+     */
+    public int getMatchCount() {
+        return patterns.size();
+    }
+
+    /**
+     * @return number of scan positions visited before the scan ended
+     */
+    public long getPixelsScanned() {
+        return pixelsScanned;
+    }
+
+    /**
+     * @return true if the whole image was scanned, false if the scan stopped early
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return policy the scan was run with
+     */
+    public ScanPolicy getPolicy() {
+        return policy;
+    }
+}
@@ -0,0 +1,170 @@
+package com.michalwesoly.pattern.finder.service;
+
+import static com.michalwesoly.pattern.finder.service.RasterScanner.PATTERN_LENGTH;
+import static com.michalwesoly.pattern.finder.service.RasterScanner.RED;
+import static com.michalwesoly.pattern.finder.service.RasterScanner.RUN;
+import static com.michalwesoly.pattern.finder.service.RasterScanner.WHITE;
+import static com.michalwesoly.pattern.finder.service.RasterScanner.isStripe;
+
+/**
+ * Scanning engine reading only every third pixel of a line.
+ *
+ * The red run of any stripe is 3 pixels long, so in every row and column it covers exactly one pixel whose
+ * index is a multiple of 3. Only those pixels (probes) are read; when a probe is red, its neighbours are checked
+ * for a stripe whose red run covers the probe. That way every stripe is found exactly once.
+ *
+ * Both directions are handled in a single row-major pass: every row is probed at columns 0, 3, 6...
+ * for horizontal stripes, and every third row is read as a whole, each pixel being a probe for vertical stripes
+ * in its column. That's roughly 5/9 of the pixels read once, against two full passes of RasterScanner.
+ *
+ * With a color tolerance, pixels are classified as white, red or neither by a ColorClassifier instead of being
+ * compared exactly; the probing works the same on runs of classified pixels. Every channel of white and red
+ * is 0 or 255, so a pixel within the tolerance has the high bits of every channel equal to the color's - one
+ * XOR and mask on the packed pixel rejects nearly every probe, just like the exact comparison does.
+ */
+class SkipScanner implements PatternScanner {
+    private static final int WHITE_CLASS = 1;   // classes of the stripe's colors, in order of the classifier
+    private static final int RED_CLASS = 2;
+
+    private final ColorClassifier colors;       // null for exact matching
+    private final int mask;                     // bits of every channel that can't differ within the tolerance
+
+    SkipScanner() {
+        this(0);
+    }
+
+    /**
+     * @param tolerance largest difference allowed in every channel of a white or red pixel
+     */
+    SkipScanner(int tolerance) {
+        this.colors = tolerance == 0 ? null : new ColorClassifier(new int[]{WHITE, RED}, tolerance);
+        int channel = 0xFF << (Integer.SIZE - Integer.numberOfLeadingZeros(tolerance)) & 0xFF;
+        this.mask = channel * 0x01010101;
+    }
+
+    @Override
+    public ScanResult findPatterns(PixelRaster raster, ScanPolicy policy) {
+        return scanRows(raster, 0, raster.getHeight(), new ScanResult(policy));
+    }
+
+    /**
+     * Probes rows from the given range. Each stripe is reported by the band holding its probe pixel only,
+     * so neighbouring bands can be scanned independently - checking a probe's neighbours reads up to
+     * 5 pixels over the band border.
+     * @param raster pixels of the image
+     * @param firstRow first row to probe
+     * @param endRow row after the last one to probe
+     * @param result ScanResult patterns are added to
+     * @return the result, completed or stopped by its policy
+     */
+    ScanResult scanRows(PixelRaster raster, int firstRow, int endRow, ScanResult result) {
+        int width = raster.getWidth();
+        long scanned = 0;
+
+        for (int row = firstRow; row < endRow; row++) {
+            if (result.isSatisfiedElsewhere()) {
+                return result.stopped(scanned);
+            }
+            boolean probeRow = row % RUN == 0; // whole row is read to probe columns
+            int step = probeRow ? 1 : RUN;
+            for (int column = 0; column < width; column += step) {
+                scanned++;
+                if (!isRed(raster.getRGB(column, row))) {
+                    continue;
+                }
+                if (column % RUN == 0 && !probe(raster, row, column, false, result)) {
+                    return result.stopped(scanned);
+                }
+                if (probeRow && !probe(raster, column, row, true, result)) {
+                    return result.stopped(scanned);
+                }
+            }
+        }
+        return result.completed(scanned);
+    }
+
+    /**
+     * Checks both kinds of stripe whose red run covers a red probe:
+     * white - red with the red run starting at most 2 pixels before the probe,
+     * red - white with the red run ending at most 2 pixels after it.
+     * @param raster pixels of the image
+     * @param line row of a horizontal probe or column of a vertical one
+     * @param index position of the probe along the line
+     * @param vertical true if the line is a column
+     * @param result ScanResult patterns are added to
+     * @return false if the policy is satisfied and scanning should stop
+     */
+    private boolean probe(PixelRaster raster, int line, int index, boolean vertical, ScanResult result) {
+        int length = vertical ? raster.getHeight() : raster.getWidth();
+
+        int start = index;
+        int limit = Math.max(index - (RUN - 1), 0);
+        while (start > limit && isRed(pixel(raster, line, start - 1, vertical))) {
+            start--;
+        }
+        int whiteStart = start - RUN;
+        if (whiteStart >= 0 && whiteStart + PATTERN_LENGTH <= length
+                && stripe(raster, line, whiteStart, vertical, WHITE, RED)
+                && !result.add(pattern(0, line, whiteStart, vertical))) {
+            return false;
+        }
+
+        int end = index;
+        limit = Math.min(index + (RUN - 1), length - 1);
+        while (end < limit && isRed(pixel(raster, line, end + 1, vertical))) {
+            end++;
+        }
+        int redStart = end - (RUN - 1);
+        if (redStart >= 0 && redStart + PATTERN_LENGTH <= length
+                && stripe(raster, line, redStart, vertical, RED, WHITE)
+                && !result.add(pattern(1, line, redStart, vertical))) {
+            return false;
+        }
+        return true;
+    }
+
+    private static int pixel(PixelRaster raster, int line, int index, boolean vertical) {
+        return vertical ? raster.getRGB(line, index) : raster.getRGB(index, line);
+    }
+
+    private boolean stripe(PixelRaster raster, int line, int start, boolean vertical, int first, int second) {
+        if (colors == null) {
+            return vertical
+                    ? isStripe(raster, line, start, 0, 1, first, second)
+                    : isStripe(raster, start, line, 1, 0, first, second);
+        }
+        for (int i = 0; i < PATTERN_LENGTH; i++) {
+            int color = i < RUN ? first : second;
+            if (!is(pixel(raster, line, start + i, vertical), color, color == WHITE ? WHITE_CLASS : RED_CLASS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isRed(int argb) {
+        return is(argb, RED, RED_CLASS);
+    }
+
+    /**
+     * @return true if the pixel is the color, within the tolerance
+     */
+    private boolean is(int argb, int color, int colorClass) {
+        return ((argb ^ color) & mask) == 0 && (colors == null || colors.is(argb, colorClass));
+    }
+
+    @Override
+    public boolean mayMatch(PixelRaster raster) {
+        if (colors == null) {
+            return PatternScanner.super.mayMatch(raster);
+        }
+        return raster.mayContainAny(argb -> colors.classify(argb) == WHITE_CLASS)
+                && raster.mayContainAny(argb -> colors.classify(argb) == RED_CLASS);
+    }
+
+    private static Pattern pattern(int alignment, int line, int start, boolean vertical) {
+        return vertical
+                ? new Pattern(alignment, true, line, start)
+                : new Pattern(alignment, false, start, line);
+    }
+}
@@ -0,0 +1,152 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.png.PngScanlineReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.michalwesoly.pattern.finder.service.RasterScanner.PATTERN_LENGTH;
+import static com.michalwesoly.pattern.finder.service.RasterScanner.RED;
+import static com.michalwesoly.pattern.finder.service.RasterScanner.RUN;
+import static com.michalwesoly.pattern.finder.service.RasterScanner.WHITE;
+
+/**
+ * Scanning engine looking for the pattern while a PNG file is being decoded, row by row.
+ *
+ * Instead of the last 6 rows, every column keeps the state of its color runs: the color and length of the
+ * current run, and the color of the previous run if it was at least 3 pixels long. A stripe ends where a run
+ * reaches 3 pixels right after a 3 pixels long run of the other color. Rows are checked the same way, so
+ * memory needed is proportional to image width, and the scan can stop (e.g. on ambiguity) before the rest of
+ * the file is even decoded. Configured markers other than the stripe are matched row by row by a MarkerMatcher.
+ */
+public class StreamingScanner {
+    private static final byte OTHER = 0;
+    private static final byte WHITE_RUN = 1;
+    private static final byte RED_RUN = 2;
+
+    private final MarkerSet markers;    // null for the white - red stripe, scanned by the run state machine
+    private final ColorClassifier colors; // white and red with a tolerance, null for exact stripe matching
+
+    public StreamingScanner() {
+        this(MarkerSet.STRIPE);
+    }
+
+    /**
+     * @param markers MarkerSet to be matched
+     */
+    public StreamingScanner(MarkerSet markers) {
+        this.markers = markers.isStripe() ? null : markers;
+        this.colors = markers.isStripe() && markers.getTolerance() > 0 ? markers.getClassifier() : null;
+    }
+
+    /**
+     * Decodes the PNG file and scans its rows as they come.
+     * @param png stream of the PNG file
+     * @param policy decides whether the scan may stop before the end of the image
+     * @return ScanResult or null if the file isn't a PNG file or a variant that can't be decoded row by row
+     * @throws IOException if the file can't be read or is malformed
+     */
+    public ScanResult findPatterns(InputStream png, ScanPolicy policy) throws IOException {
+        try (PngScanlineReader reader = PngScanlineReader.open(png)) {
+            if (reader == null) {
+                return null;
+            }
+            if (!mayMatch(reader)) {
+                return new ScanResult(policy).completed(0); // gray pixels are never red, palettes are checked once
+            }
+            if (!reader.isSupported()) {
+                return null;
+            }
+            return markers == null ? scan(reader, policy) : scanMarkers(reader, policy);
+        }
+    }
+
+    /**
+     * @return false if the header or palette rule out every pattern
+     */
+    private boolean mayMatch(PngScanlineReader reader) {
+        boolean gray = reader.getHeader().isGrayscale();
+        if (markers == null && colors == null) {
+            return !gray && reader.mayContain(WHITE) && reader.mayContain(RED);
+        }
+        if (markers == null) {
+            return (!gray || colors.matchesGray(0) && colors.matchesGray(1))
+                    && reader.mayContainAny(argb -> colors.classify(argb) == WHITE_RUN)
+                    && reader.mayContainAny(argb -> colors.classify(argb) == RED_RUN);
+        }
+        return (!gray || markers.mayMatchGray()) && markers.mayMatch(reader::mayContainAny);
+    }
+
+    private ScanResult scan(PngScanlineReader reader, ScanPolicy policy) throws IOException {
+        ScanResult result = new ScanResult(policy);
+        int width = reader.getHeader().getWidth();
+        int height = reader.getHeader().getHeight();
+        int rowSlot = width; // run state of the current row is kept after the columns' ones
+
+        int[] row = new int[width];
+        byte[] color = new byte[width + 1];
+        byte[] length = new byte[width + 1];
+        byte[] previous = new byte[width + 1];
+        long scanned = 0;
+
+        for (int y = 0; y < height; y++) {
+            reader.readRow(row);
+            color[rowSlot] = OTHER;
+            length[rowSlot] = 0;
+            previous[rowSlot] = OTHER;
+
+            for (int x = 0; x < width; x++) {
+                scanned++;
+                byte run = classify(row[x]);
+
+                if (advance(color, length, previous, rowSlot, run)
+                        && !result.add(new Pattern(run == RED_RUN ? 0 : 1, false, x - PATTERN_LENGTH + 1, y))) {
+                    return result.stopped(scanned);
+                }
+                if (advance(color, length, previous, x, run)
+                        && !result.add(new Pattern(run == RED_RUN ? 0 : 1, true, x, y - PATTERN_LENGTH + 1))) {
+                    return result.stopped(scanned);
+                }
+            }
+        }
+        return result.completed(scanned);
+    }
+
+    private ScanResult scanMarkers(PngScanlineReader reader, ScanPolicy policy) throws IOException {
+        int width = reader.getHeader().getWidth();
+        MarkerMatcher matcher = new MarkerMatcher(markers, width, new ScanResult(policy));
+        int[] row = new int[width];
+        for (int y = 0; y < reader.getHeader().getHeight(); y++) {
+            reader.readRow(row);
+            if (!matcher.scanRow(row, y)) {
+                return matcher.stopped();
+            }
+        }
+        return matcher.completed();
+    }
+
+    private byte classify(int argb) {
+        if (colors != null) {
+            return (byte) colors.classify(argb); // classes of white and red are WHITE_RUN and RED_RUN
+        }
+        return argb == WHITE ? WHITE_RUN : argb == RED ? RED_RUN : OTHER;
+    }
+
+    /**
+     * Extends the run state of a line by one pixel.
+     * @return true if the pixel completes a stripe: white - red if the pixel is red, red - white if it's white
+     */
+    private static boolean advance(byte[] color, byte[] length, byte[] previous, int slot, byte run) {
+        if (run != color[slot]) {
+            previous[slot] = length[slot] >= RUN ? color[slot] : OTHER;
+            color[slot] = run;
+            length[slot] = 1;
+            return false;
+        }
+        if (length[slot] < RUN) {
+            length[slot]++;
+            return length[slot] == RUN && run != OTHER && previous[slot] != OTHER;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,124 @@
+package com.michalwesoly.pattern.finder.spool;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * ImageInputStream reading a file through a FileChannel, for ImageIO to decode spooled uploads straight from disk.
+ *
+ * ImageIO wraps plain InputStreams in a cache - a temporary file or memory - so it can seek back; a file can be
+ * read at any position, so nothing is cached. Small reads, e.g. of headers and markers, are served from
+ * a single buffer refilled by positional reads; reads larger than the buffer go to the caller's array directly.
+ */
+public class FileChannelImageInputStream extends ImageInputStreamImpl {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bufferStart;   // position in the file of the buffer's first byte
+    private boolean closed;
+
+    /**
+     * @param file file to be read; it's closed together with the stream
+     */
+    public FileChannelImageInputStream(Path file) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    /**
+     * @param channel channel to be read from position 0; it's closed together with the stream
+     */
+    public FileChannelImageInputStream(FileChannel channel) {
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (!fill()) {
+            return -1;
+        }
+        streamPos++;
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        checkClosed();
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        bitOffset = 0;
+        if (length == 0) {
+            return 0;
+        }
+        if (!buffered() && length >= BUFFER_SIZE) {
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, length), streamPos); // no copy through the buffer
+            if (read > 0) {
+                streamPos += read;
+            }
+            return read;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int read = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, read);
+        streamPos += read;
+        return read;
+    }
+
+    @Override
+    public long length() {
+        try {
+            return channel.size();
+        }
+        catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Closes the stream and the channel; ImageIO.read() leaves it open, so callers close it, e.g. with
+     * try-with-resources. Closing again does nothing
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            super.close();
+            channel.close();
+        }
+    }
+
+    /**
+     * @return true if the buffer holds the byte at the stream position
+     */
+    private boolean buffered() {
+        long offset = streamPos - bufferStart;
+        return offset >= 0 && offset < buffer.limit();
+    }
+
+    /**
+     * Positions the buffer at the stream position, reading from the file if it isn't buffered
+     * @return false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        if (!buffered()) {
+            buffer.clear();
+            bufferStart = streamPos;
+            int read = channel.read(buffer, streamPos);
+            buffer.flip();
+            if (read <= 0) {
+                return false;
+            }
+        }
+        buffer.position((int) (streamPos - bufferStart));
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+package com.michalwesoly.pattern.finder.spool;
+
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Uploaded file either kept in memory by the multipart parser or spooled to a file of the UploadSpool.
+ * Closing it deletes the spooled file; it mustn't be read afterwards.
+ */
+public final class SpooledUpload implements InputStreamSource, Closeable {
+    private final MultipartFile upload;     // read if nothing is spooled
+    private final Path file;                // spooled file, null if the upload is read from memory
+    private final long size;
+
+    SpooledUpload(MultipartFile upload, Path file) {
+        this.upload = upload;
+        this.file = file;
+        this.size = upload.getSize();
+    }
+
+    /**
+     * @param upload uploaded file read as it is
+     * @return SpooledUpload without a spooled file, for callers not going through an UploadSpool
+     */
+    public static SpooledUpload inMemory(MultipartFile upload) {
+        return new SpooledUpload(upload, null);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return file != null ? Files.newInputStream(file) : upload.getInputStream();
+    }
+
+    /**
+     * @return spooled file, e.g. to be decoded through a FileChannelImageInputStream, or null if it's in memory
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return size of the upload in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Deletes the spooled file, if there's one
+     */
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
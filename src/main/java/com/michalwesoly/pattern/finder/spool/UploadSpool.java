@@ -0,0 +1,140 @@
+package com.michalwesoly.pattern.finder.spool;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Directory large uploads are kept in while they're processed, so they're decoded from disk instead of
+ * being copied into the heap first.
+ *
+ * The multipart parser spools large parts to disk itself; pointing spring.servlet.multipart.location at the same
+ * directory lets transferring them here be a rename. Smaller uploads are read from memory as they are. Spooled
+ * files are deleted when their SpooledUpload is closed. Files left behind by a crash - spooled ones and the
+ * parser's own parts - are swept at startup and then periodically, every half of maxAge, once they're older
+ * than maxAge, so they're gone at most 1.5 maxAge after the crash, whether the instance restarted or not.
+ */
+public class UploadSpool implements Closeable {
+    static final String PREFIX = "upload-";
+    static final String SUFFIX = ".spool";
+    static final String PART_PATTERN = "upload_*.tmp"; // parts Tomcat's multipart parser writes
+    static final Duration STALE = Duration.ofHours(1); // default maxAge
+
+    private final Path location;
+    private final long threshold;   // smaller uploads aren't spooled
+    private final Duration maxAge;  // files older than that aren't being processed
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Creates the directory if needed and sweeps files older than an hour from it
+     * @param location directory spooled files are created in
+     * @param threshold uploads of at least that many bytes are spooled; 0 spools every upload, a negative value none
+     * @throws IOException if the directory can't be created or listed
+     */
+    public UploadSpool(Path location, long threshold) throws IOException {
+        this(location, threshold, STALE);
+    }
+
+    /**
+     * Creates the directory if needed, sweeps stale files from it and keeps sweeping them until closed
+     * @param location directory spooled files are created in
+     * @param threshold uploads of at least that many bytes are spooled; 0 spools every upload, a negative value none
+     * @param maxAge age of spooled files and parts no request could still be reading - longer than the
+     *               slowest upload and its processing take
+     * @throws IOException if the directory can't be created or listed
+     */
+    public UploadSpool(Path location, long threshold, Duration maxAge) throws IOException {
+        this.location = location.toAbsolutePath();
+        this.threshold = threshold;
+        this.maxAge = maxAge;
+        Files.createDirectories(this.location);
+        sweep();
+        long period = Math.max(1000, maxAge.toMillis() / 2);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "upload-spool-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            }
+            catch (IOException e) {
+                // the directory is gone or unreadable right now; tried again next time
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param upload uploaded file
+     * @return SpooledUpload to be closed once the upload isn't read anymore
+     * @throws IOException if the upload can't be written to the spool directory
+     */
+    public SpooledUpload spool(MultipartFile upload) throws IOException {
+        if (threshold < 0 || upload.getSize() < threshold) {
+            return SpooledUpload.inMemory(upload);
+        }
+        Path file = Files.createTempFile(location, PREFIX, SUFFIX);
+        try {
+            upload.transferTo(file.toFile()); // moves the parser's file when it's on the same file system
+        }
+        catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new SpooledUpload(upload, file);
+    }
+
+    /**
+     * @return directory spooled files are created in
+     */
+    public Path getLocation() {
+        return location;
+    }
+
+    /**
+     * Deletes spooled files and parser parts older than maxAge
+     * @return number of files deleted
+     * @throws IOException if the directory can't be listed
+     */
+    int sweep() throws IOException {
+        Instant before = Instant.now().minus(maxAge);
+        return deleteStale(PREFIX + "*" + SUFFIX, before) + deleteStale(PART_PATTERN, before);
+    }
+
+    /**
+     * Stops sweeping; spooled files are deleted by their SpooledUploads
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private int deleteStale(String pattern, Instant before) throws IOException {
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(location, pattern)) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).compareTo(FileTime.from(before)) < 0
+                            && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                }
+                catch (IOException e) {
+                    // deleted meanwhile, or not ours to delete - left as it is
+                }
+            }
+        }
+        return deleted;
+    }
+}
@@ -1,26 +1,60 @@
 package com.michalwesoly.pattern.finder;
 
+import com.michalwesoly.pattern.finder.admission.ProcessingPool;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
+@AutoConfigureMetrics
 public class ImageTests {
+    private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+
     @Autowired
     private WebApplicationContext webApplicationContext;
+    @Autowired
+    private ProcessingPool processingPool;
 
     private BufferedImage noPattern = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
     private BufferedImage doublePattern = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
@@ -40,7 +74,7 @@ public class ImageTests {
                 bao.toByteArray());
 
         MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
-        mockMvc.perform(multipart("/rotate").file(file)).andExpect(status().isNoContent());
+        perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isNoContent());
     }
 
     @Test
@@ -52,7 +86,7 @@ public class ImageTests {
                 bao.toByteArray());
 
         MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
-        mockMvc.perform(multipart("/rotate").file(file)).andExpect(status().isBadRequest());
+        perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isBadRequest());
     }
 
     @Test
@@ -64,7 +98,140 @@ public class ImageTests {
                 bao.toByteArray());
 
         MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
-        mockMvc.perform(multipart("/rotate").file(file)).andExpect(status().isOk());
+        perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isOk());
+    }
+
+    @Test
+    public void rotatedImageShouldBeWrittenAsPng() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(onePattern, "png", bao);
+
+        MockMultipartFile file = new MockMultipartFile("file", "one.png", MediaType.IMAGE_PNG_VALUE,
+                bao.toByteArray());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        byte[] body = perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        BufferedImage rotated = ImageIO.read(new ByteArrayInputStream(body));
+        assertEquals(new Color(255, 255, 255).getRGB(), rotated.getRGB(31, 0)); // red - white turned upside down
+        assertEquals(new Color(255, 0, 0).getRGB(), rotated.getRGB(31, 31));
+    }
+
+    @Test
+    public void exifOutputShouldCopyUploadWithOrientationChunk() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(onePattern, "png", bao);
+        byte[] upload = bao.toByteArray();
+
+        MockMultipartFile file = new MockMultipartFile("file", "one.png", MediaType.IMAGE_PNG_VALUE, upload);
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        byte[] body = perform(mockMvc, multipart("/rotate").file(file).param("output", "EXIF"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsByteArray();
+
+        // Signature and IHDR as uploaded, then a 26 byte eXIf chunk with Orientation 3 (rotate 180), then the rest
+        int inserted = 8 + 25;
+        assertEquals(upload.length + 12 + 26, body.length);
+        assertArrayEquals(Arrays.copyOf(upload, inserted), Arrays.copyOf(body, inserted));
+        assertEquals("eXIf", new String(body, inserted + 4, 4, StandardCharsets.US_ASCII));
+        assertEquals(3, body[inserted + 8 + 19]);
+        assertArrayEquals(Arrays.copyOfRange(upload, inserted, upload.length),
+                Arrays.copyOfRange(body, inserted + 12 + 26, body.length));
+        assertEquals(onePattern.getRGB(0, 0), ImageIO.read(new ByteArrayInputStream(body)).getRGB(0, 0)); // not rotated
+    }
+
+    @Test
+    public void exifOutputShouldFallBackToRotationForOtherFormats() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(onePattern, "bmp", bao);
+
+        MockMultipartFile file = new MockMultipartFile("file", "one.bmp", "image/bmp", bao.toByteArray());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        byte[] body = perform(mockMvc, multipart("/rotate").file(file).param("output", "exif"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsByteArray();
+
+        BufferedImage rotated = ImageIO.read(new ByteArrayInputStream(body));
+        assertEquals(new Color(255, 0, 0).getRGB(), rotated.getRGB(31, 31));
+    }
+
+    @Test
+    public void jpegUploadShouldBeDecodedAndScanned() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(noPattern, "jpeg", bao);
+
+        MockMultipartFile file = new MockMultipartFile("file", "none.jpg", MediaType.IMAGE_JPEG_VALUE,
+                bao.toByteArray());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isNoContent());
+    }
+
+    @Test
+    public void jpegStripeShouldNotMatchWithoutTolerance() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "stripe.jpg", MediaType.IMAGE_JPEG_VALUE, stripeJpeg());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isNoContent()); // colors are off by a few
+    }
+
+    @Test
+    public void bmpWithOnePatternShouldBeRotatedToPng() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(onePattern, "bmp", bao);
+
+        MockMultipartFile file = new MockMultipartFile("file", "one.bmp", "image/bmp", bao.toByteArray());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        byte[] body = perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        BufferedImage rotated = ImageIO.read(new ByteArrayInputStream(body));
+        assertEquals(new Color(255, 255, 255).getRGB(), rotated.getRGB(31, 0));
+        assertEquals(new Color(255, 0, 0).getRGB(), rotated.getRGB(31, 31));
+    }
+
+    @Test
+    public void responseNeverWrittenShouldStillReleaseItsPixels() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(onePattern, "png", bao);
+
+        MockMultipartFile file = new MockMultipartFile("file", "one.png", MediaType.IMAGE_PNG_VALUE,
+                bao.toByteArray());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        MvcResult result = mockMvc.perform(multipart("/rotate").file(file)).andReturn();
+        assertNotNull(result.getAsyncResult(10_000)); // processed, but the body is never dispatched nor written
+        assertTrue(processingPool.getPixelsInFlight() > 0);
+
+        MockAsyncContext context = (MockAsyncContext) result.getRequest().getAsyncContext();
+        context.complete(); // e.g. the container ending a request that timed out or whose client went away
+        assertEquals(0, processingPool.getPixelsInFlight());
+    }
+
+    @Test
+    public void batchShouldReturnZipWithManifest() throws Exception {
+        ByteArrayOutputStream one = new ByteArrayOutputStream();
+        ImageIO.write(onePattern, "png", one);
+        ByteArrayOutputStream none = new ByteArrayOutputStream();
+        ImageIO.write(noPattern, "png", none);
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        MvcResult result = mockMvc.perform(multipart("/rotate/batch")
+                .file(new MockMultipartFile("files", "one.png", MediaType.IMAGE_PNG_VALUE, one.toByteArray()))
+                .file(new MockMultipartFile("files", "none.png", MediaType.IMAGE_PNG_VALUE, none.toByteArray())))
+                .andReturn();
+        byte[] body = mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(body))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                names.add(entry.getName());
+            }
+        }
+        assertEquals(List.of("one.png", "manifest.json"), names);
     }
 
     @Test
@@ -76,7 +243,7 @@ public class ImageTests {
                 bao.toByteArray());
 
         MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
-        mockMvc.perform(multipart("/rotate").file(file)).andExpect(status().isNoContent());
+        perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isNoContent());
     }
 
     @Test
@@ -85,9 +252,128 @@ public class ImageTests {
                "Testing".getBytes());
 
         MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
-        mockMvc.perform(multipart("/rotate").file(file)).andExpect(status().isBadRequest());
+        perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void mislabeledFileShouldReturn400() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "text.png", MediaType.IMAGE_PNG_VALUE,
+                "Testing".getBytes());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void imageOverSizeLimitsShouldReturn413() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(onePattern, "png", bao);
+        byte[] png = bao.toByteArray();
+        png[16] = 0x7F; // IHDR width of 2 billion pixels, the rest of the file is never looked at
+
+        MockMultipartFile file = new MockMultipartFile("file", "huge.png", MediaType.IMAGE_PNG_VALUE, png);
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isPayloadTooLarge());
+        perform(mockMvc, multipart("/detect").file(file)).andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    public void phasesAndResponsesShouldBeExposedForPrometheus() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(onePattern, "png", bao);
+        MockMultipartFile file = new MockMultipartFile("file", "metrics.png", MediaType.IMAGE_PNG_VALUE,
+                bao.toByteArray());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        perform(mockMvc, multipart("/detect").file(file)).andExpect(status().isOk());
+        String scrape = mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(scrape.contains("pattern_finder_phase_seconds_count{phase=\"prefilter\",}"));
+        assertTrue(scrape.contains("pattern_finder_phase_seconds_bucket{phase=\"stream-scan\","));
+        assertTrue(scrape.contains("pattern_finder_responses_total{endpoint=\"/detect\",status=\"200\",}"));
+        assertTrue(scrape.contains("pattern_finder_requests_in_flight"));
+        assertTrue(scrape.contains("pattern_finder_image_pixels_count"));
     }
 
+    @Test
+    public void detectShouldReturnRotationAsJson() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(onePattern, "png", bao);
+
+        MockMultipartFile file = new MockMultipartFile("file", "one.png", MediaType.IMAGE_PNG_VALUE,
+                bao.toByteArray());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(multipart("/detect").file(file))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rotation").value(180))
+                .andExpect(jsonPath("$.x").value(0))
+                .andExpect(jsonPath("$.y").value(0))
+                .andExpect(jsonPath("$.alignment").value("VERTICAL"))
+                .andExpect(jsonPath("$.whiteFirst").value(false))
+                .andExpect(jsonPath("$.matchCount").value(1));
+    }
+
+    @Test
+    public void detectWithTooManyPatternsShouldReturn400() throws Exception {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        ImageIO.write(doublePattern, "png", bao);
+
+        MockMultipartFile file = new MockMultipartFile("file", "double.png", MediaType.IMAGE_PNG_VALUE,
+                bao.toByteArray());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(multipart("/detect").file(file))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("AMBIGUOUS"))
+                .andExpect(jsonPath("$.matchCount").value(2));
+    }
+
+    /**
+     * JPEG file of a horizontal white - red stripe, without chroma subsampling, which would leave nothing red
+     * of a stripe 1 pixel high; its colors are still off by a few in every channel
+     */
+    static byte[] stripeJpeg() throws IOException {
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 6; x++) {
+            image.setRGB(8 + x, 8, x < 3 ? Color.WHITE.getRGB() : Color.RED.getRGB());
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.95f);
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        Element tree = (Element) metadata.getAsTree(JPEG_METADATA);
+        NodeList components = tree.getElementsByTagName("componentSpec");
+        for (int i = 0; i < components.getLength(); i++) {
+            ((Element) components.item(i)).setAttribute("HsamplingFactor", "1");
+            ((Element) components.item(i)).setAttribute("VsamplingFactor", "1");
+        }
+        metadata.setFromTree(JPEG_METADATA, tree);
+
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bao)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        }
+        finally {
+            writer.dispose();
+        }
+        return bao.toByteArray();
+    }
+
+    /**
+     * Performs the request and dispatches its async result, if it started any, until the response is complete
+     */
+    static ResultActions perform(MockMvc mockMvc, RequestBuilder request) throws Exception {
+        ResultActions actions = mockMvc.perform(request);
+        while (actions.andReturn().getRequest().isAsyncStarted()) {
+            actions = mockMvc.perform(asyncDispatch(actions.andReturn()));
+        }
+        return actions;
+    }
 
     private void generateImages() {
         int RED = new Color(255, 0, 0).getRGB();
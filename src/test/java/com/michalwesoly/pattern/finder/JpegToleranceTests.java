@@ -0,0 +1,49 @@
+package com.michalwesoly.pattern.finder;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+
+import static com.michalwesoly.pattern.finder.ImageTests.perform;
+import static com.michalwesoly.pattern.finder.ImageTests.stripeJpeg;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * JPEG uploads with the tolerance the configuration suggests for them; ImageTests covers the same file
+ * with the default tolerance of 0
+ */
+@SpringBootTest(properties = "pattern.finder.markers.tolerance=16")
+public class JpegToleranceTests {
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Test
+    public void jpegStripeShouldBeRotatedWithinTolerance() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "stripe.jpg", MediaType.IMAGE_JPEG_VALUE, stripeJpeg());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        byte[] body = perform(mockMvc, multipart("/rotate").file(file)).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        BufferedImage rotated = ImageIO.read(new ByteArrayInputStream(body));
+        assertEquals(32, rotated.getWidth());
+        mockMvc.perform(multipart("/detect").file(file))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.x").value(8))
+                .andExpect(jsonPath("$.y").value(8))
+                .andExpect(jsonPath("$.alignment").value("HORIZONTAL"))
+                .andExpect(jsonPath("$.matchCount").value(1));
+    }
+}
@@ -0,0 +1,103 @@
+package com.michalwesoly.pattern.finder.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProcessingPoolTests {
+
+    @Test
+    public void pixelBudgetShouldRejectUntilPermitsAreClosed() throws Exception {
+        ProcessingPool pool = new ProcessingPool(1, 1, 1000);
+        try {
+            ProcessingPool.Permit first = pool.admit(600);
+            AdmissionException e = assertThrows(AdmissionException.class, () -> pool.admit(600));
+            assertFalse(e.isOverloaded());
+
+            first.close();
+            first.close(); // released only once
+            assertEquals(0, pool.getPixelsInFlight());
+            pool.admit(5000).close(); // a single image is admitted however large it is
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void awaitShouldWaitUntilPixelsAreReleased() throws Exception {
+        ProcessingPool pool = new ProcessingPool(1, 1, 1000);
+        try {
+            ProcessingPool.Permit first = pool.admit(600);
+            CompletableFuture<ProcessingPool.Permit> second = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return pool.await(600);
+                }
+                catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+
+            first.close();
+            second.get(5, TimeUnit.SECONDS).close();
+            assertEquals(0, pool.getPixelsInFlight());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void fullQueueShouldRejectJobs() throws Exception {
+        ProcessingPool pool = new ProcessingPool(1, 1, Long.MAX_VALUE);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<Boolean> running = pool.submit(() -> release.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> queued = pool.submit(() -> true);
+            AdmissionException e = assertThrows(AdmissionException.class, () -> pool.submit(() -> true));
+            assertTrue(e.isOverloaded());
+
+            release.countDown();
+            assertTrue(running.get(5, TimeUnit.SECONDS));
+            assertTrue(queued.get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelledJobsShouldBeInterruptedOrDequeued() throws Exception {
+        ProcessingPool pool = new ProcessingPool(1, 1, Long.MAX_VALUE);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try {
+            CompletableFuture<Void> running = pool.submit(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                }
+                catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            });
+            CompletableFuture<Boolean> queued = pool.submit(() -> true);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            queued.cancel(false);
+            assertEquals(0, pool.getQueuedJobs());
+            running.cancel(false);
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
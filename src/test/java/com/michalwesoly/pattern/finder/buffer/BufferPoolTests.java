@@ -0,0 +1,86 @@
+package com.michalwesoly.pattern.finder.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTests {
+
+    @Test
+    public void releasedArrayShouldBeReusedForItsSizeClass() {
+        BufferPool pool = new BufferPool(1 << 20, 1 << 18);
+        int[] first = pool.borrowInts(5000);
+        assertEquals(BufferPool.classLength(5000), first.length);
+        assertTrue(first.length >= 5000 && first.length <= 5000 * 5 / 4);
+        pool.release(first);
+        assertEquals((long) first.length * Integer.BYTES, pool.getHeldBytes());
+
+        assertSame(first, pool.borrowInts(first.length - 10));
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getHeldBytes());
+        assertNotSame(first, pool.borrowInts(first.length + 1)); // next class
+    }
+
+    @Test
+    public void poolShouldHoldNoMoreThanItsCap() {
+        BufferPool pool = new BufferPool(10000, 8192);
+        byte[] first = pool.borrowBytes(8192);
+        byte[] second = pool.borrowBytes(8192);
+        pool.release(first);
+        pool.release(second);
+        assertEquals(8192, pool.getHeldBytes());
+        assertEquals(1, pool.getDiscards());
+
+        byte[] large = pool.borrowBytes(10000); // over the largest pooled array - allocated exactly, never held
+        assertEquals(10000, large.length);
+        pool.release(large);
+        assertEquals(8192, pool.getHeldBytes());
+    }
+
+    @Test
+    public void smallArraysAndForeignImagesShouldBeLeftAlone() {
+        BufferPool pool = new BufferPool(1 << 20, 1 << 18);
+        int[] small = pool.borrowInts(100);
+        assertEquals(100, small.length);
+        pool.release(small);
+        pool.release(new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB)); // 4096 ints, but not borrowed
+        assertEquals(0, pool.getHeldBytes());
+        assertEquals(0, pool.getHits() + pool.getMisses());
+    }
+
+    @Test
+    public void arraysReleasedOnAnotherThreadShouldBeReusedAndCounted() throws Exception {
+        BufferPool pool = new BufferPool(1 << 20, 1 << 18);
+        int[] borrowed = pool.borrowInts(4096);
+        Thread releasing = new Thread(() -> pool.release(borrowed)); // e.g. a streamed response's thread, then gone
+        releasing.start();
+        releasing.join();
+        assertEquals((long) borrowed.length * Integer.BYTES, pool.getHeldBytes());
+
+        assertSame(borrowed, pool.borrowInts(4096));
+        assertEquals(0, pool.getHeldBytes());
+        int[] elsewhere = CompletableFuture.supplyAsync(() -> pool.borrowInts(4096)).get();
+        assertNotSame(borrowed, elsewhere);
+    }
+
+    @Test
+    public void pooledStreamShouldGrowAndCopyExactly() {
+        BufferPool pool = new BufferPool(1 << 20, 1 << 18);
+        byte[] written = new byte[20000];
+        for (int i = 0; i < written.length; i++) {
+            written[i] = (byte) i;
+        }
+        try (PooledOutputStream out = new PooledOutputStream(pool, 2000)) {
+            out.write(written, 0, 15000);
+            for (int i = 15000; i < written.length; i++) {
+                out.write(written[i]);
+            }
+            assertArrayEquals(written, out.toByteArray());
+        }
+        assertTrue(pool.getHeldBytes() >= 20000); // every buffer the stream outgrew went back to the pool
+    }
+}
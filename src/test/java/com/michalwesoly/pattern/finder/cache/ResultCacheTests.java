@@ -0,0 +1,167 @@
+package com.michalwesoly.pattern.finder.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTests {
+
+    @Test
+    public void sameContentShouldBeComputedOnce() throws IOException {
+        ResultCache cache = new ResultCache(1 << 20);
+        AtomicInteger computations = new AtomicInteger();
+        ResultCache.Computation computation = () -> {
+            computations.incrementAndGet();
+            return new CachedResponse(200, new byte[100]);
+        };
+
+        CachedResponse first = cache.get(upload("a"), computation);
+        CachedResponse second = cache.get(upload("a"), computation);
+        cache.get(upload("b"), computation);
+
+        assertSame(first, second);
+        assertEquals(2, computations.get());
+        assertEquals(1, cache.getStatistics().getHits());
+        assertEquals(2, cache.getStatistics().getMisses());
+        assertEquals(2, cache.getStatistics().getEntries());
+    }
+
+    @Test
+    public void leastRecentlyUsedShouldBeEvictedOverBudget() throws IOException {
+        ResultCache cache = new ResultCache(3 * 1000);
+        for (String content : new String[] {"a", "b", "a", "c", "d"}) { // "b" is the least recently used at "d"
+            cache.get(upload(content), () -> new CachedResponse(200, new byte[700]));
+        }
+        assertEquals(3, cache.getStatistics().getEntries());
+        assertTrue(cache.getStatistics().getUsedBytes() <= 3 * 1000);
+
+        cache.get(upload("a"), () -> fail("\"a\" should still be cached"));
+        AtomicInteger computations = new AtomicInteger();
+        cache.get(upload("b"), () -> {
+            computations.incrementAndGet();
+            return new CachedResponse(204, null);
+        });
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    public void concurrentUploadsOfSameFileShouldShareComputation() throws Exception {
+        ResultCache cache = new ResultCache(1 << 20);
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<CachedResponse> first = executor.submit(() -> cache.get(upload("same"), () -> {
+                computations.incrementAndGet();
+                started.countDown();
+                await(release);
+                return new CachedResponse(400, null);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<CachedResponse> second = executor.submit(() -> cache.get(upload("same"), () -> {
+                computations.incrementAndGet();
+                return new CachedResponse(400, null);
+            }));
+            Thread.sleep(50); // let the second upload find the running computation
+            release.countDown();
+
+            assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, computations.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void errorOfComputationShouldReachWaiters() throws Exception {
+        ResultCache cache = new ResultCache(1 << 20);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<CachedResponse> first = executor.submit(() -> cache.get(upload("same"), () -> {
+                started.countDown();
+                await(release);
+                throw new OutOfMemoryError("Testing");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<CachedResponse> second = executor.submit(() -> cache.get(upload("same"),
+                    () -> fail("The running computation should be joined")));
+            Thread.sleep(50); // let the second upload find the running computation
+            release.countDown();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getCause() instanceof OutOfMemoryError);
+            assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelledComputationShouldBeTakenOverByWaiter() throws Exception {
+        ResultCache cache = new ResultCache(1 << 20);
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<CachedResponse> first = executor.submit(() -> cache.get(upload("same"), () -> {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException("Cancelled by its request's timeout");
+                }
+                return new CachedResponse(200, new byte[1]);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<CachedResponse> second = executor.submit(() -> cache.get(upload("same"),
+                    () -> new CachedResponse(204, null)));
+            Thread.sleep(50); // let the second upload find the running computation
+            first.cancel(true);
+
+            assertEquals(204, second.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(204, cache.get(upload("same"), () -> fail("Should be cached")).getStatus());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failuresShouldNotBeCached() throws IOException {
+        ResultCache cache = new ResultCache(1 << 20);
+        assertThrows(IOException.class, () -> cache.get(upload("broken"), () -> {
+            throw new IOException("Unreadable");
+        }));
+        assertEquals(200, cache.get(upload("broken"), () -> new CachedResponse(200, new byte[1])).getStatus());
+    }
+
+    private static ByteArrayResource upload(String content) {
+        return new ByteArrayResource(content.getBytes());
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.michalwesoly.pattern.finder.cli;
+
+import com.michalwesoly.pattern.finder.png.PngEncoder;
+import com.michalwesoly.pattern.finder.png.PngProfile;
+import com.michalwesoly.pattern.finder.service.AutomatonScanner;
+import com.michalwesoly.pattern.finder.service.BatchOutcome;
+import com.michalwesoly.pattern.finder.service.ImagePrefilter;
+import com.michalwesoly.pattern.finder.service.MarkerSet;
+import com.michalwesoly.pattern.finder.service.PatternScanner;
+import com.michalwesoly.pattern.finder.service.ScanPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkPipelineTests {
+    private static final int RED = new Color(255, 0, 0).getRGB();
+    private static final int WHITE = new Color(255, 255, 255).getRGB();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void everyFileShouldBeRotatedOrRecordedWithItsOutcome() throws IOException {
+        Path input = input();
+        Path output = directory.resolve("out");
+        Path checkpoint = directory.resolve("checkpoint.tsv");
+
+        String log = bulkRotate(input, output, "--checkpoint", checkpoint.toString(), "--scan-threads", "3",
+                "--write-threads", "2", "--queue", "1");
+
+        BufferedImage rotated = ImageIO.read(output.resolve("nested/one.png.png").toFile());
+        assertEquals(WHITE, rotated.getRGB(31, 0)); // red - white turned upside down
+        assertEquals(RED, rotated.getRGB(31, 31));
+        assertTrue(Files.exists(output.resolve("one.bmp.png")));
+        assertFalse(Files.exists(output.resolve("none.png.png")));
+
+        List<String> lines = Files.readAllLines(checkpoint);
+        assertEquals(5, lines.size());
+        assertTrue(lines.containsAll(List.of("ROTATED\tnested/one.png", "ROTATED\tone.bmp", "NO_PATTERN\tnone.png",
+                "AMBIGUOUS\tdouble.png", "UNSUPPORTED\tnotes.txt")));
+        assertTrue(log.contains("5 files in"));
+    }
+
+    @Test
+    public void resumedRunShouldSkipFilesInCheckpoint() throws IOException {
+        Path input = input();
+        Path output = directory.resolve("out");
+        Path checkpoint = directory.resolve("checkpoint.tsv");
+        Files.write(checkpoint, "ROTATED\tnested/one.png\nNO_PATTERN\tnone.png\nAMBIG".getBytes(StandardCharsets.UTF_8));
+
+        BulkPipeline pipeline = pipeline();
+        try (Checkpoint resumed = Checkpoint.open(checkpoint)) {
+            assertEquals(2, resumed.getFinishedCount());
+            BulkStatistics statistics = pipeline.run(input, output, resumed);
+            assertEquals(2, statistics.getSkipped());
+            assertEquals(3, statistics.getFinished());
+            assertEquals(1, statistics.getCount(BatchOutcome.AMBIGUOUS));
+        }
+        assertFalse(Files.exists(output.resolve("nested/one.png.png")));
+
+        try (Checkpoint finished = Checkpoint.open(checkpoint)) {
+            assertEquals(5, finished.getFinishedCount());
+            assertEquals(0, pipeline().run(input, output, finished).getFinished());
+        }
+    }
+
+    @Test
+    public void lineCutShortShouldNotCountAsFinished() throws IOException {
+        Path checkpoint = directory.resolve("checkpoint.tsv");
+        Files.write(checkpoint, "ROTATED\tnested/one.png\nROTATED\tnested/one".getBytes(StandardCharsets.UTF_8));
+
+        try (Checkpoint cut = Checkpoint.open(checkpoint)) {
+            assertEquals(1, cut.getFinishedCount());
+            assertFalse(cut.isFinished("nested/one")); // complete looking, but the crash cut "nested/one.bmp"
+            cut.record("nested/one.bmp", BatchOutcome.ROTATED);
+        }
+        try (Checkpoint resumed = Checkpoint.open(checkpoint)) {
+            assertEquals(2, resumed.getFinishedCount());
+            assertTrue(resumed.isFinished("nested/one.bmp"));
+        }
+    }
+
+    @Test
+    public void outputInsideInputShouldNotBeProcessedAgain() throws IOException {
+        Path input = input();
+        BulkStatistics statistics = pipeline().run(input, input.resolve("rotated"), Checkpoint.none());
+        assertEquals(5, statistics.getFinished());
+        assertTrue(Files.exists(input.resolve("rotated/nested/one.png.png")));
+    }
+
+    @Test
+    public void failedWriteShouldLeaveNoOutputAndBeTriedAgain() throws IOException {
+        Path input = input();
+        Path output = directory.resolve("out");
+        Path checkpoint = directory.resolve("checkpoint.tsv");
+        Path blocked = Files.createDirectories(output.resolve("nested/one.png.png/taken")); // can't be replaced
+
+        try (Checkpoint first = Checkpoint.open(checkpoint)) {
+            BulkStatistics statistics = pipeline().run(input, output, first);
+            assertEquals(1, statistics.getFailed());
+            assertEquals(4, statistics.getFinished());
+        }
+        assertFalse(Files.exists(output.resolve("nested/one.png.png.part")));
+        assertFalse(Files.readAllLines(checkpoint).contains("ROTATED\tnested/one.png"));
+
+        Files.delete(blocked);
+        Files.delete(blocked.getParent());
+        try (Checkpoint second = Checkpoint.open(checkpoint)) {
+            BulkStatistics statistics = pipeline().run(input, output, second);
+            assertEquals(4, statistics.getSkipped());
+            assertEquals(1, statistics.getCount(BatchOutcome.ROTATED));
+        }
+        assertNotNull(ImageIO.read(output.resolve("nested/one.png.png").toFile()));
+    }
+
+    @Test
+    public void errorShouldFailOnlyItsFile() {
+        PatternScanner exhausted = (raster, policy) -> {
+            throw new OutOfMemoryError("Testing");
+        };
+        BulkStatistics statistics = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> pipeline(exhausted).run(input(), directory.resolve("out"), Checkpoint.none()));
+        assertTrue(statistics.getFailed() >= 3); // every image the scanner saw
+        assertEquals(5, statistics.getFailed() + statistics.getFinished());
+        assertEquals(0, statistics.getCount(BatchOutcome.ROTATED));
+    }
+
+    @Test
+    public void outputNamesShouldNotCollide() {
+        assertNotEquals(BulkPipeline.outputName("x.jpg"), BulkPipeline.outputName("x.jpg.png"));
+        assertEquals("x.png.png", BulkPipeline.outputName("x.png"));
+    }
+
+    @Test
+    public void invalidArgumentsShouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> bulkRotate(directory, directory, "--paint-threads", "2"));
+        assertThrows(IllegalArgumentException.class, () -> bulkRotate(directory, directory, "--queue", "0"));
+        assertThrows(IllegalArgumentException.class, () -> bulkRotate(directory, directory, "--queue"));
+    }
+
+    private static BulkPipeline pipeline() {
+        return pipeline(new AutomatonScanner(MarkerSet.STRIPE));
+    }
+
+    private static BulkPipeline pipeline(PatternScanner scanner) {
+        return new BulkPipeline(scanner, MarkerSet.STRIPE,
+                ScanPolicy.STOP_ON_AMBIGUITY, new ImagePrefilter(1000, 1000, 1_000_000L),
+                new PngEncoder(PngProfile.FAST), Map.of(Stage.DECODE, 2), 2);
+    }
+
+    private static String bulkRotate(Path input, Path output, String... options) throws IOException {
+        String[] args = new String[options.length + 2];
+        args[0] = input.toString();
+        args[1] = output.toString();
+        System.arraycopy(options, 0, args, 2, options.length);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        assertEquals(0, BulkRotate.run(args, new PrintStream(log, true, StandardCharsets.UTF_8)));
+        return log.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Input tree with a PNG and a BMP file to be rotated, PNG files without a pattern and with two, and a text file
+     */
+    private Path input() throws IOException {
+        Path input = directory.resolve("in");
+        Files.createDirectories(input.resolve("nested"));
+        ImageIO.write(image(1), "png", input.resolve("nested/one.png").toFile());
+        ImageIO.write(image(1), "bmp", input.resolve("one.bmp").toFile());
+        ImageIO.write(image(0), "png", input.resolve("none.png").toFile());
+        ImageIO.write(image(2), "png", input.resolve("double.png").toFile());
+        Files.write(input.resolve("notes.txt"), "Testing".getBytes(StandardCharsets.UTF_8));
+        return input;
+    }
+
+    /**
+     * 32x32 image with the given number of red - white stripes running down its first columns
+     */
+    private static BufferedImage image(int patterns) {
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < patterns; x++) {
+            for (int y = 0; y < 32; y++) {
+                image.setRGB(x, y, y < 3 ? RED : WHITE);
+            }
+        }
+        return image;
+    }
+}
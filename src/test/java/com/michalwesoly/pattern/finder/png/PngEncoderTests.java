@@ -0,0 +1,91 @@
+package com.michalwesoly.pattern.finder.png;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PngEncoderTests {
+    private static final int[] TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_INDEXED,
+            BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_USHORT_565_RGB, BufferedImage.TYPE_USHORT_GRAY};
+
+    @Test
+    public void imagesShouldDecodeToSamePixels() throws IOException {
+        Random random = new Random(3);
+        for (int type : TYPES) {
+            BufferedImage image = new BufferedImage(1 + random.nextInt(50), 1 + random.nextInt(50), type);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.setRGB(x, y, random.nextInt());
+                }
+            }
+            for (PngFilter filter : PngFilter.values()) {
+                assertSamePixels(image, new PngEncoder(6, filter), "type " + type + ", " + filter);
+            }
+        }
+    }
+
+    @Test
+    public void packedPaletteShouldKeepItsBitDepth() throws IOException {
+        byte[] channel = {0, 85, (byte) 170, (byte) 255};
+        byte[] alpha = {0, (byte) 255, (byte) 255, (byte) 255};
+        BufferedImage image = new BufferedImage(13, 7, BufferedImage.TYPE_BYTE_BINARY,
+                new IndexColorModel(2, 4, channel, channel, channel, alpha));
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.getRaster().setSample(x, y, 0, (x + y) % 4);
+            }
+        }
+        assertSamePixels(image, new PngEncoder(PngProfile.BALANCED), "2 bit palette");
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        new PngEncoder(PngProfile.BALANCED).write(image, png);
+        PngHeader header = PngHeader.read(new ByteArrayInputStream(png.toByteArray()));
+        assertEquals(PngHeader.COLOR_PALETTE, header.getColorType());
+        assertEquals(2, header.getBitDepth());
+    }
+
+    @Test
+    public void smallProfileShouldNotBeLargerThanFastOne() throws IOException {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 256; x++) {
+                image.setRGB(x, y, x << 16 | y << 8 | (x ^ y));
+            }
+        }
+        ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        ByteArrayOutputStream small = new ByteArrayOutputStream();
+        PngEncoder fastEncoder = new PngEncoder(PngProfile.FAST);
+        fastEncoder.write(image, fast);
+        fastEncoder.write(image, new ByteArrayOutputStream()); // deflater reused
+        new PngEncoder(PngProfile.SMALL).write(image, small);
+
+        assertTrue(small.size() <= fast.size());
+        assertSamePixels(image, fastEncoder, "reused deflater");
+    }
+
+    /**
+     * Written file, read back by ImageIO, has to have the same pixels as the image
+     */
+    private static void assertSamePixels(BufferedImage image, PngEncoder encoder, String message) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        encoder.write(image, png);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+        assertNotNull(decoded, message);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getRGB(x, y), decoded.getRGB(x, y), message + ", pixel " + x + "," + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.michalwesoly.pattern.finder.png;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PngOrientationTests {
+    private static final int IDAT = 0x49444154;
+
+    @Test
+    public void orientationShouldBeInsertedBeforeImageDataWithoutTouchingPixels() throws IOException {
+        BufferedImage image = randomImage(29, 17);
+        byte[] png = png(image);
+
+        byte[] oriented = orient(png, 90);
+
+        ByteBuffer exif = chunk(oriented, PngOrientation.EXIF);
+        assertNotNull(exif);
+        assertTrue(exif.position() < chunkOffset(oriented, IDAT));
+        assertEquals(6, orientation(exif));
+        assertEquals(png.length + 12 + exif.remaining(), oriented.length);
+        assertSamePixels(image, ImageIO.read(new ByteArrayInputStream(oriented)));
+    }
+
+    @Test
+    public void existingOrientationShouldBePatchedKeepingOtherTags() throws IOException {
+        // Little endian IFD with Orientation = 1 and a made up tag after it
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 2 + 2 * 12 + 4).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8).putShort((short) 2);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 1).putShort((short) 0);
+        tiff.putShort((short) 0x0131).putShort((short) 4).putInt(1).putInt(0x12345678);
+        byte[] exif = tiff.array();
+
+        byte[] png = png(randomImage(8, 8));
+        byte[] withExif = insertBefore(png, IDAT, PngOrientation.EXIF, exif);
+
+        byte[] oriented = orient(withExif, 270);
+
+        ByteBuffer patched = chunk(oriented, PngOrientation.EXIF);
+        byte[] patchedBytes = new byte[patched.remaining()];
+        patched.duplicate().get(patchedBytes);
+        assertEquals(withExif.length, oriented.length);
+        assertEquals(8, patchedBytes[18] & 0xFF | (patchedBytes[19] & 0xFF) << 8);
+        exif[18] = 8;
+        assertArrayEquals(exif, patchedBytes);
+        assertEquals(1, count(oriented, PngOrientation.EXIF));
+    }
+
+    @Test
+    public void oversizedExifShouldBeSkippedWithoutBuffering() throws IOException {
+        byte[] png = png(randomImage(8, 8));
+        byte[] large = insertBefore(png, IDAT, PngOrientation.EXIF, new byte[PngOrientation.MAX_EXIF + 1]);
+
+        byte[] oriented = orient(large, 180);
+        assertEquals(3, orientation(chunk(oriented, PngOrientation.EXIF)));
+        assertEquals(1, count(oriented, PngOrientation.EXIF));
+        assertEquals(png.length + 12 + 26, oriented.length);
+
+        // Trailing eXIf header claiming almost 2 GB, followed by nothing: read up to the end, never allocated
+        ByteArrayOutputStream claimed = new ByteArrayOutputStream();
+        claimed.write(png, 0, png.length - 12);
+        DataOutputStream chunk = new DataOutputStream(claimed);
+        chunk.writeInt(Integer.MAX_VALUE - 8);
+        chunk.writeInt(PngOrientation.EXIF);
+        chunk.write(new byte[100]);
+        IOException e = assertThrows(IOException.class, () -> orient(claimed.toByteArray(), 90));
+        assertEquals("Truncated PNG file", e.getMessage());
+    }
+
+    @Test
+    public void exifWithoutOrientationShouldBeReplaced() {
+        byte[] garbage = "not a TIFF structure".getBytes();
+        byte[] exif = PngOrientation.withOrientation(garbage, 3);
+        assertEquals(26, exif.length);
+        assertEquals(3, orientation(ByteBuffer.wrap(exif)));
+    }
+
+    @Test
+    public void notPngShouldBeRejected() {
+        assertThrows(IOException.class, () -> orient("Testing a file".getBytes(), 0));
+    }
+
+    @Test
+    public void onlyRightAnglesShouldBeAccepted() {
+        assertEquals(1, PngOrientation.exifOrientation(0));
+        assertEquals(3, PngOrientation.exifOrientation(180));
+        assertEquals(8, PngOrientation.exifOrientation(270));
+        assertThrows(IllegalArgumentException.class, () -> PngOrientation.exifOrientation(45));
+    }
+
+    private static byte[] orient(byte[] png, int degrees) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngOrientation.write(new ByteArrayInputStream(png), out, degrees);
+        return out.toByteArray();
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage randomImage(int width, int height) {
+        Random random = new Random(width * 31 + height);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Orientation value of minimal big endian EXIF data, as written by PngOrientation
+     */
+    private static int orientation(ByteBuffer exif) {
+        assertEquals('M', exif.get(exif.position()));
+        assertEquals(0x0112, exif.getShort(exif.position() + 10));
+        return exif.getShort(exif.position() + 18);
+    }
+
+    /**
+     * Data of the first chunk of the type, positioned at its offset, after checking the CRC
+     */
+    private static ByteBuffer chunk(byte[] png, int type) {
+        int offset = chunkOffset(png, type);
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        int length = buffer.getInt(offset);
+        CRC32 crc = new CRC32();
+        crc.update(png, offset + 4, length + 4);
+        assertEquals((int) crc.getValue(), buffer.getInt(offset + 8 + length));
+        buffer.position(offset + 8).limit(offset + 8 + length);
+        return buffer;
+    }
+
+    private static int chunkOffset(byte[] png, int type) {
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        for (int offset = 8; offset + 8 <= png.length; offset += 12 + buffer.getInt(offset)) {
+            if (buffer.getInt(offset + 4) == type) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private static int count(byte[] png, int type) {
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        int count = 0;
+        for (int offset = 8; offset + 8 <= png.length; offset += 12 + buffer.getInt(offset)) {
+            count += buffer.getInt(offset + 4) == type ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static byte[] insertBefore(byte[] png, int before, int type, byte[] data) throws IOException {
+        int offset = chunkOffset(png, before);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(png, 0, offset);
+        DataOutputStream chunk = new DataOutputStream(out);
+        chunk.writeInt(data.length);
+        chunk.writeInt(type);
+        chunk.write(data);
+        CRC32 crc = new CRC32();
+        crc.update(new byte[]{(byte) (type >>> 24), (byte) (type >>> 16), (byte) (type >>> 8), (byte) type});
+        crc.update(data);
+        chunk.writeInt((int) crc.getValue());
+        out.write(png, offset, png.length - offset);
+        return out.toByteArray();
+    }
+}
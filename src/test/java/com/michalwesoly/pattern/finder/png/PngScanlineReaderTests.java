@@ -0,0 +1,85 @@
+package com.michalwesoly.pattern.finder.png;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PngScanlineReaderTests {
+
+    @Test
+    public void rowsShouldMatchImageIO() throws IOException {
+        Random random = new Random(3);
+        BufferedImage[] images = {
+                new BufferedImage(37, 23, BufferedImage.TYPE_INT_RGB),
+                new BufferedImage(37, 23, BufferedImage.TYPE_INT_ARGB),
+                new BufferedImage(37, 23, BufferedImage.TYPE_BYTE_INDEXED),
+                new BufferedImage(37, 23, BufferedImage.TYPE_BYTE_BINARY, fourColorPalette())
+        };
+        for (BufferedImage image : images) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    // Smooth areas make the encoder pick different filters
+                    image.setRGB(x, y, random.nextInt(4) == 0 ? random.nextInt() : x * 0x030201 + y * 0x010305);
+                }
+            }
+            assertSameRows(image);
+        }
+    }
+
+    @Test
+    public void notPngShouldNotBeOpened() throws IOException {
+        assertNull(PngScanlineReader.open(new ByteArrayInputStream("Testing".getBytes())));
+    }
+
+    @Test
+    public void fileEndingInsideChunkShouldFailAndCloseReader() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", png);
+        ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+        truncated.write(png.toByteArray(), 0, 33); // signature and IHDR chunk
+        truncated.write(new byte[]{0, 0, 0x03, (byte) 0xE8, 't', 'E', 'X', 't'}); // 1000 bytes of text claimed
+        truncated.write("Comment".getBytes());
+        boolean[] closed = {false};
+        ByteArrayInputStream stream = new ByteArrayInputStream(truncated.toByteArray()) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        assertThrows(EOFException.class, () -> PngScanlineReader.open(stream));
+        assertTrue(closed[0]);
+    }
+
+    private static void assertSameRows(BufferedImage image) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+
+        try (PngScanlineReader reader = PngScanlineReader.open(new ByteArrayInputStream(png.toByteArray()))) {
+            assertTrue(reader.isSupported());
+            int[] row = new int[decoded.getWidth()];
+            for (int y = 0; y < decoded.getHeight(); y++) {
+                reader.readRow(row);
+                assertArrayEquals(decoded.getRGB(0, y, decoded.getWidth(), 1, null, 0, decoded.getWidth()), row);
+            }
+        }
+    }
+
+    private static IndexColorModel fourColorPalette() {
+        byte[] red = {0, (byte) 255, (byte) 255, 0};
+        byte[] green = {0, 0, (byte) 255, (byte) 128};
+        byte[] blue = {0, 0, (byte) 255, (byte) 255};
+        byte[] alpha = {(byte) 255, (byte) 255, (byte) 255, (byte) 64};
+        return new IndexColorModel(2, 4, red, green, blue, alpha);
+    }
+}
@@ -0,0 +1,155 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.admission.ProcessingPool;
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import com.michalwesoly.pattern.finder.metrics.PipelineMetrics;
+import com.michalwesoly.pattern.finder.png.PngEncoder;
+import com.michalwesoly.pattern.finder.png.PngProfile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static com.michalwesoly.pattern.finder.service.ImageProcessorTests.imageWithStripes;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchRotationServiceTests {
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(registry);
+    private final BufferPool buffers = new BufferPool(1 << 24, 1 << 22);
+    private final ProcessingPool pool = new ProcessingPool(1, 1, 1000);
+    private final BatchRotationService service = new BatchRotationService(
+            new RotationService(new SkipScanner(), MarkerSet.STRIPE, new ImagePrefilter(1000, 1000, 100000),
+                    ScanPolicy.STOP_ON_AMBIGUITY, true, metrics, buffers),
+            new PngEncoder(PngProfile.FAST), executor, 2, metrics, buffers, pool);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+        pool.shutdown();
+    }
+
+    @Test
+    public void zipBatchShouldReportEveryOutcome() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            addEntry(zip, "one.png", png(imageWithStripes(40, 20, 1)));
+            addEntry(zip, "none.png", png(imageWithStripes(40, 20, 0)));
+            addEntry(zip, "dir/", new byte[0]);
+            addEntry(zip, "two.png", png(imageWithStripes(40, 20, 2)));
+            addEntry(zip, "notes.txt", "Testing".getBytes());
+            addEntry(zip, "large.png", new byte[5000]);
+            addEntry(zip, "broken.png", Arrays.copyOf(png(imageWithStripes(40, 20, 1)), 60));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<BatchResult> results = service.rotateAll(
+                BatchSource.ofZip(new ByteArrayInputStream(archive.toByteArray()), 4096), out);
+
+        List<BatchOutcome> outcomes = new ArrayList<>();
+        results.forEach(result -> outcomes.add(result.getOutcome()));
+        assertEquals(List.of(BatchOutcome.ROTATED, BatchOutcome.NO_PATTERN, BatchOutcome.AMBIGUOUS,
+                BatchOutcome.UNSUPPORTED, BatchOutcome.TOO_LARGE, BatchOutcome.UNREADABLE), outcomes);
+
+        Map<String, byte[]> entries = unzip(out.toByteArray());
+        assertEquals(2, entries.size());
+        assertTrue(new String(entries.get(BatchRotationService.MANIFEST)).contains("\"AMBIGUOUS\""));
+        BufferedImage rotated = ImageIO.read(new ByteArrayInputStream(entries.get("one.png")));
+        assertEquals(20, rotated.getWidth()); // horizontal pattern turned by 90 degrees
+    }
+
+    @Test
+    public void largeBatchShouldKeepOrderOfManifestAndUniqueNames() throws IOException {
+        byte[] image = png(imageWithStripes(16, 16, 1));
+        List<BatchEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            entries.add(new BatchEntry("same.png", new ByteArrayResource(image)));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<BatchResult> results = service.rotateAll(BatchSource.of(entries), out);
+
+        assertEquals(50, results.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, results.get(i).getIndex());
+        }
+        assertEquals(51, unzip(out.toByteArray()).size());
+        assertEquals(50, registry.timer("pattern.finder.phase", "phase", "prefilter").count()); // header read once
+    }
+
+    @Test
+    public void entriesShouldWaitForPixelBudget() throws Exception {
+        byte[] image = png(imageWithStripes(16, 16, 1));
+        List<BatchEntry> entries = List.of(new BatchEntry("one.png", new ByteArrayResource(image)));
+        ProcessingPool.Permit rotating = pool.admit(1000); // e.g. a /rotate upload
+
+        CompletableFuture<List<BatchResult>> batch = CompletableFuture.supplyAsync(() -> {
+            try {
+                return service.rotateAll(BatchSource.of(entries), new ByteArrayOutputStream());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> batch.get(300, TimeUnit.MILLISECONDS));
+
+        rotating.close();
+        assertEquals(BatchOutcome.ROTATED, batch.get(5, TimeUnit.SECONDS).get(0).getOutcome());
+        assertEquals(0, pool.getPixelsInFlight());
+    }
+
+    @Test
+    public void outputNamesShouldStayInsideArchive() {
+        Set<String> outputs = new HashSet<>();
+        assertEquals("evil.png", BatchRotationService.outputName("../../evil.jpg", outputs));
+        assertEquals("etc/passwd.png", BatchRotationService.outputName("/etc/passwd", outputs));
+        assertEquals("dir/win.png", BatchRotationService.outputName("C:\\..\\dir\\win.png", outputs));
+        assertEquals("image.png", BatchRotationService.outputName("/../", outputs));
+        assertEquals("evil-1.png", BatchRotationService.outputName("./evil.png", outputs));
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static void addEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static Map<String, byte[]> unzip(byte[] archive) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,105 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.api.exceptions.RejectedImageException;
+import com.michalwesoly.pattern.finder.png.PngHeader;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImagePrefilterTests {
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final ImagePrefilter prefilter = new ImagePrefilter(1000, 500, 200000, Set.of("png", "jpeg", "bmp"));
+
+    @Test
+    public void headerWithinLimitsShouldBeAccepted() throws IOException, RejectedImageException {
+        ImageHeader header = prefilter.inspect(encode(new BufferedImage(1000, 200, BufferedImage.TYPE_INT_RGB), "png"));
+        assertEquals(ImageHeader.PNG, header.getFormat());
+        assertEquals(1000, header.getWidth());
+        assertEquals(200, header.getHeight());
+        assertEquals(PngHeader.COLOR_RGB, header.getPngHeader().getColorType());
+    }
+
+    @Test
+    public void jpegHeaderShouldBeReadWithoutPngDetails() throws IOException, RejectedImageException {
+        ImageHeader header = prefilter.inspect(encode(new BufferedImage(300, 40, BufferedImage.TYPE_INT_RGB), "jpeg"));
+        assertEquals("jpeg", header.getFormat());
+        assertEquals(12000, header.getPixels());
+        assertNull(header.getPngHeader());
+        assertFalse(header.isGrayscale());
+    }
+
+    @Test
+    public void formatNotAcceptedShouldBeRejected() throws IOException {
+        ByteArrayResource gif = encode(new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_INDEXED), "gif");
+        RejectedImageException e = assertThrows(RejectedImageException.class, () -> prefilter.inspect(gif));
+        assertFalse(e.isTooLarge());
+
+        ByteArrayResource jpeg = encode(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "jpeg");
+        assertThrows(RejectedImageException.class, () -> new ImagePrefilter(1000, 500, 200000).inspect(jpeg));
+    }
+
+    @Test
+    public void notImageShouldBeRejected() {
+        RejectedImageException e = assertThrows(RejectedImageException.class,
+                () -> prefilter.inspect(new ByteArrayResource("Testing".getBytes())));
+        assertFalse(e.isTooLarge());
+    }
+
+    @Test
+    public void truncatedJpegHeaderShouldBeRejected() throws IOException {
+        byte[] jpeg = encode(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "jpeg").getByteArray();
+        RejectedImageException e = assertThrows(RejectedImageException.class,
+                () -> prefilter.inspect(new ByteArrayResource(Arrays.copyOf(jpeg, 4))));
+        assertFalse(e.isTooLarge());
+    }
+
+    @Test
+    public void imageOverAnyLimitShouldBeRejected() {
+        int[][] sizes = {{1001, 10}, {10, 501}, {450, 450}};
+        for (int[] size : sizes) {
+            for (String format : new String[]{"png", "jpeg"}) {
+                BufferedImage image = new BufferedImage(size[0], size[1], BufferedImage.TYPE_BYTE_GRAY);
+                RejectedImageException e = assertThrows(RejectedImageException.class,
+                        () -> prefilter.inspect(encode(image, format)));
+                assertTrue(e.isTooLarge());
+            }
+        }
+    }
+
+    @Test
+    public void decompressionBombShouldBeRejectedFromHeaderAlone() {
+        byte[] header = new byte[33]; // signature and IHDR chunk only, no image data at all
+        System.arraycopy(PNG_SIGNATURE, 0, header, 0, PNG_SIGNATURE.length);
+        writeInt(header, 8, 13);
+        writeInt(header, 12, 0x49484452); // IHDR
+        writeInt(header, 16, 100000);
+        writeInt(header, 20, 100000);
+        header[24] = 8;
+        header[25] = PngHeader.COLOR_RGB_ALPHA;
+
+        RejectedImageException e = assertThrows(RejectedImageException.class,
+                () -> prefilter.inspect(new ByteArrayResource(header)));
+        assertTrue(e.isTooLarge());
+    }
+
+    static ByteArrayResource encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return new ByteArrayResource(out.toByteArray());
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte) (value >>> (24 - 8 * i));
+        }
+    }
+}
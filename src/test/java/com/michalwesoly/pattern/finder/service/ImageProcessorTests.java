@@ -0,0 +1,79 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.api.exceptions.AmbiguousImageException;
+import com.michalwesoly.pattern.finder.api.exceptions.NoPatternException;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageProcessorTests {
+    private static final int RED = new Color(255, 0, 0).getRGB();
+    private static final int WHITE = new Color(255, 255, 255).getRGB();
+
+    @Test
+    public void ambiguousImageShouldStopAtSecondPattern() {
+        BufferedImage image = imageWithStripes(64, 64, 2);
+        AmbiguousImageException e = assertThrows(AmbiguousImageException.class,
+                () -> new ImageProcessor(image, ScanPolicy.STOP_ON_AMBIGUITY).processImage());
+
+        ImageProcessor fullScan = new ImageProcessor(image, ScanPolicy.COLLECT_ALL);
+        assertThrows(AmbiguousImageException.class, fullScan::processImage);
+
+        assertTrue(e.getPixelsScanned() < fullScan.getLastScan().getPixelsScanned());
+        assertTrue(fullScan.getLastScan().isComplete());
+    }
+
+    @Test
+    public void firstMatchShouldAcceptAmbiguousImage() throws Exception {
+        ImageProcessor processor = new ImageProcessor(imageWithStripes(64, 64, 2), ScanPolicy.FIRST_MATCH);
+        processor.processImage();
+
+        assertEquals(1, processor.getLastScan().getMatchCount());
+        assertFalse(processor.getLastScan().isComplete());
+    }
+
+    @Test
+    public void noPatternShouldScanWholeImage() {
+        ImageProcessor processor = new ImageProcessor(imageWithStripes(64, 64, 0));
+        NoPatternException e = assertThrows(NoPatternException.class, processor::processImage);
+
+        assertTrue(processor.getLastScan().isComplete());
+        assertEquals(processor.getLastScan().getPixelsScanned(), e.getPixelsScanned());
+    }
+
+    @Test
+    public void detectShouldMatchRotationOfProcessImage() throws Exception {
+        ImageProcessor processor = new ImageProcessor(imageWithStripes(64, 32, 1));
+        Detection detection = processor.detect();
+
+        assertEquals(90, detection.getRotation());
+        assertEquals("HORIZONTAL", detection.getAlignment());
+        assertTrue(detection.isWhiteFirst());
+        assertEquals(0, detection.getX());
+        assertEquals(0, detection.getY());
+        assertEquals(32, processor.processImage().getWidth());
+    }
+
+    @Test
+    public void paletteWithoutRedShouldBeRejectedWithoutReadingPixels() {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_BINARY); // black and white
+        NoPatternException e = assertThrows(NoPatternException.class, () -> new ImageProcessor(image).processImage());
+        assertEquals(0, e.getPixelsScanned());
+    }
+
+    /**
+     * Black image with given number of horizontal white-red stripes in its first rows
+     */
+    static BufferedImage imageWithStripes(int width, int height, int stripes) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int row = 0; row < stripes; row++) {
+            for (int column = 0; column < 6; column++) {
+                image.setRGB(column, row, column < 3 ? WHITE : RED);
+            }
+        }
+        return image;
+    }
+}
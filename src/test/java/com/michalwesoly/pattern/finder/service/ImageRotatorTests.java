@@ -0,0 +1,110 @@
+package com.michalwesoly.pattern.finder.service;
+
+import com.michalwesoly.pattern.finder.buffer.BufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageRotatorTests {
+    private static final int[] TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_BYTE_BINARY,
+            BufferedImage.TYPE_USHORT_565_RGB};
+
+    @Test
+    public void rotationShouldMovePixelsExactly() {
+        Random random = new Random(5);
+        for (int type : TYPES) {
+            // Odd sizes and sizes over a tile check partial tiles
+            for (int[] size : new int[][]{{1, 1}, {7, 3}, {70, 131}, {130, 65}}) {
+                BufferedImage image = new BufferedImage(size[0], size[1], type);
+                for (int y = 0; y < size[1]; y++) {
+                    for (int x = 0; x < size[0]; x++) {
+                        image.setRGB(x, y, random.nextInt());
+                    }
+                }
+                for (int degrees = 90; degrees < 360; degrees += 90) {
+                    assertRotated(image, ImageRotator.rotate(image, degrees), degrees);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rotationShouldMovePackedPaletteIndicesExactly() {
+        Random random = new Random(9);
+        for (int bits : new int[]{2, 4}) {
+            byte[] channel = new byte[1 << bits];
+            random.nextBytes(channel);
+            IndexColorModel palette = new IndexColorModel(bits, channel.length, channel, channel, channel);
+            BufferedImage image = new BufferedImage(67, 9, BufferedImage.TYPE_BYTE_BINARY, palette);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.getRaster().setSample(x, y, 0, random.nextInt(channel.length));
+                }
+            }
+            for (int degrees = 90; degrees < 360; degrees += 90) {
+                assertRotated(image, ImageRotator.rotate(image, degrees), degrees);
+            }
+        }
+    }
+
+    @Test
+    public void rotationIntoReusedBuffersShouldMovePixelsExactly() {
+        Random random = new Random(7);
+        BufferPool pool = new BufferPool(1 << 24, 1 << 22);
+        for (int round = 0; round < 2; round++) { // the second round gets buffers the first one left dirty
+            for (int type : TYPES) {
+                for (int[] size : new int[][]{{70, 131}, {130, 65}}) {
+                    BufferedImage image = new BufferedImage(size[0], size[1], type);
+                    for (int y = 0; y < size[1]; y++) {
+                        for (int x = 0; x < size[0]; x++) {
+                            image.setRGB(x, y, random.nextInt());
+                        }
+                    }
+                    for (int degrees = 90; degrees < 360; degrees += 90) {
+                        BufferedImage rotated = ImageRotator.rotate(image, degrees, pool);
+                        assertRotated(image, rotated, degrees);
+                        pool.release(rotated);
+                    }
+                }
+            }
+        }
+        assertTrue(pool.getHits() > pool.getMisses());
+    }
+
+    @Test
+    public void noRotationShouldReturnSameImage() {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        assertSame(image, ImageRotator.rotate(image, 0));
+    }
+
+    @Test
+    public void rotationShouldKeepPalette() {
+        BufferedImage image = new BufferedImage(8, 4, BufferedImage.TYPE_BYTE_INDEXED);
+        BufferedImage rotated = ImageRotator.rotate(image, 90);
+
+        assertEquals(BufferedImage.TYPE_BYTE_INDEXED, rotated.getType());
+        assertSame(image.getColorModel(), rotated.getColorModel());
+    }
+
+    private static void assertRotated(BufferedImage image, BufferedImage rotated, int degrees) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        assertEquals(image.getType(), rotated.getType());
+        assertEquals(degrees == 180 ? width : height, rotated.getWidth());
+
+        for (int y = 0; y < rotated.getHeight(); y++) {
+            for (int x = 0; x < rotated.getWidth(); x++) {
+                int sourceX = degrees == 90 ? y : degrees == 180 ? width - 1 - x : width - 1 - y;
+                int sourceY = degrees == 90 ? height - 1 - x : degrees == 180 ? height - 1 - y : x;
+                assertEquals(image.getRGB(sourceX, sourceY), rotated.getRGB(x, y),
+                        "type " + image.getType() + ", " + degrees + " degrees, pixel " + x + "," + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.michalwesoly.pattern.finder.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static com.michalwesoly.pattern.finder.service.PatternScannerTests.describe;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarkerSetTests {
+    private static final int BLACK = 0xFF000000;
+    private static final int YELLOW = 0xFFFFCC00;
+    private static final int GREEN = 0xFF00FF00;
+    private static final int BLUE = 0xFF0000FF;
+
+    private static final String STRIPE = "stripe=FFFFFF:3/FF0000:3";
+    private static final String FLAG = "flag=000000:2/FFCC00:4/0000FF:2@90";
+    private static final String TAG = "tag=00FF00:3/0000FF:1";
+
+    @Test
+    public void everyMarkerShouldBeFoundInOnePass() throws Exception {
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        draw(image, 5, 2, 1, 0, BLUE, BLUE, YELLOW, YELLOW, YELLOW, YELLOW, BLACK, BLACK); // flag right - left
+        draw(image, 30, 10, 0, 1, GREEN, GREEN, GREEN, BLUE);                             // tag up - down
+
+        ScanResult flagOnly = new AutomatonScanner(MarkerSet.of(FLAG)).findPatterns(PixelRaster.of(image),
+                ScanPolicy.COLLECT_ALL);
+        Detection flag = Detection.of(flagOnly);
+        assertEquals("flag", flag.getMarker());
+        assertEquals((270 + 90) % 360, flag.getRotation()); // horizontal, last band first, plus the marker's 90
+        assertEquals(5, flag.getX());
+
+        ScanResult both = new AutomatonScanner(MarkerSet.of(FLAG, TAG)).findPatterns(PixelRaster.of(image),
+                ScanPolicy.COLLECT_ALL);
+        assertEquals(List.of("30,10 0 true", "5,2 1 false"), describe(both));
+    }
+
+    @Test
+    public void markersEndingInTheSamePixelShouldAllBeReported() {
+        BufferedImage image = new BufferedImage(10, 1, BufferedImage.TYPE_INT_RGB);
+        draw(image, 2, 0, 1, 0, GREEN, GREEN, GREEN, BLUE);
+
+        MarkerSet markers = MarkerSet.of(TAG, "short=00FF00:1/0000FF:1");
+        ScanResult result = new AutomatonScanner(markers).findPatterns(PixelRaster.of(image), ScanPolicy.COLLECT_ALL);
+        assertEquals(List.of("2,0 0 false", "4,0 0 false"), describe(result));
+    }
+
+    @Test
+    public void symmetricMarkerShouldBeFoundOnce() {
+        BufferedImage image = new BufferedImage(10, 1, BufferedImage.TYPE_INT_RGB);
+        draw(image, 1, 0, 1, 0, BLACK, YELLOW, YELLOW, BLACK);
+
+        MarkerSet markers = MarkerSet.of("000000:1/FFCC00:2/000000:1");
+        assertEquals(1, new AutomatonScanner(markers).findPatterns(PixelRaster.of(image), ScanPolicy.COLLECT_ALL)
+                .getMatchCount());
+    }
+
+    @Test
+    public void streamingScanShouldFindSameMarkersAsAutomatonScanner() throws IOException {
+        MarkerSet markers = MarkerSet.of(FLAG, TAG, "stripe=FFFFFF:3/FF0000:3");
+        int[] colors = {BLACK, YELLOW, GREEN, BLUE, 0xFFFFFFFF, 0xFFFF0000};
+        Random random = new Random(23);
+        for (int i = 0; i < 100; i++) {
+            BufferedImage image = new BufferedImage(1 + random.nextInt(40), 1 + random.nextInt(40),
+                    BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    int color = colors[random.nextInt(colors.length)];
+                    if (y > 0 && random.nextBoolean()) {
+                        color = image.getRGB(x, y - 1); // runs down the columns
+                    }
+                    else if (x > 0 && random.nextBoolean()) {
+                        color = image.getRGB(x - 1, y); // and along the rows
+                    }
+                    image.setRGB(x, y, color);
+                }
+            }
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", png);
+
+            ScanResult streamed = new StreamingScanner(markers).findPatterns(
+                    new ByteArrayInputStream(png.toByteArray()), ScanPolicy.COLLECT_ALL);
+            assertEquals(describe(new AutomatonScanner(markers), image), describe(streamed));
+        }
+    }
+
+    @Test
+    public void grayscaleImagesShouldBeScannedOnlyForGrayMarkers() {
+        assertFalse(MarkerSet.STRIPE.mayMatchGray());
+        assertTrue(MarkerSet.of(TAG, "000000:2/FFFFFF:2").mayMatchGray());
+        assertTrue(MarkerSet.STRIPE.isStripe());
+        assertFalse(MarkerSet.of(TAG).isStripe());
+    }
+
+    @Test
+    public void offColorMarkersShouldMatchOnlyWithinTolerance() {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        draw(image, 1, 2, 1, 0, 0xFFFEFFFD, 0xFFFFFFFF, 0xFFFAFFFF, 0xFFFE0100, 0xFFFF0000, 0xFFFD0002);
+
+        assertEquals(0, describe(new AutomatonScanner(MarkerSet.STRIPE), image).size());
+        assertEquals(List.of("1,2 0 false"), describe(new AutomatonScanner(MarkerSet.of(5, STRIPE)), image));
+        assertEquals(0, describe(new AutomatonScanner(MarkerSet.of(4, STRIPE)), image).size()); // 0xFA is 5 off
+        assertEquals(List.of("1,2 0 false"), describe(new SkipScanner(5), image));
+    }
+
+    @Test
+    public void classifierShouldMatchEveryChannelWithinTolerance() {
+        ColorClassifier classifier = new ColorClassifier(new int[]{0xFFFFFFFF, 0xFFFF0000}, 10);
+        assertEquals(1, classifier.classify(0xFFF5F5F5));
+        assertEquals(0, classifier.classify(0xFFF4FFFF));
+        assertEquals(2, classifier.classify(0xFFF50A0A));
+        assertEquals(0, classifier.classify(0xFFFF000B));
+        assertEquals(0, classifier.classify(0x00FF0000)); // alpha counts too
+        assertFalse(classifier.matchesGray(1));
+        assertTrue(new ColorClassifier(new int[]{0xFF808A80}, 5).matchesGray(0));
+        assertThrows(IllegalArgumentException.class, () -> new ColorClassifier(new int[1], 256));
+    }
+
+    @Test
+    public void malformedMarkersShouldBeRejected() {
+        for (String definition : new String[]{"FFFFFF", "FFFFFF:0", "FFFFFF:3@45", "FFFFF:3", "GGGGGG:3"}) {
+            assertThrows(IllegalArgumentException.class, () -> Marker.parse(definition), definition);
+        }
+    }
+
+    private static void draw(BufferedImage image, int x, int y, int dx, int dy, int... colors) {
+        for (int i = 0; i < colors.length; i++) {
+            image.setRGB(x + i * dx, y + i * dy, colors[i]);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.michalwesoly.pattern.finder.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Differential tests - every scanner has to find the same patterns as the reference RasterScanner.
+ */
+public class PatternScannerTests {
+    private static final int RED = new Color(255, 0, 0).getRGB();
+    private static final int WHITE = new Color(255, 255, 255).getRGB();
+    private static final int[] PALETTE = {WHITE, RED, new Color(0, 0, 0).getRGB(), new Color(254, 0, 0).getRGB()};
+    private static final int[] TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_INDEXED,
+            BufferedImage.TYPE_BYTE_BINARY};
+
+    private final RasterScanner reference = new RasterScanner();
+
+    @Test
+    public void skipScannerShouldFindSamePatternsOnRandomImages() {
+        assertSameAsReference(new SkipScanner(), 7);
+    }
+
+    @Test
+    public void automatonScannerShouldFindSamePatternsAsReferenceForStripe() {
+        assertSameAsReference(new AutomatonScanner(MarkerSet.STRIPE), 19);
+    }
+
+    @Test
+    public void parallelScannerShouldFindSamePatternsAcrossBandBorders() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertSameAsReference(new ParallelScanner(pool, 0), 11);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelScannerShouldHonourFirstMatchAcrossBands() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BufferedImage image = new BufferedImage(16, 200, BufferedImage.TYPE_INT_RGB);
+            for (int row = 0; row < 200; row += 20) {
+                for (int i = 0; i < 6; i++) {
+                    image.setRGB(i, row, i < 3 ? WHITE : RED);
+                }
+            }
+            ScanResult result = new ParallelScanner(pool, 0).findPatterns(PixelRaster.of(image), ScanPolicy.FIRST_MATCH);
+            assertEquals(1, result.getMatchCount());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void streamingScannerShouldFindSamePatternsAsDecodedImage() throws IOException {
+        Random random = new Random(13);
+        StreamingScanner scanner = new StreamingScanner();
+
+        for (int i = 0; i < 200; i++) {
+            BufferedImage image = randomImage(random, TYPES[random.nextInt(TYPES.length)],
+                    1 + random.nextInt(40), 1 + random.nextInt(40));
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", png);
+
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+            ScanResult streamed = scanner.findPatterns(new ByteArrayInputStream(png.toByteArray()),
+                    ScanPolicy.COLLECT_ALL);
+
+            assertNotNull(streamed);
+            assertEquals(describe(reference, decoded), describe(streamed));
+        }
+    }
+
+    @Test
+    public void streamingScannerShouldRejectGrayscaleWithoutDecoding() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY), "png", png);
+
+        ScanResult result = new StreamingScanner().findPatterns(new ByteArrayInputStream(png.toByteArray()),
+                ScanPolicy.STOP_ON_AMBIGUITY);
+        assertEquals(0, result.getMatchCount());
+        assertEquals(0, result.getPixelsScanned());
+    }
+
+    @Test
+    public void tolerantScannersShouldFindSamePatternsAsReferenceOnSnappedColors() throws IOException {
+        Random random = new Random(23);
+        int tolerance = 6;
+        MarkerSet markers = MarkerSet.of(tolerance, "FFFFFF:3/FF0000:3");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            PatternScanner[] scanners = {new SkipScanner(tolerance), new AutomatonScanner(markers),
+                    new ParallelScanner(pool, 0, tolerance)};
+            for (int i = 0; i < 300; i++) {
+                BufferedImage image = jitter(random, randomImage(random, BufferedImage.TYPE_INT_RGB,
+                        1 + random.nextInt(40), 1 + random.nextInt(40)), 2 * tolerance);
+
+                // Pixels within tolerance made exact white or red, for the exact reference to find
+                BufferedImage snapped = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+                ColorClassifier classifier = markers.getClassifier();
+                for (int y = 0; y < image.getHeight(); y++) {
+                    for (int x = 0; x < image.getWidth(); x++) {
+                        int symbol = classifier.classify(image.getRGB(x, y));
+                        snapped.setRGB(x, y, symbol == 1 ? WHITE : symbol == 2 ? RED : image.getRGB(x, y));
+                    }
+                }
+                List<String> expected = describe(reference, snapped);
+                for (PatternScanner scanner : scanners) {
+                    assertEquals(expected, describe(scanner, image), scanner.getClass().getSimpleName());
+                }
+
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+                ImageIO.write(image, "png", png);
+                assertEquals(expected, describe(new StreamingScanner(markers).findPatterns(
+                        new ByteArrayInputStream(png.toByteArray()), ScanPolicy.COLLECT_ALL)));
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void skipScannerShouldFindStripesTouchingImageBorders() {
+        BufferedImage image = new BufferedImage(6, 6, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 6; i++) {
+            image.setRGB(i, 0, i < 3 ? WHITE : RED);  // top row, white - red
+            image.setRGB(5, i, i < 3 ? RED : WHITE);  // right column, red - white
+        }
+        assertEquals(describe(reference, image), describe(new SkipScanner(), image));
+        assertEquals(2, describe(new SkipScanner(), image).size());
+    }
+
+    @Test
+    public void skipScannerShouldReadFewerPixels() {
+        BufferedImage image = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+        PixelRaster raster = PixelRaster.of(image);
+
+        long referenceReads = reference.findPatterns(raster, ScanPolicy.COLLECT_ALL).getPixelsScanned();
+        long skipReads = new SkipScanner().findPatterns(raster, ScanPolicy.COLLECT_ALL).getPixelsScanned();
+        assertTrue(skipReads * 3 < referenceReads);
+    }
+
+    @Test
+    public void pixelRasterShouldReadSameValuesAsGetRGB() {
+        Random random = new Random(17);
+        for (int type : TYPES) {
+            BufferedImage image = randomImage(random, type, 37, 11);
+            PixelRaster raster = PixelRaster.of(image);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(image.getRGB(x, y), raster.getRGB(x, y), "type " + type + ", pixel " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs both scanners over random images made mostly of white and red runs (so stripes are frequent,
+     * adjacent and overlapping) and compares found patterns.
+     */
+    static void assertSameAsReference(PatternScanner scanner, long seed) {
+        Random random = new Random(seed);
+        RasterScanner reference = new RasterScanner();
+
+        for (int i = 0; i < 500; i++) {
+            BufferedImage image = randomImage(random, TYPES[random.nextInt(TYPES.length)],
+                    1 + random.nextInt(40), 1 + random.nextInt(40));
+            PixelRaster raster = PixelRaster.of(image);
+
+            assertEquals(describe(reference, image), describe(scanner, image));
+            assertEquals(reference.findPatterns(raster, ScanPolicy.STOP_ON_AMBIGUITY).getMatchCount(),
+                    scanner.findPatterns(raster, ScanPolicy.STOP_ON_AMBIGUITY).getMatchCount());
+        }
+    }
+
+    @Test
+    public void streamingScannerShouldRejectPaletteWithoutRedWithoutDecoding() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_BINARY), "png", png); // black and white
+
+        ScanResult result = new StreamingScanner().findPatterns(new ByteArrayInputStream(png.toByteArray()),
+                ScanPolicy.STOP_ON_AMBIGUITY);
+        assertEquals(0, result.getPixelsScanned());
+    }
+
+    /**
+     * Image of given type; TYPE_BYTE_BINARY gets a 2 bit palette of all PALETTE colors
+     */
+    static BufferedImage newImage(int type, int width, int height) {
+        if (type == BufferedImage.TYPE_BYTE_BINARY) {
+            byte[][] channels = new byte[3][PALETTE.length];
+            for (int i = 0; i < PALETTE.length; i++) {
+                for (int channel = 0; channel < 3; channel++) {
+                    channels[channel][i] = (byte) (PALETTE[i] >> (16 - 8 * channel));
+                }
+            }
+            return new BufferedImage(width, height, type,
+                    new IndexColorModel(2, PALETTE.length, channels[0], channels[1], channels[2]));
+        }
+        return new BufferedImage(width, height, type);
+    }
+
+    static BufferedImage randomImage(Random random, int type, int width, int height) {
+        BufferedImage image = newImage(type, width, height);
+        for (int row = 0; row < height; row++) {
+            int column = 0;
+            while (column < width) {
+                int color = PALETTE[random.nextInt(random.nextBoolean() ? 2 : PALETTE.length)];
+                int run = 1 + random.nextInt(5);
+                for (; run > 0 && column < width; run--, column++) {
+                    image.setRGB(column, row, color);
+                }
+            }
+        }
+        // Copying some rows down gives vertical runs as well
+        for (int row = 1; row < height; row++) {
+            if (random.nextInt(3) > 0) {
+                for (int column = 0; column < width; column++) {
+                    image.setRGB(column, row, image.getRGB(column, row - 1));
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Moves every channel of every pixel by up to the given amount, so some pixels are within a tolerance
+     * of their original color and some aren't
+     */
+    private static BufferedImage jitter(Random random, BufferedImage image, int amount) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int argb = image.getRGB(x, y);
+                int jittered = argb & 0xFF000000;
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int channel = (argb >> shift & 0xFF) + random.nextInt(2 * amount + 1) - amount;
+                    jittered |= Math.max(0, Math.min(255, channel)) << shift;
+                }
+                image.setRGB(x, y, random.nextBoolean() ? argb : jittered);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Sorted descriptions of all patterns found by the scanner, so results found in different order can be compared
+     */
+    static List<String> describe(PatternScanner scanner, BufferedImage image) {
+        return describe(scanner.findPatterns(PixelRaster.of(image), ScanPolicy.COLLECT_ALL));
+    }
+
+    static List<String> describe(ScanResult result) {
+        List<String> patterns = new ArrayList<>();
+        for (Pattern pattern : result.getPatterns()) {
+            patterns.add(pattern.getX() + "," + pattern.getY() + " " + pattern.getAlignment() + " "
+                    + pattern.getNeedsRotation());
+        }
+        Collections.sort(patterns);
+        return patterns;
+    }
+}
@@ -0,0 +1,138 @@
+package com.michalwesoly.pattern.finder.spool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadSpoolTests {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void uploadsOverThresholdShouldBeSpooledAndDeletedOnClose() throws IOException {
+        UploadSpool spool = new UploadSpool(directory, 100);
+        spool.close();
+        byte[] content = new byte[1000];
+        new Random(5).nextBytes(content);
+
+        SpooledUpload upload = spool.spool(new MockMultipartFile("file", content));
+        Path file = upload.getFile();
+        assertNotNull(file);
+        assertTrue(file.startsWith(directory));
+        assertEquals(1000, upload.getSize());
+        try (InputStream in = upload.getInputStream()) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        upload.close();
+        assertFalse(Files.exists(file));
+
+        try (SpooledUpload small = spool.spool(new MockMultipartFile("file", new byte[99]))) {
+            assertNull(small.getFile());
+            assertEquals(99, small.getInputStream().readAllBytes().length);
+        }
+    }
+
+    @Test
+    public void staleSpooledFilesShouldBeDeletedAtStartup() throws IOException {
+        Path stale = Files.createTempFile(directory, UploadSpool.PREFIX, UploadSpool.SUFFIX);
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(UploadSpool.STALE).minusSeconds(60)));
+        Path part = Files.createTempFile(directory, "upload_", ".tmp"); // left by the multipart parser
+        Files.setLastModifiedTime(part, FileTime.from(Instant.EPOCH));
+        Path recent = Files.createTempFile(directory, UploadSpool.PREFIX, UploadSpool.SUFFIX); // maybe in use
+        Path other = Files.createTempFile(directory, "other-", UploadSpool.SUFFIX);
+        Files.setLastModifiedTime(other, FileTime.from(Instant.EPOCH));
+
+        new UploadSpool(directory, 0).close();
+
+        assertFalse(Files.exists(stale));
+        assertFalse(Files.exists(part));
+        assertTrue(Files.exists(recent));
+        assertTrue(Files.exists(other));
+    }
+
+    @Test
+    public void filesLeftBehindShouldBeSweptWithoutRestart() throws Exception {
+        try (UploadSpool spool = new UploadSpool(directory, 0, Duration.ofSeconds(2))) {
+            Path orphan = Files.createTempFile(directory, UploadSpool.PREFIX, UploadSpool.SUFFIX); // crash after start
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (Files.exists(orphan) && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+            }
+            assertFalse(Files.exists(orphan));
+            assertEquals(0, spool.sweep());
+        }
+    }
+
+    @Test
+    public void imagesShouldDecodeFromChannelAsFromBytes() throws IOException {
+        Random random = new Random(9);
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt(8) == 0 ? random.nextInt() : x * 0x010203);
+            }
+        }
+        for (String format : new String[]{"png", "jpeg", "bmp", "gif"}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ImageIO.write(image, format, bytes);
+            Path file = directory.resolve("image." + format);
+            Files.write(file, bytes.toByteArray());
+
+            BufferedImage expected = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+            BufferedImage decoded;
+            try (ImageInputStream in = new FileChannelImageInputStream(file)) {
+                decoded = ImageIO.read(in);
+            }
+            assertNotNull(decoded, format);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(expected.getRGB(x, y), decoded.getRGB(x, y), format);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void channelStreamShouldSeekAndReadAcrossBuffer() throws IOException {
+        byte[] content = new byte[200_000];
+        new Random(11).nextBytes(content);
+        Path file = directory.resolve("content");
+        Files.write(file, content);
+
+        try (FileChannelImageInputStream in = new FileChannelImageInputStream(file)) {
+            assertEquals(content.length, in.length());
+            assertEquals(content[0] & 0xFF, in.read());
+            in.seek(65_535);
+            byte[] across = new byte[10];
+            in.readFully(across); // half from the end of one buffer, half from the next
+            assertArrayEquals(Arrays.copyOfRange(content, 65_535, 65_545), across);
+
+            in.seek(1000);
+            byte[] large = new byte[100_000];
+            in.readFully(large);
+            assertArrayEquals(Arrays.copyOfRange(content, 1000, 101_000), large);
+
+            in.seek(content.length - 1);
+            assertEquals(content[content.length - 1] & 0xFF, in.read());
+            assertEquals(-1, in.read());
+        }
+    }
+}